@@ -0,0 +1,28 @@
+package com.example.demospring;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Resolves the id under which this process stores its node state (leases, checkpoints, feed offsets). The id must be
+ * unique across the nodes and stable across restarts of a node, so the host name is used unless one is configured.
+ */
+public final class NodeIds {
+    private NodeIds() {
+    }
+
+    /**
+     * Return the configured node id, or the host name if none is configured
+     * @param configured The configured id. Can be null or blank
+     * @return The node id
+     * @throws IllegalStateException If no id is configured and the host name cannot be resolved
+     */
+    public static String resolve(String configured) {
+        if (configured != null && !configured.isBlank()) return configured.trim();
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException exception) {
+            throw new IllegalStateException("The host name cannot be resolved, configure a node id", exception);
+        }
+    }
+}
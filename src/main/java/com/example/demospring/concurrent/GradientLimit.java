@@ -0,0 +1,108 @@
+package com.example.demospring.concurrent;
+
+/**
+ * A concurrency limit that adapts to the observed latency, in the style of the gradient limiters. The latency of
+ * every call is sampled; every window of samples the average of the window (the short latency) is compared with a
+ * slowly moving average of the previous windows (the long latency). While the short latency stays within the
+ * tolerance of the long one the limit grows by about its square root per window, so it finds the concurrency the
+ * database can take; when queries get slower than that the limit shrinks in proportion, down to half per window.
+ *
+ * The limit only grows while at least half of it is used, so a quiet period does not inflate it. If the latency
+ * drops well below the long average, e.g. after a slow period, the long average is pulled down faster than its
+ * normal decay so the limit can recover.
+ *
+ * Not thread safe: callers update and read it under their own lock.
+ */
+public class GradientLimit {
+    private static final int WINDOW_SAMPLES = 20;
+    private static final int LONG_WINDOWS = 30;
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+
+    private double limit;
+    private double longRttNanos;
+    private double shortRttNanos;
+
+    private long windowRttNanos;
+    private int windowSamples;
+    private int windowMaxInFlight;
+
+    /**
+     * @param initialLimit The limit before any sample
+     * @param minLimit The lowest limit
+     * @param maxLimit The highest limit
+     * @param rttTolerance How much slower than the long latency the short latency may be before the limit shrinks,
+     *                     1.5 lets it be half again as slow
+     */
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit, double rttTolerance) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("The limits must be positive, with the minimum at most the maximum");
+        }
+        if (rttTolerance < 1) {
+            throw new IllegalArgumentException("The latency tolerance must be at least 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.rttTolerance = rttTolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Record the latency of a finished call
+     * @param rttNanos The duration of the call
+     * @param inFlight The number of calls in flight when it started, itself included
+     */
+    public void onSample(long rttNanos, int inFlight) {
+        windowRttNanos += rttNanos;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+        if (++windowSamples < WINDOW_SAMPLES) return;
+
+        shortRttNanos = (double) windowRttNanos / windowSamples;
+        boolean appLimited = windowMaxInFlight < limit / 2;
+        windowRttNanos = 0;
+        windowSamples = 0;
+        windowMaxInFlight = 0;
+
+        if (longRttNanos == 0) {
+            longRttNanos = shortRttNanos;
+            return;
+        }
+        longRttNanos += (shortRttNanos - longRttNanos) / LONG_WINDOWS;
+        if (longRttNanos > 2 * shortRttNanos) {
+            longRttNanos *= 0.95;
+        }
+        if (appLimited) return;
+
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, rttTolerance * longRttNanos / shortRttNanos));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+
+    /**
+     * The current limit
+     * @return The number of calls allowed in flight
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * The average latency of the last window of samples
+     * @return The latency in nanoseconds, 0 before the first window
+     */
+    public long getShortRttNanos() {
+        return (long) shortRttNanos;
+    }
+
+    /**
+     * The long average latency the short one is compared with
+     * @return The latency in nanoseconds, 0 before the first window
+     */
+    public long getLongRttNanos() {
+        return (long) longRttNanos;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.demospring.concurrent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Serves the requests of the embedded Tomcat on virtual threads, so requests blocked on a slow database do not
+ * exhaust the request thread pool. Only active on Java 21 or newer; disable with server.virtual-threads=false.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "server.virtual-threads", havingValue = "true", matchIfMissing = true)
+public class VirtualThreadConfig {
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> {
+            if (VirtualThreads.isSupported()) {
+                protocolHandler.setExecutor(VirtualThreads.newExecutor("http", 1));
+                log.info("Serving requests on virtual threads");
+            }
+        };
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.demospring.concurrent;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors that run every task on its own virtual thread when the JVM supports them (Java 21 or newer).
+ * Blocking a virtual thread on a socket or a lock does not hold an OS thread, so thousands of waiting tasks are
+ * cheap. On older JVMs a fixed pool of platform threads is used instead. The lookup is reflective so the
+ * application still runs on Java 17.
+ */
+@Slf4j
+public final class VirtualThreads {
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findFactory();
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Create an executor with a virtual thread per task, or a fixed pool of platform threads if virtual threads are
+     * not supported
+     * @param name The name prefix of the platform threads
+     * @param fallbackThreads The number of platform threads
+     * @return The executor
+     */
+    public static ExecutorService newExecutor(String name, int fallbackThreads) {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException exception) {
+                log.warn("Could not create a virtual thread executor, using platform threads", exception);
+            }
+        }
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(fallbackThreads, threadFactory);
+    }
+
+    private static Method findFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException exception) {
+            return null;
+        }
+    }
+}
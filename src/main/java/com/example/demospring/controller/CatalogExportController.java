@@ -0,0 +1,50 @@
+package com.example.demospring.controller;
+
+import com.example.demospring.service.catalog.CatalogExportService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+@RestController
+@RequiredArgsConstructor
+public class CatalogExportController {
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final CatalogExportService catalogExportService;
+
+    /**
+     * Stream the whole catalog, as NDJSON (format=ndjson, the default) or as a JSON array (format=json). The body
+     * is gzip compressed when the client accepts it. It is written on the request thread straight to the
+     * response, so it is not subject to the async request timeout; an error halfway aborts the response. When the
+     * database is overloaded the export is rejected with a 503 before anything is written.
+     */
+    @GetMapping(path = "/catalog/export")
+    public void export(@RequestParam(name = "format", defaultValue = "ndjson") String format,
+                       HttpServletRequest request, HttpServletResponse response) throws IOException {
+        boolean ndjson = !"json".equals(format);
+        if (ndjson && !"ndjson".equals(format)) {
+            throw new IllegalArgumentException("Unknown export format " + format);
+        }
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        // The headers are only set once the export is admitted, a rejected one is answered by the exception handler
+        catalogExportService.export(() -> {
+            response.setContentType(ndjson ? "application/x-ndjson" : "application/json");
+            response.setCharacterEncoding("UTF-8");
+            OutputStream body = response.getOutputStream();
+            if (!gzip) return body;
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            // Sync flush, so every flush of the export reaches the client instead of waiting in the deflater
+            return new GZIPOutputStream(body, GZIP_BUFFER_SIZE, true);
+        }, ndjson);
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.demospring.controller;
+
+import com.example.demospring.service.catalog.CatalogImportReport;
+import com.example.demospring.service.catalog.CatalogImportService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+@RestController
+@RequiredArgsConstructor
+public class CatalogImportController {
+    private final CatalogImportService catalogImportService;
+
+    /**
+     * Import a catalog file from the import directory
+     */
+    @PostMapping(path = "/catalog/import/{fileName}")
+    public CatalogImportReport importFile(@PathVariable("fileName") String fileName,
+                                          @RequestParam(name = "dryRun", defaultValue = "false") boolean dryRun,
+                                          @RequestParam(name = "resume", defaultValue = "false") boolean resume) throws IOException {
+        return catalogImportService.importFile(fileName, dryRun, resume);
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.demospring.controller;
+
+import com.example.demospring.data.dao.EntityVersions;
+import com.example.demospring.data.entities.CategoryEntity;
+import com.example.demospring.service.CategoryNode;
+import com.example.demospring.service.CategoryTreeService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * The category tree, served from memory. Responses carry the ETag of the current category version; a request
+ * that sends it back gets a 304.
+ */
+@RestController
+@RequiredArgsConstructor
+public class CategoryController {
+    private final CategoryTreeService categoryTreeService;
+    private final EntityVersions entityVersions;
+
+    @GetMapping(path = "/categories")
+    public ResponseEntity<List<CategoryNode>> getRoots(WebRequest request) {
+        return tagged(request, () -> categoryTreeService.getTree().getRoots());
+    }
+
+    @GetMapping(path = "/categories/{id}")
+    public ResponseEntity<CategoryNode> getCategory(@PathVariable("id") UUID id, WebRequest request) {
+        return tagged(request, () -> categoryTreeService.getTree().getNode(id));
+    }
+
+    @GetMapping(path = "/categories/{id}/children")
+    public ResponseEntity<List<CategoryNode>> getChildren(@PathVariable("id") UUID id, WebRequest request) {
+        return tagged(request, () -> categoryTreeService.getTree().getChildren(id));
+    }
+
+    private <R> ResponseEntity<R> tagged(WebRequest request, Supplier<R> read) {
+        String tag = entityVersions.getTag(CategoryEntity.class);
+        if (tag != null && request.checkNotModified(tag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(tag).build();
+        }
+        R body = read.get();
+        if (body == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return tag == null ? ResponseEntity.ok(body) : ResponseEntity.ok().eTag(tag).body(body);
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.demospring.controller;
+
+import com.example.demospring.data.dao.DatabaseLimiter;
+import com.example.demospring.data.dao.DatabaseLimiterStats;
+import com.example.demospring.data.metrics.DaoMetrics;
+import com.example.demospring.data.metrics.OperationStats;
+import com.example.demospring.data.metrics.SlowQuery;
+import com.example.demospring.service.auth.PasswordService;
+import com.example.demospring.service.auth.PasswordStats;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+public class MetricsController {
+    private final DaoMetrics daoMetrics;
+    private final PasswordService passwordService;
+    private final DatabaseLimiter databaseLimiter;
+
+    /**
+     * The statistics of the DAO operations, the operations with the most total time first
+     */
+    @GetMapping(path = "/metrics/dao")
+    public List<OperationStats> getDaoStats() {
+        List<OperationStats> stats = new ArrayList<>(daoMetrics.getStats());
+        stats.sort(Comparator.comparingDouble((OperationStats operation) -> operation.getMeanMillis() * operation.getCalls()).reversed());
+        return stats;
+    }
+
+    @GetMapping(path = "/metrics/dao/slow")
+    public List<SlowQuery> getSlowQueries() {
+        return daoMetrics.getSlowQueries();
+    }
+
+    @GetMapping(path = "/metrics/passwords")
+    public PasswordStats getPasswordStats() {
+        return passwordService.getStats();
+    }
+
+    @GetMapping(path = "/metrics/database-limiter")
+    public DatabaseLimiterStats getDatabaseLimiterStats() {
+        return databaseLimiter.getStats();
+    }
+
+    @PostMapping(path = "/metrics/dao/reset")
+    public void reset() {
+        daoMetrics.reset();
+    }
+}
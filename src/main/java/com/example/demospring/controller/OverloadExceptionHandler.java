@@ -0,0 +1,30 @@
+package com.example.demospring.controller;
+
+import com.example.demospring.data.dao.DatabaseOverloadedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Answers requests that were shed because of overload with a 503 and a Retry-After header, so clients back off
+ * instead of retrying at once
+ */
+@RestControllerAdvice
+public class OverloadExceptionHandler {
+    private static final long DEFAULT_RETRY_AFTER_MILLIS = 1_000;
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> onRejected(RejectedExecutionException exception) {
+        long retryAfterMillis = exception instanceof DatabaseOverloadedException
+                ? ((DatabaseOverloadedException) exception).getRetryAfterMillis() : DEFAULT_RETRY_AFTER_MILLIS;
+        // Retry-After is in whole seconds, rounded up so the hint is never shorter than the estimate
+        long retryAfterSeconds = Math.max(1, (retryAfterMillis + 999) / 1_000);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+                .body(exception.getMessage());
+    }
+}
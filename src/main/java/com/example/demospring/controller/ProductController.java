@@ -0,0 +1,60 @@
+package com.example.demospring.controller;
+
+import com.example.demospring.data.dao.AsyncDao;
+import com.example.demospring.data.dao.DatabaseLimiter;
+import com.example.demospring.data.dao.DatabasePriority;
+import com.example.demospring.data.dao.EntityVersions;
+import com.example.demospring.data.dao.ProductDao;
+import com.example.demospring.data.entities.ProductEntity;
+import com.example.demospring.data.filter.ProductFilter;
+import com.example.demospring.data.projection.ProductSummary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+public class ProductController {
+    public static final int DEFAULT_LIMIT = 50;
+
+    private final AsyncDao<ProductEntity> products;
+    private final EntityVersions entityVersions;
+
+    @Autowired
+    public ProductController(ProductDao productDao, DatabaseLimiter databaseLimiter, EntityVersions entityVersions) {
+        // Catalog browsing is the first to be shed when the database is overloaded
+        this.products = databaseLimiter.async(productDao, DatabasePriority.SHEDDABLE);
+        this.entityVersions = entityVersions;
+    }
+
+    /**
+     * List the products. The request thread is released while the query waits for a connection and runs. A request
+     * with the ETag of the current product version gets a 304 without a query.
+     */
+    @GetMapping(path = "/products")
+    public CompletableFuture<ResponseEntity<List<ProductSummary>>> list(@RequestParam(name = "name", required = false) String name,
+                                                                        @RequestParam(name = "maxPrice", required = false) BigDecimal maxPrice,
+                                                                        @RequestParam(name = "limit", defaultValue = "" + DEFAULT_LIMIT) int limit,
+                                                                        @RequestParam(name = "offset", defaultValue = "0") int offset,
+                                                                        WebRequest request) {
+        String tag = entityVersions.getTag(ProductEntity.class);
+        if (tag != null && request.checkNotModified(tag)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(tag).build());
+        }
+        ProductFilter filter = new ProductFilter();
+        filter.setName(name);
+        filter.setMaxPrice(maxPrice);
+        filter.orderBy("name");
+        filter.setLimit(limit);
+        filter.setOffset(offset);
+        return products.project(filter, ProductSummary.class, ProductSummary.FIELDS)
+                .thenApply(summaries -> tag == null ? ResponseEntity.ok(summaries) : ResponseEntity.ok().eTag(tag).body(summaries));
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.demospring.controller;
+
+import com.example.demospring.data.dao.EntityVersions;
+import com.example.demospring.data.entities.ProductEntity;
+import com.example.demospring.service.ProductSearchService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequiredArgsConstructor
+public class ProductSearchController {
+    private final ProductSearchService productSearchService;
+    private final EntityVersions entityVersions;
+
+    /**
+     * Search the products. Answered from the in-memory index without a database call, so unlike the listings it
+     * does not go through the database limiter and is never shed.
+     */
+    @GetMapping(path = "/products/search")
+    public ResponseEntity<List<UUID>> search(@RequestParam("q") String query,
+                                             @RequestParam(name = "limit", defaultValue = "" + ProductSearchService.DEFAULT_LIMIT) int limit,
+                                             WebRequest request) {
+        String tag = entityVersions.getTag(ProductEntity.class);
+        if (tag != null && request.checkNotModified(tag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(tag).build();
+        }
+        List<UUID> ids = productSearchService.search(query, limit);
+        return tag == null ? ResponseEntity.ok(ids) : ResponseEntity.ok().eTag(tag).body(ids);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.demospring.controller;
+
+import com.example.demospring.service.sales.SalesRollupService;
+import com.example.demospring.service.sales.SalesTotals;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.UUID;
+
+@RestController
+@RequiredArgsConstructor
+public class SalesController {
+    private final SalesRollupService salesRollupService;
+
+    @GetMapping(path = "/sales")
+    public SalesTotals getTotal() {
+        return salesRollupService.getTotal();
+    }
+
+    @GetMapping(path = "/sales/products/{id}")
+    public SalesTotals getProduct(@PathVariable("id") UUID id) {
+        return salesRollupService.getProduct(id);
+    }
+
+    @GetMapping(path = "/sales/categories/{id}")
+    public SalesTotals getCategory(@PathVariable("id") UUID id) {
+        return salesRollupService.getCategory(id);
+    }
+
+    @GetMapping(path = "/sales/days")
+    public Map<LocalDate, SalesTotals> getDays(@RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                               @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return salesRollupService.getDays(from, to);
+    }
+
+    @GetMapping(path = "/sales/hours")
+    public Map<Integer, SalesTotals> getHours(@RequestParam("date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return salesRollupService.getHours(date);
+    }
+
+    /**
+     * Start a rebuild of the rollups in the background. The current rollups keep answering until it completes.
+     */
+    @PostMapping(path = "/sales/rebuild")
+    public ResponseEntity<Void> rebuild() {
+        salesRollupService.rebuildAsync();
+        return ResponseEntity.accepted().build();
+    }
+}
@@ -1,8 +1,9 @@
 package com.example.demospring.controller;
 
 import com.example.demospring.data.dao.CategoryDao;
+import com.example.demospring.data.dao.DatabaseLimiter;
+import com.example.demospring.data.dao.DatabasePriority;
 import com.example.demospring.data.entities.CategoryEntity;
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -11,13 +12,16 @@ import org.springframework.web.bind.annotation.RestController;
 @RequiredArgsConstructor
 public class TestController {
     private final CategoryDao categoryDao;
+    private final DatabaseLimiter databaseLimiter;
 
-    @Transactional
     @GetMapping(path = "/getSomething")
     public String getSomething(){
         CategoryEntity categoryEntity = new CategoryEntity();
         categoryEntity.setName("Test");
-        categoryDao.addCategory(categoryEntity);
+        databaseLimiter.execute(DatabasePriority.SHEDDABLE, false, () -> {
+            categoryDao.addCategory(categoryEntity);
+            return null;
+        });
         return  "Test String";
     }
 }
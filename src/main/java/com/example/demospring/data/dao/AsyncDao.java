@@ -0,0 +1,99 @@
+package com.example.demospring.data.dao;
+
+import com.example.demospring.data.filter.JPAFilter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous facade over a {@link GenericDao}. Every call runs in its own transaction through the
+ * {@link DatabaseLimiter}, so the returned entities are detached: associations that are needed must be part of
+ * the filter's fetch plan, or the call should be a projection. All calls of a facade have the same
+ * {@link DatabasePriority}.
+ */
+public class AsyncDao<T> {
+    private final GenericDao<T> dao;
+    private final DatabaseLimiter limiter;
+    private final DatabasePriority priority;
+
+    public AsyncDao(GenericDao<T> dao, DatabaseLimiter limiter, DatabasePriority priority) {
+        this.dao = dao;
+        this.limiter = limiter;
+        this.priority = priority;
+    }
+
+    /**
+     * See {@link GenericDao#get(JPAFilter)}
+     * @param filter The filter. Can be null, in which case all items are returned
+     * @return The future list of items
+     */
+    public CompletableFuture<List<T>> get(JPAFilter<T> filter) {
+        return limiter.submit(priority, true, () -> dao.get(filter));
+    }
+
+    /**
+     * See {@link GenericDao#getPage(JPAFilter)}
+     * @param filter The filter
+     * @return The future page of items
+     */
+    public CompletableFuture<KeysetPage<T>> getPage(JPAFilter<T> filter) {
+        return limiter.submit(priority, true, () -> dao.getPage(filter));
+    }
+
+    /**
+     * See {@link GenericDao#project(JPAFilter, Class, String...)}
+     * @param filter The filter. Can be null, in which case all items are returned
+     * @param resultClass The class of the results
+     * @param fields The selected fields
+     * @return The future list of results
+     */
+    public <R> CompletableFuture<List<R>> project(JPAFilter<T> filter, Class<R> resultClass, String... fields) {
+        return limiter.submit(priority, true, () -> dao.project(filter, resultClass, fields));
+    }
+
+    /**
+     * See {@link GenericDao#count(JPAFilter)}
+     * @param filter The filter. Can be null, in which case all items are counted
+     * @return The future number of items
+     */
+    public CompletableFuture<Long> count(JPAFilter<T> filter) {
+        return limiter.submit(priority, true, () -> dao.count(filter));
+    }
+
+    /**
+     * See {@link GenericDao#find(Object)}
+     * @param id The ID of the object
+     * @return The future object, completed with null if it does not exist
+     */
+    public CompletableFuture<T> find(Object id) {
+        return limiter.submit(priority, true, () -> dao.find(id));
+    }
+
+    /**
+     * See {@link GenericDao#persist(Object)}
+     * @param obj The object to store in the database
+     * @return The future stored object
+     */
+    public CompletableFuture<T> persist(T obj) {
+        return limiter.submit(priority, false, () -> dao.persist(obj));
+    }
+
+    /**
+     * See {@link GenericDao#persistAll(Collection)}
+     * @param objects The objects to store in the database
+     * @return The future report of the batches
+     */
+    public CompletableFuture<BatchReport> persistAll(Collection<T> objects) {
+        return limiter.submit(priority, false, () -> dao.persistAll(objects));
+    }
+
+    /**
+     * See {@link GenericDao#merge(Object)}
+     * @param obj The object to update
+     * @return The future updated object
+     */
+    public CompletableFuture<T> merge(T obj) {
+        return limiter.submit(priority, false, () -> dao.merge(obj));
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.demospring.data.dao;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of a bulk write: how many entities were written and how long every batch took
+ */
+@Getter
+public class BatchReport {
+    private int count;
+
+    private final List<Long> batchNanos = new ArrayList<>();
+
+    void addBatch(int size, long nanos) {
+        count += size;
+        batchNanos.add(nanos);
+    }
+
+    /**
+     * The duration of every batch, in nanoseconds, in the order the batches were written
+     * @return The batch durations
+     */
+    public List<Long> getBatchNanos() {
+        return Collections.unmodifiableList(batchNanos);
+    }
+
+    /**
+     * The number of batches written
+     * @return The number of batches
+     */
+    public int getBatches() {
+        return batchNanos.size();
+    }
+
+    /**
+     * The total time spent writing all batches, in milliseconds
+     * @return The total duration
+     */
+    public long getTotalMillis() {
+        long total = 0;
+        for (long nanos : batchNanos) {
+            total += nanos;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(total);
+    }
+
+    @Override
+    public String toString() {
+        return count + " items in " + getBatches() + " batches, " + getTotalMillis() + " ms";
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.demospring.data.dao;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The progress of a chunked bulk update or delete, reported after every chunk
+ */
+@Getter
+@AllArgsConstructor
+public class BulkProgress {
+    /**
+     * The number of chunks committed so far
+     */
+    private final int chunks;
+
+    /**
+     * The number of rows updated or deleted so far
+     */
+    private final long rows;
+
+    /**
+     * The id of the last row of the last committed chunk; the operation continues after it
+     */
+    private final Object lastId;
+
+    private final long elapsedMillis;
+
+    @Override
+    public String toString() {
+        return "BulkProgress{chunks=" + chunks + ", rows=" + rows + ", lastId=" + lastId + ", elapsedMillis=" + elapsedMillis + "}";
+    }
+}
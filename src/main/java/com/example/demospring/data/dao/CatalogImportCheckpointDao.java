@@ -0,0 +1,35 @@
+package com.example.demospring.data.dao;
+
+import com.example.demospring.data.entities.CatalogImportCheckpointEntity;
+import jakarta.persistence.EntityManager;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class CatalogImportCheckpointDao extends GenericDao<CatalogImportCheckpointEntity> {
+    public CatalogImportCheckpointDao(EntityManager entityManager) {
+        super(CatalogImportCheckpointEntity.class, entityManager);
+    }
+
+    /**
+     * Store the progress of an import
+     * @param importId The id of the import
+     * @param fileSize The size of the imported file
+     * @param records The number of records committed
+     * @param completed Whether the whole file is imported
+     */
+    public void save(String importId, long fileSize, long records, boolean completed) {
+        CatalogImportCheckpointEntity checkpoint = find(importId);
+        if (checkpoint == null) {
+            checkpoint = new CatalogImportCheckpointEntity();
+            checkpoint.setImportId(importId);
+            checkpoint.setFileSize(fileSize);
+            checkpoint.setRecords(records);
+            checkpoint.setCompleted(completed);
+            persist(checkpoint);
+        } else {
+            checkpoint.setFileSize(fileSize);
+            checkpoint.setRecords(records);
+            checkpoint.setCompleted(completed);
+        }
+    }
+}
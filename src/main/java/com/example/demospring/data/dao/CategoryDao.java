@@ -1,31 +1,73 @@
 package com.example.demospring.data.dao;
 
 import com.example.demospring.data.entities.CategoryEntity;
+import com.example.demospring.data.event.ChangeType;
+import com.example.demospring.data.event.EntityChangedEvent;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
 import jakarta.persistence.criteria.Root;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public class CategoryDao {
     private final EntityManager entityManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private EntityVersions entityVersions;
+    private ChangeOutbox changeOutbox;
 
     @Autowired
-    public CategoryDao(EntityManager entityManager) {
+    public CategoryDao(EntityManager entityManager, ApplicationEventPublisher eventPublisher) {
         this.entityManager = entityManager;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Set the version counters bumped by every write. Without them no version is kept
+     * @param entityVersions The version counters
+     */
+    @Autowired(required = false)
+    public void setEntityVersions(EntityVersions entityVersions) {
+        this.entityVersions = entityVersions;
+    }
+
+    /**
+     * Set the outbox every write appends its change records to. Without it no change is recorded
+     * @param changeOutbox The outbox
+     */
+    @Autowired(required = false)
+    public void setChangeOutbox(ChangeOutbox changeOutbox) {
+        this.changeOutbox = changeOutbox;
     }
 
     public void addCategory(CategoryEntity toAdd) {
         entityManager.persist(toAdd);
+        onWrite(ChangeType.INSERT, toAdd.getId());
+    }
+
+    /**
+     * Insert the categories and record a single bulk change for all of them, so listeners that reload every
+     * category do it once
+     * @param toAdd The categories
+     */
+    public void addCategories(Collection<CategoryEntity> toAdd) {
+        if (toAdd.isEmpty()) return;
+        for (CategoryEntity category : toAdd) {
+            entityManager.persist(category);
+        }
+        onWrite(ChangeType.INSERT, null);
     }
 
     public CategoryEntity update(CategoryEntity toUpdate) {
-        return entityManager.merge(toUpdate);
+        CategoryEntity updated = entityManager.merge(toUpdate);
+        onWrite(ChangeType.UPDATE, updated.getId());
+        return updated;
     }
 
 
@@ -41,4 +83,16 @@ public class CategoryDao {
         return query.getResultList();
     }
 
+    /**
+     * Bump the category version, record the change in the outbox and publish it to the listeners of this node
+     */
+    private void onWrite(ChangeType changeType, Object id) {
+        if (entityVersions != null) {
+            entityVersions.bump(CategoryEntity.class);
+        }
+        if (changeOutbox != null) {
+            changeOutbox.append(CategoryEntity.class, id, changeType);
+        }
+        eventPublisher.publishEvent(new EntityChangedEvent(CategoryEntity.class, id, changeType));
+    }
 }
@@ -0,0 +1,39 @@
+package com.example.demospring.data.dao;
+
+import com.example.demospring.data.entities.ChangeFeedOffsetEntity;
+import jakarta.persistence.EntityManager;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class ChangeFeedOffsetDao extends GenericDao<ChangeFeedOffsetEntity> {
+    public ChangeFeedOffsetDao(EntityManager entityManager) {
+        super(ChangeFeedOffsetEntity.class, entityManager);
+    }
+
+    /**
+     * Return the id of the last change record delivered by the node
+     * @param nodeId The id of the node
+     * @return The last id, or null if the node never stored an offset
+     */
+    public Long getLastId(String nodeId) {
+        ChangeFeedOffsetEntity offset = find(nodeId);
+        return offset == null ? null : offset.getLastId();
+    }
+
+    /**
+     * Store the id of the last change record delivered by the node
+     * @param nodeId The id of the node
+     * @param lastId The last id delivered
+     */
+    public void setLastId(String nodeId, long lastId) {
+        ChangeFeedOffsetEntity offset = find(nodeId);
+        if (offset == null) {
+            offset = new ChangeFeedOffsetEntity();
+            offset.setNodeId(nodeId);
+            offset.setLastId(lastId);
+            persist(offset);
+        } else {
+            offset.setLastId(lastId);
+        }
+    }
+}
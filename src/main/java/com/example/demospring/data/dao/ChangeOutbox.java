@@ -0,0 +1,207 @@
+package com.example.demospring.data.dao;
+
+import com.example.demospring.NodeIds;
+import com.example.demospring.data.entities.ChangeFeedOffsetEntity;
+import com.example.demospring.data.entities.ChangeRecordEntity;
+import com.example.demospring.data.event.ChangeRecord;
+import com.example.demospring.data.event.ChangeType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.metamodel.EntityType;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The transactional outbox: every write through the DAOs appends compact change records (entity type, id, change
+ * type and version) in the same transaction, so a record exists exactly when its write is committed. The records
+ * are inserted as one JDBC batch per write and read back in id order by the change feed.
+ *
+ * A write of more than outbox.max-ids-per-write entities appends a single bulk record without id instead of one
+ * record per entity.
+ *
+ * Every record carries the id of the node that wrote it (outbox.node-id, the host name by default), which also keys
+ * the feed offset of the node. It must differ between nodes and stay the same across restarts of a node.
+ */
+@Slf4j
+@Repository
+public class ChangeOutbox {
+    private final EntityManager entityManager;
+    private final EntityVersions entityVersions;
+    private final String nodeId;
+    private final int maxIdsPerWrite;
+
+    private volatile String insert;
+    private volatile Map<String, EntityType<?>> entityTypes;
+
+    @Autowired
+    public ChangeOutbox(EntityManager entityManager, EntityVersions entityVersions,
+                        @Value("${outbox.node-id:}") String nodeId,
+                        @Value("${outbox.max-ids-per-write:100}") int maxIdsPerWrite) {
+        if (maxIdsPerWrite <= 0) {
+            throw new IllegalArgumentException("The maximum number of ids per write must be positive");
+        }
+        this.entityManager = entityManager;
+        this.entityVersions = entityVersions;
+        this.nodeId = NodeIds.resolve(nodeId);
+        this.maxIdsPerWrite = maxIdsPerWrite;
+    }
+
+    /**
+     * The id of this node, stored with every record it appends
+     * @return The node id
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Append the change of one entity. Must be called in the transaction of the write
+     * @param entityClass The entity class
+     * @param id The id of the entity, or null for a bulk change
+     * @param changeType The type of the change
+     */
+    public void append(Class<?> entityClass, Object id, ChangeType changeType) {
+        appendAll(entityClass, Collections.singletonList(id), changeType);
+    }
+
+    /**
+     * Append the changes of several entities of the same class, or one bulk record if there are more than
+     * outbox.max-ids-per-write of them. Must be called in the transaction of the write
+     * @param entityClass The entity class
+     * @param ids The ids of the entities. A null id stands for a bulk change
+     * @param changeType The type of the change
+     */
+    public void appendAll(Class<?> entityClass, Collection<?> ids, ChangeType changeType) {
+        // The feed offsets are written while delivering the feed, recording them would feed the feed
+        if (ids.isEmpty() || ChangeFeedOffsetEntity.class.equals(entityClass)) return;
+        Collection<?> recorded = ids.size() > maxIdsPerWrite ? Collections.singletonList(null) : ids;
+        String entityType = entityManager.getMetamodel().entity(entityClass).getName();
+        long version = entityVersions.getVersion(entityClass);
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.now());
+        String sql = insert();
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (Object id : recorded) {
+                    statement.setString(1, entityType);
+                    statement.setString(2, id == null ? null : id.toString());
+                    statement.setString(3, changeType.name());
+                    statement.setLong(4, version);
+                    statement.setString(5, nodeId);
+                    statement.setTimestamp(6, createdAt);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+
+    /**
+     * Read the records after the given id, in id order
+     * @param afterId The id of the last record already read
+     * @param limit The maximum number of records
+     * @return The records. Records of entity types that no longer exist are left out
+     */
+    public List<ChangeRecord> findAfter(long afterId, int limit) {
+        return toRecords(entityManager.createQuery(
+                        "select r from ChangeRecordEntity r where r.id > :afterId order by r.id", ChangeRecordEntity.class)
+                .setParameter("afterId", afterId)
+                .setMaxResults(limit)
+                .getResultList());
+    }
+
+    /**
+     * Read the records with the given ids, in id order
+     * @param ids The ids of the records
+     * @return The records that exist. Records of entity types that no longer exist are left out
+     */
+    public List<ChangeRecord> findByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) return new ArrayList<>();
+        return toRecords(entityManager.createQuery(
+                        "select r from ChangeRecordEntity r where r.id in :ids order by r.id", ChangeRecordEntity.class)
+                .setParameter("ids", ids)
+                .getResultList());
+    }
+
+    private List<ChangeRecord> toRecords(List<ChangeRecordEntity> entities) {
+        List<ChangeRecord> records = new ArrayList<>(entities.size());
+        for (ChangeRecordEntity entity : entities) {
+            EntityType<?> type = entityTypes().get(entity.getEntityType());
+            if (type == null) {
+                log.warn("Ignoring change record " + entity.getId() + " of unknown entity " + entity.getEntityType());
+                continue;
+            }
+            records.add(new ChangeRecord(entity.getId(), type.getJavaType(), parseId(type, entity.getEntityId()),
+                    entity.getChangeType(), entity.getEntityVersion() == null ? 0 : entity.getEntityVersion(),
+                    entity.getNodeId(), nodeId.equals(entity.getNodeId()), entity.getCreatedAt()));
+        }
+        return records;
+    }
+
+    /**
+     * The id of the last record appended
+     * @return The highest id, or 0 if the outbox is empty
+     */
+    public long getLastId() {
+        Long lastId = entityManager.createQuery("select max(r.id) from ChangeRecordEntity r", Long.class).getSingleResult();
+        return lastId == null ? 0 : lastId;
+    }
+
+    /**
+     * Delete the records appended before the given time
+     * @param before The time
+     * @return The number of records deleted
+     */
+    public int deleteBefore(LocalDateTime before) {
+        return entityManager.createQuery("delete from ChangeRecordEntity r where r.createdAt < :before")
+                .setParameter("before", before)
+                .executeUpdate();
+    }
+
+    private Object parseId(EntityType<?> type, String id) {
+        if (id == null) return null;
+        Class<?> idType = type.getIdType().getJavaType();
+        if (UUID.class.equals(idType)) return UUID.fromString(id);
+        if (Long.class.equals(idType) || long.class.equals(idType)) return Long.valueOf(id);
+        if (Integer.class.equals(idType) || int.class.equals(idType)) return Integer.valueOf(id);
+        return id;
+    }
+
+    private String insert() {
+        String sql = insert;
+        if (sql == null) {
+            SessionFactoryImplementor factory = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+            String table = ((AbstractEntityPersister) factory.getMappingMetamodel().getEntityDescriptor(ChangeRecordEntity.class)).getTableName();
+            sql = "insert into " + table + " (entity_type, entity_id, change_type, entity_version, node_id, created_at)"
+                    + " values (?, ?, ?, ?, ?, ?)";
+            insert = sql;
+        }
+        return sql;
+    }
+
+    private Map<String, EntityType<?>> entityTypes() {
+        Map<String, EntityType<?>> types = entityTypes;
+        if (types == null) {
+            types = new HashMap<>();
+            for (EntityType<?> type : entityManager.getMetamodel().getEntities()) {
+                types.put(type.getName(), type);
+            }
+            entityTypes = types;
+        }
+        return types;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.demospring.data.dao;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A count returned by the DAO, with whether it is exact. Estimated counts should be displayed as approximate,
+ * for example "about 1.2M results".
+ */
+@Getter
+@AllArgsConstructor
+public class CountResult {
+    private final long value;
+
+    private final boolean exact;
+}
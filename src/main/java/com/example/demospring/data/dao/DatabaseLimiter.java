@@ -0,0 +1,420 @@
+package com.example.demospring.data.dao;
+
+import com.example.demospring.concurrent.GradientLimit;
+import com.example.demospring.concurrent.VirtualThreads;
+import com.example.demospring.datasource.RoutingContext;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Runs database calls with a bounded number of calls in flight, so a burst of requests queues here instead of on
+ * the connection pool, where waiting threads would time out together and hold their request threads.
+ *
+ * The bound adapts to the latency of the calls with a {@link GradientLimit}, between dao.limiter.min-limit and the
+ * pool size: when the database slows down fewer calls are let through, and the others are shed early instead of
+ * piling up. Calls carry a {@link DatabasePriority}: a freed slot goes to the highest class waiting, lower classes
+ * may only fill part of the limit, and a call whose expected wait is longer than its class may wait is rejected at
+ * once with a {@link DatabaseOverloadedException} carrying a retry hint. A call that waits longer than its share
+ * of dao.async.acquire-timeout-ms is rejected the same way.
+ *
+ * An asynchronous call waits for its slot without a thread and is handed to the executor once admitted, so the
+ * executor threads only ever run admitted calls.
+ */
+@Component
+public class DatabaseLimiter {
+    private static final DatabasePriority[] PRIORITIES = DatabasePriority.values();
+
+    private final GradientLimit limit;
+    private final int maxConcurrency;
+    private final long acquireTimeoutMillis;
+    private final ExecutorService executor;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<DatabasePriority, ArrayDeque<Waiter>> waiters = new EnumMap<>(DatabasePriority.class);
+    private final Map<DatabasePriority, LongAdder> rejected = new EnumMap<>(DatabasePriority.class);
+    private int active;
+
+    /**
+     * A call waiting for a slot: a thread blocked on the condition, or an asynchronous call started once admitted
+     */
+    private static class Waiter {
+        private final Condition granted;
+        private final Runnable start;
+        private boolean admitted;
+
+        private Waiter(Condition granted, Runnable start) {
+            this.granted = granted;
+            this.start = start;
+        }
+    }
+
+    @Autowired
+    public DatabaseLimiter(PlatformTransactionManager transactionManager,
+                           @Value("${spring.datasource.hikari.maximum-pool-size:10}") int maxConcurrency,
+                           @Value("${dao.async.acquire-timeout-ms:5000}") long acquireTimeoutMillis,
+                           @Value("${dao.limiter.min-limit:1}") int minConcurrency,
+                           @Value("${dao.limiter.rtt-tolerance:1.5}") double rttTolerance) {
+        this.limit = new GradientLimit(maxConcurrency, Math.min(minConcurrency, maxConcurrency), maxConcurrency, rttTolerance);
+        this.maxConcurrency = maxConcurrency;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        // Only admitted calls get a thread, so more threads than the limit would stay idle
+        this.executor = VirtualThreads.newExecutor("dao-async", maxConcurrency);
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        for (DatabasePriority priority : PRIORITIES) {
+            waiters.put(priority, new ArrayDeque<>());
+            rejected.put(priority, new LongAdder());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Run the call in its own transaction once a slot is free, with the normal priority
+     * @param readOnly Whether the transaction is read-only, which lets it run on a read replica
+     * @param call The database call
+     * @return The future result of the call
+     */
+    public <R> CompletableFuture<R> submit(boolean readOnly, Supplier<R> call) {
+        return submit(DatabasePriority.NORMAL, readOnly, call);
+    }
+
+    /**
+     * Run the call in its own transaction once a slot is free. The call only gets a thread once it is admitted; a
+     * call that would not be admitted in time is rejected without one.
+     * @param priority The priority class of the call
+     * @param readOnly Whether the transaction is read-only, which lets it run on a read replica
+     * @param call The database call
+     * @return The future result of the call, completed exceptionally with a {@link DatabaseOverloadedException}
+     *      if it was shed, or with a {@link RejectedExecutionException} if the limiter is shut down
+     */
+    public <R> CompletableFuture<R> submit(DatabasePriority priority, boolean readOnly, Supplier<R> call) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        // The executor thread routes like the caller, so the call reads the writes of its request
+        Supplier<R> routed = RoutingContext.propagate(() -> runAdmitted(readOnly, true, call));
+        Runnable start = () -> dispatch(result, routed);
+        Waiter waiter;
+        try {
+            waiter = enqueue(priority, start);
+        } catch (DatabaseOverloadedException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+        if (waiter == null) {
+            start.run();
+        } else {
+            CompletableFuture.delayedExecutor(maxWaitMillis(priority), TimeUnit.MILLISECONDS)
+                    .execute(() -> expire(priority, waiter, result));
+        }
+        return result;
+    }
+
+    /**
+     * Run the call in its own transaction on the calling thread, once a slot is free. Must not be called inside a
+     * transaction.
+     * @param priority The priority class of the call
+     * @param readOnly Whether the transaction is read-only, which lets it run on a read replica
+     * @param call The database call
+     * @return The result of the call
+     * @throws DatabaseOverloadedException If the call was shed
+     * @throws IllegalStateException If a transaction is active, its connection would be held while waiting for a slot
+     */
+    public <R> R execute(DatabasePriority priority, boolean readOnly, Supplier<R> call) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("A limited database call must not run inside a transaction");
+        }
+        return run(priority, enqueue(priority, null), readOnly, true, call);
+    }
+
+    /**
+     * Run a read-only call that streams its rows to a client or a long computation, like {@link #execute}: it takes
+     * a slot for as long as it holds its connection, but its duration depends on the reader rather than on the
+     * database, so it is not sampled as latency and does not shrink the limit. Must not be called inside a
+     * transaction.
+     * @param priority The priority class of the call
+     * @param call The database call
+     * @return The result of the call
+     * @throws DatabaseOverloadedException If the call was shed
+     * @throws IllegalStateException If a transaction is active, its connection would be held while waiting for a slot
+     */
+    public <R> R stream(DatabasePriority priority, Supplier<R> call) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("A limited database call must not run inside a transaction");
+        }
+        return run(priority, enqueue(priority, null), true, false, call);
+    }
+
+    /**
+     * Return the asynchronous facade of the DAO, running its calls through this limiter with the normal priority
+     * @param dao The DAO
+     * @return The asynchronous DAO
+     */
+    public <T> AsyncDao<T> async(GenericDao<T> dao) {
+        return async(dao, DatabasePriority.NORMAL);
+    }
+
+    /**
+     * Return the asynchronous facade of the DAO, running its calls through this limiter
+     * @param dao The DAO
+     * @param priority The priority class of the calls
+     * @return The asynchronous DAO
+     */
+    public <T> AsyncDao<T> async(GenericDao<T> dao, DatabasePriority priority) {
+        return new AsyncDao<>(dao, this, priority);
+    }
+
+    /**
+     * The number of calls waiting for a slot
+     * @return The queue length
+     */
+    public int getQueueLength() {
+        lock.lock();
+        try {
+            return waiting(PRIORITIES[PRIORITIES.length - 1]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The number of calls running
+     * @return The calls holding a slot
+     */
+    public int getActive() {
+        lock.lock();
+        try {
+            return active;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The current limit, the load and the rejected calls
+     * @return The statistics
+     */
+    public DatabaseLimiterStats getStats() {
+        Map<DatabasePriority, Long> rejectedCalls = new EnumMap<>(DatabasePriority.class);
+        for (DatabasePriority priority : PRIORITIES) {
+            rejectedCalls.put(priority, rejected.get(priority).sum());
+        }
+        lock.lock();
+        try {
+            return new DatabaseLimiterStats(limit.getLimit(), maxConcurrency, active, waiting(PRIORITIES[PRIORITIES.length - 1]),
+                    limit.getShortRttNanos() / 1e6, limit.getLongRttNanos() / 1e6, rejectedCalls);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private <R> R run(DatabasePriority priority, Waiter waiter, boolean readOnly, boolean sampled, Supplier<R> call) {
+        if (waiter != null) {
+            await(priority, waiter);
+        }
+        return runAdmitted(readOnly, sampled, call);
+    }
+
+    /**
+     * Run a call holding a slot, and free the slot
+     */
+    private <R> R runAdmitted(boolean readOnly, boolean sampled, Supplier<R> call) {
+        TransactionTemplate transaction = readOnly ? readTransaction : writeTransaction;
+        int inFlight = getActive();
+        long start = System.nanoTime();
+        try {
+            return transaction.execute(status -> call.get());
+        } finally {
+            release(sampled ? System.nanoTime() - start : -1, inFlight);
+        }
+    }
+
+    /**
+     * Hand an admitted asynchronous call to the executor. If the executor refuses it, the slot is freed again
+     */
+    private <R> void dispatch(CompletableFuture<R> result, Supplier<R> call) {
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(call.get());
+                } catch (Throwable exception) {
+                    result.completeExceptionally(exception);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            release(-1, 0);
+            result.completeExceptionally(exception);
+        }
+    }
+
+    /**
+     * Reject an asynchronous call that was not admitted within the wait of its class
+     */
+    private <R> void expire(DatabasePriority priority, Waiter waiter, CompletableFuture<R> result) {
+        DatabaseOverloadedException exception;
+        lock.lock();
+        try {
+            if (waiter.admitted) return;
+            waiters.get(priority).remove(waiter);
+            exception = reject(priority, "No database slot became free within " + maxWaitMillis(priority) + " ms",
+                    expectedWaitMillis(priority, waiting(priority) + 1));
+        } finally {
+            lock.unlock();
+        }
+        result.completeExceptionally(exception);
+    }
+
+    /**
+     * Take a slot if the priority class has one free and nobody of the same or a higher class is waiting; otherwise
+     * queue the call, or reject it if it could not be admitted within the wait of its class
+     * @param start Starts the call once admitted, or null if the calling thread waits for the slot
+     * @return The queued waiter, or null if the slot was taken
+     */
+    private Waiter enqueue(DatabasePriority priority, Runnable start) {
+        lock.lock();
+        try {
+            int ahead = waiting(priority);
+            if (ahead == 0 && active < capacity(priority)) {
+                active++;
+                return null;
+            }
+            long expectedWaitMillis = expectedWaitMillis(priority, ahead + 1);
+            if (expectedWaitMillis > maxWaitMillis(priority)) {
+                throw reject(priority, "The database is overloaded, " + ahead + " calls are waiting ahead", expectedWaitMillis);
+            }
+            Waiter waiter = new Waiter(start == null ? lock.newCondition() : null, start);
+            waiters.get(priority).add(waiter);
+            return waiter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void await(DatabasePriority priority, Waiter waiter) {
+        List<Waiter> started = List.of();
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis(priority));
+            while (!waiter.admitted) {
+                if (remaining <= 0) {
+                    waiters.get(priority).remove(waiter);
+                    throw reject(priority, "No database slot became free within " + maxWaitMillis(priority) + " ms",
+                            expectedWaitMillis(priority, waiting(priority) + 1));
+                }
+                remaining = waiter.granted.awaitNanos(remaining);
+            }
+        } catch (InterruptedException exception) {
+            if (waiter.admitted) {
+                active--;
+                started = admitWaiters();
+            } else {
+                waiters.get(priority).remove(waiter);
+            }
+            Thread.currentThread().interrupt();
+            throw new CompletionException(exception);
+        } finally {
+            lock.unlock();
+            started.forEach(admitted -> admitted.start.run());
+        }
+    }
+
+    /**
+     * Free the slot of a call
+     * @param rttNanos The duration of the call, or a negative value if it is not a latency sample
+     */
+    private void release(long rttNanos, int inFlight) {
+        List<Waiter> started;
+        lock.lock();
+        try {
+            active--;
+            if (rttNanos >= 0) {
+                limit.onSample(rttNanos, inFlight);
+            }
+            started = admitWaiters();
+        } finally {
+            lock.unlock();
+        }
+        started.forEach(waiter -> waiter.start.run());
+    }
+
+    /**
+     * Hand the free slots to the waiting calls, highest class first. Called with the lock held
+     * @return The admitted asynchronous calls, to be started once the lock is released
+     */
+    private List<Waiter> admitWaiters() {
+        List<Waiter> started = new ArrayList<>();
+        for (DatabasePriority priority : PRIORITIES) {
+            ArrayDeque<Waiter> queue = waiters.get(priority);
+            while (!queue.isEmpty() && active < capacity(priority)) {
+                Waiter waiter = queue.poll();
+                waiter.admitted = true;
+                active++;
+                if (waiter.start == null) {
+                    waiter.granted.signal();
+                } else {
+                    started.add(waiter);
+                }
+            }
+        }
+        return started;
+    }
+
+    /**
+     * The number of calls waiting in the class and the higher ones. Called with the lock held
+     */
+    private int waiting(DatabasePriority priority) {
+        int waiting = 0;
+        for (int index = 0; index <= priority.ordinal(); index++) {
+            waiting += waiters.get(PRIORITIES[index]).size();
+        }
+        return waiting;
+    }
+
+    private int capacity(DatabasePriority priority) {
+        return Math.max(1, (int) (limit.getLimit() * priority.getLimitShare()));
+    }
+
+    private long maxWaitMillis(DatabasePriority priority) {
+        return (long) (acquireTimeoutMillis * priority.getWaitShare());
+    }
+
+    /**
+     * The time until the call at the given position of the queue is admitted, if the slots of its class free up at
+     * the recent latency. Called with the lock held
+     */
+    private long expectedWaitMillis(DatabasePriority priority, int position) {
+        long rttNanos = limit.getShortRttNanos();
+        return TimeUnit.NANOSECONDS.toMillis(rttNanos * position / capacity(priority));
+    }
+
+    private DatabaseOverloadedException reject(DatabasePriority priority, String message, long expectedWaitMillis) {
+        rejected.get(priority).increment();
+        // Ask for at least one round trip, a retry before that would find the same queue
+        long retryAfterMillis = Math.max(expectedWaitMillis, TimeUnit.NANOSECONDS.toMillis(limit.getShortRttNanos()));
+        return new DatabaseOverloadedException(message + " (" + priority + " call)", priority, retryAfterMillis);
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.demospring.data.dao;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * The current concurrency limit of the {@link DatabaseLimiter}, its load and the calls it shed
+ */
+@Getter
+@AllArgsConstructor
+public class DatabaseLimiterStats {
+    private final int limit;
+    private final int maxLimit;
+    private final int active;
+    private final int queued;
+    private final double recentRttMillis;
+    private final double longRttMillis;
+    private final Map<DatabasePriority, Long> rejected;
+}
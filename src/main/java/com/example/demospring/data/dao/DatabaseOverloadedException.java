@@ -0,0 +1,23 @@
+package com.example.demospring.data.dao;
+
+import lombok.Getter;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown by the {@link DatabaseLimiter} when a call is shed instead of waiting for the database. Carries an
+ * estimate of when a retry could be admitted.
+ */
+@Getter
+public class DatabaseOverloadedException extends RejectedExecutionException {
+    private static final long serialVersionUID = 1L;
+
+    private final DatabasePriority priority;
+    private final long retryAfterMillis;
+
+    public DatabaseOverloadedException(String message, DatabasePriority priority, long retryAfterMillis) {
+        super(message);
+        this.priority = priority;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+}
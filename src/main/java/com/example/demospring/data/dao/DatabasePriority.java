@@ -0,0 +1,48 @@
+package com.example.demospring.data.dao;
+
+/**
+ * The priority class of a call through the {@link DatabaseLimiter}. When the limit is reached, a freed slot goes to
+ * the oldest call of the highest class. Lower classes may only fill part of the limit, so a slot is left for the
+ * higher ones, and they give up sooner: a call is rejected at once when its expected wait is longer than its share
+ * of dao.async.acquire-timeout-ms.
+ */
+public enum DatabasePriority {
+    /**
+     * Checkouts and order writes
+     */
+    CRITICAL(1.0, 1.0),
+
+    /**
+     * Everything without a class of its own
+     */
+    NORMAL(0.8, 0.5),
+
+    /**
+     * Catalog browsing, admin listings and reports, which can be retried later
+     */
+    SHEDDABLE(0.5, 0.1);
+
+    private final double limitShare;
+    private final double waitShare;
+
+    DatabasePriority(double limitShare, double waitShare) {
+        this.limitShare = limitShare;
+        this.waitShare = waitShare;
+    }
+
+    /**
+     * The part of the concurrency limit the calls of the class may fill
+     * @return The share, between 0 and 1
+     */
+    public double getLimitShare() {
+        return limitShare;
+    }
+
+    /**
+     * The part of the acquire timeout the calls of the class may wait for a slot
+     * @return The share, between 0 and 1
+     */
+    public double getWaitShare() {
+        return waitShare;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.demospring.data.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A version counter per entity class, bumped by every write through the DAOs, from which read endpoints derive
+ * ETags. Reading a version is a map lookup and a volatile read, so a request whose ETag still matches is answered
+ * without touching the database.
+ *
+ * A write bumps the version twice: when it is made, and again when its transaction completes, since a read between
+ * the two would see the old rows with the new version. The tags also carry an id of this process, so tags of
+ * another node or of an earlier run never match. No tag is given out for entity-versions.settle-ms after a write,
+ * so state that catches up after the commit (read replicas, caches rebuilt by event listeners) is not cached under
+ * the new tag before it is up to date. When reads are routed to replicas (datasource.replicas.urls) the window is at
+ * least datasource.replicas.max-lag-ms, the lag a replica may have and still take reads.
+ */
+@Slf4j
+@Component
+public class EntityVersions {
+    private final Map<Class<?>, Version> versions = new ConcurrentHashMap<>();
+    private final String epoch = Long.toHexString(new SecureRandom().nextLong());
+    private final long settleMillis;
+
+    private static class Version {
+        private final AtomicLong counter = new AtomicLong();
+        private volatile long lastWriteMillis;
+
+        private void bump() {
+            lastWriteMillis = System.currentTimeMillis();
+            counter.incrementAndGet();
+        }
+    }
+
+    @Autowired
+    public EntityVersions(@Value("${entity-versions.settle-ms:1000}") long settleMillis,
+                          @Value("${datasource.replicas.urls:}") String replicaUrls,
+                          @Value("${datasource.replicas.max-lag-ms:5000}") long maxReplicaLagMillis) {
+        if (!replicaUrls.isEmpty() && settleMillis < maxReplicaLagMillis) {
+            log.info("Raising entity-versions.settle-ms from " + settleMillis + " to the replica lag of " + maxReplicaLagMillis + " ms");
+            settleMillis = maxReplicaLagMillis;
+        }
+        this.settleMillis = settleMillis;
+    }
+
+    /**
+     * Record a write of the entity class
+     * @param entityClass The entity class
+     */
+    public void bump(Class<?> entityClass) {
+        Version version = version(entityClass);
+        version.bump();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    version.bump();
+                }
+            });
+        }
+    }
+
+    /**
+     * The current version of the entity class
+     * @param entityClass The entity class
+     * @return The number of writes seen, 0 if none
+     */
+    public long getVersion(Class<?> entityClass) {
+        return version(entityClass).counter.get();
+    }
+
+    /**
+     * Return a strong ETag for a response that depends only on the given entity classes
+     * @param entityClasses The entity classes the response is read from
+     * @return The tag, or null if one of the classes was written less than entity-versions.settle-ms ago
+     */
+    public String getTag(Class<?>... entityClasses) {
+        long settledBefore = System.currentTimeMillis() - settleMillis;
+        StringBuilder tag = new StringBuilder("\"").append(epoch);
+        for (Class<?> entityClass : entityClasses) {
+            Version version = version(entityClass);
+            if (version.lastWriteMillis > settledBefore) return null;
+            tag.append('-').append(version.counter.get());
+        }
+        return tag.append('"').toString();
+    }
+
+    private Version version(Class<?> entityClass) {
+        Version version = versions.get(entityClass);
+        return version != null ? version : versions.computeIfAbsent(entityClass, ignored -> new Version());
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.demospring.data.dao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A bounded cache where every entry expires after its own time to live. When full, the least recently used entry
+ * is evicted. All operations lock the whole cache, which is fine for lookups that are cheap compared to the query
+ * they replace. Values are loaded outside of the lock; a value whose load overlapped a {@link #clear()} or
+ * {@link #remove(Object)} is returned but not cached, since it may have been read before the change that caused it.
+ */
+public class ExpiringLruCache<K, V> {
+    private final Map<K, Entry<V>> entries;
+    private long hits;
+    private long misses;
+    private long generation;
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public ExpiringLruCache(int maxSize) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Return the cached value, or compute and cache it if it is missing or expired. The value is computed outside
+     * of the lock, so two threads can compute the same key at the same time.
+     * @param key The key
+     * @param loader Computes the value of a missing key
+     * @param ttlMillis Returns the time to live of a computed value
+     * @return The value
+     */
+    public V get(K key, Function<K, V> loader, Function<V, Long> ttlMillis) {
+        long now = System.currentTimeMillis();
+        long loadGeneration;
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                hits++;
+                return entry.value;
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+        V value = loader.apply(key);
+        long expiresAt = now + ttlMillis.apply(value);
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                entries.put(key, new Entry<>(value, expiresAt));
+            }
+        }
+        return value;
+    }
+
+    public synchronized void remove(K key) {
+        entries.remove(key);
+        generation++;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        generation++;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -1,23 +1,130 @@
 package com.example.demospring.data.dao;
 
+import com.example.demospring.data.event.ChangeType;
+import com.example.demospring.data.event.EntityChangedEvent;
+import com.example.demospring.data.filter.CountMode;
+import com.example.demospring.data.filter.FilterBindings;
 import com.example.demospring.data.filter.JPAFilter;
+import com.example.demospring.data.filter.KeysetCursor;
+import com.example.demospring.data.metrics.DaoMetrics;
+import com.example.demospring.data.metrics.SqlCapture;
 import jakarta.persistence.*;
 import jakarta.persistence.criteria.*;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.Metamodel;
+import jakarta.persistence.metamodel.SingularAttribute;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * Generic DAO used for doing JPA operations
+ * Generic DAO used for doing JPA operations. The read methods run in a read-only transaction when called outside
+ * of one, so they can be served by a read replica; inside a transaction they join it.
  */
 @Slf4j
 public abstract class GenericDao<T> {
+    public static final int DEFAULT_FETCH_SIZE = 500;
+    public static final int DEFAULT_BATCH_SIZE = 50;
+    public static final int DEFAULT_PLAN_CACHE_SIZE = 256;
+    public static final long DEFAULT_COUNT_CACHE_TTL_MILLIS = 30_000;
+    public static final int DEFAULT_SAMPLE_SIZE = 10_000;
+    public static final int DEFAULT_IN_CHUNK_SIZE = 256;
+    private static final int COUNT_CACHE_SIZE = 1_000;
+    private static final String PLAN_ALIAS = "e";
+    private static final String LOAD_GRAPH = "jakarta.persistence.loadgraph";
+    private static final String ALL_SHAPE = "all";
+    private static final String ID_SHAPE = "id";
+    private static final String ENTITY_SHAPE = "entity";
+
     private Class<T> classOfData;
 
     protected EntityManager entityManager;
 
+    protected final QueryPlanCache planCache = new QueryPlanCache(DEFAULT_PLAN_CACHE_SIZE);
+
+    protected DaoMetrics metrics;
+
+    private TransactionTemplate transactionTemplate;
+
+    private EntityVersions entityVersions;
+
+    private ChangeOutbox changeOutbox;
+
+    private ApplicationEventPublisher changePublisher;
+
+    private final Map<List<Object>, CachedCount> countCache = new ConcurrentHashMap<>();
+    /**
+     * Counts the writes through this DAO like {@link EntityVersions} does, for DAOs created without the versions
+     */
+    private final AtomicLong writes = new AtomicLong();
+    private volatile long countCacheTtlMillis = DEFAULT_COUNT_CACHE_TTL_MILLIS;
+    private int inChunkSize = DEFAULT_IN_CHUNK_SIZE;
+
+    private static class Chunk {
+        private final Object lastId;
+        private final int matched;
+        private final int rows;
+
+        private Chunk(Object lastId, int matched, int rows) {
+            this.lastId = lastId;
+            this.matched = matched;
+            this.rows = rows;
+        }
+    }
+
+    private static class CachedCount {
+        private final long value;
+        private final long version;
+        private final long expiresAt;
+
+        private CachedCount(long value, long version, long expiresAt) {
+            this.value = value;
+            this.version = version;
+            this.expiresAt = expiresAt;
+        }
+    }
+
     /**
      * Constructor for a DAO
      * @param classOfData - The class of the domain object that will be persisted and over which JPA operations will be performed
@@ -31,6 +138,52 @@ public abstract class GenericDao<T> {
         this.entityManager = entityManager;
     }
 
+    /**
+     * Set the metrics the DAO calls are recorded in. Without metrics nothing is measured
+     * @param metrics The metrics
+     */
+    @Autowired(required = false)
+    public void setMetrics(DaoMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Set the version counters bumped by every write. Without them no version is kept
+     * @param entityVersions The version counters
+     */
+    @Autowired(required = false)
+    public void setEntityVersions(EntityVersions entityVersions) {
+        this.entityVersions = entityVersions;
+    }
+
+    /**
+     * Set the outbox every write appends its change records to. Without it no change is recorded
+     * @param changeOutbox The outbox
+     */
+    @Autowired(required = false)
+    public void setChangeOutbox(ChangeOutbox changeOutbox) {
+        this.changeOutbox = changeOutbox;
+    }
+
+    /**
+     * Set the publisher of the {@link EntityChangedEvent} of every write. Without it no event is published
+     * @param changePublisher The event publisher
+     */
+    @Autowired(required = false)
+    public void setChangePublisher(ApplicationEventPublisher changePublisher) {
+        this.changePublisher = changePublisher;
+    }
+
+    /**
+     * Set the transaction manager used by the chunked bulk operations, which commit every chunk separately
+     * @param transactionManager The transaction manager
+     */
+    @Autowired(required = false)
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
     /**
      * Returns all items from the database, with the default limit for the maximum number of results
      * @return The entries from the database
@@ -44,11 +197,151 @@ public abstract class GenericDao<T> {
      * @param filter The filter for used for returning the items. Can be null, in which case all items are returned
      * @return The list of items that satisfy the given filter
      */
+    @Transactional(readOnly = true)
     public List<T> get(JPAFilter<T> filter) {
+        FilterBindings bindings = bind(filter);
+        return measure("get", shapeOf(filter, bindings), () -> select(filter, bindings), List::size);
+    }
+
+    /**
+     * Return the first item that satisfies the filter. The query stops after the first row, whatever the limit of
+     * the filter is.
+     * @param filter The filter, with an ordering if more than one item can match
+     * @return The first item, or null if none matches
+     */
+    @Transactional(readOnly = true)
+    public T findFirst(JPAFilter<T> filter) {
+        if (filter == null) {
+            throw new IllegalArgumentException("A filter is required");
+        }
+        FilterBindings bindings = bind(filter);
+        int limit = filter.getLimit();
+        filter.setLimit(1);
+        try {
+            List<T> result = measure("findFirst", shapeOf(filter, bindings), () -> select(filter, bindings), List::size);
+            return result.isEmpty() ? null : result.get(0);
+        } finally {
+            filter.setLimit(limit);
+        }
+    }
+
+    private List<T> select(JPAFilter<T> filter, FilterBindings bindings) {
+        if (filter != null && !filter.getFetchPlan().isEmpty()) {
+            return getWithFetchPlan(filter, bindings);
+        }
+        TypedQuery<T> planned = bindings == null ? null : createPlannedQuery(filter, bindings, classOfData, false);
+        try {
+            TypedQuery query = planned != null ? planned : entityManager.createQuery(createSelectQuery(filter));
+            if (filter != null) {
+                query.setMaxResults(filter.getLimit()).setFirstResult(filter.getOffset());
+            } else {
+                query.setMaxResults(JPAFilter.DEFAULT_LIMIT).setFirstResult(0);
+            }
+            List<T> result = query.getResultList();
+            return result;
+        } catch (NoResultException exception) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Load the items together with the associations of the fetch plan, applied as an entity graph. A graph with a
+     * collection joins its rows, so limit and offset could not be applied in SQL anymore and Hibernate would page in
+     * memory. In that case the ids of the page are selected first and the entities are fetched by id with the graph,
+     * in IN lists of at most {@link #setInChunkSize(int)} ids like {@link #findAll(Collection)}, so no statement binds
+     * the whole page or joins the children of all of its entities.
+     */
+    private List<T> getWithFetchPlan(JPAFilter<T> filter, FilterBindings bindings) {
+        EntityGraph<T> graph = createEntityGraph(filter.getFetchPlan());
+        if (!fetchesCollection(filter.getFetchPlan())) {
+            TypedQuery<T> planned = bindings == null ? null : createPlannedQuery(filter, bindings, classOfData, false);
+            TypedQuery<T> query = planned != null ? planned : entityManager.createQuery(createSelectQuery(filter));
+            return query.setHint(LOAD_GRAPH, graph)
+                    .setMaxResults(filter.getLimit())
+                    .setFirstResult(filter.getOffset())
+                    .getResultList();
+        }
+
+        List<Object> ids = selectFields(filter, Object.class, JPAFilter.ID_FIELD);
+        if (ids.isEmpty()) return Collections.emptyList();
+        // In the order of the page
+        return loadAll(ids, graph);
+    }
+
+    private EntityGraph<T> createEntityGraph(List<String> fetchPlan) {
+        EntityGraph<T> graph = entityManager.createEntityGraph(classOfData);
+        for (String path : fetchPlan) {
+            String[] attributes = path.split("\\.");
+            if (attributes.length == 1) {
+                graph.addAttributeNodes(attributes[0]);
+                continue;
+            }
+            Subgraph<?> subgraph = graph.addSubgraph(attributes[0]);
+            for (int index = 1; index < attributes.length - 1; index++) {
+                subgraph = subgraph.addSubgraph(attributes[index]);
+            }
+            subgraph.addAttributeNodes(attributes[attributes.length - 1]);
+        }
+        return graph;
+    }
+
+    private boolean fetchesCollection(List<String> fetchPlan) {
+        Metamodel metamodel = entityManager.getMetamodel();
+        for (String path : fetchPlan) {
+            ManagedType<?> type = metamodel.managedType(classOfData);
+            for (String name : path.split("\\.")) {
+                Attribute<?, ?> attribute = type.getAttribute(name);
+                if (attribute.isCollection()) return true;
+                if (!(attribute instanceof SingularAttribute)
+                        || !(((SingularAttribute<?, ?>) attribute).getType() instanceof ManagedType)) break;
+                type = (ManagedType<?>) ((SingularAttribute<?, ?>) attribute).getType();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return only the selected fields of the items that satisfy the filter, mapped to the result class. Only the
+     * selected columns are read and the results are not managed by the persistence context, so there is nothing to
+     * hydrate or dirty check. The result class can be
+     *      - a class with a constructor taking the fields in the given order, filled through a constructor expression
+     *      - {@link Tuple}, with an element per field aliased by the field name
+     *      - Object[], with the values in the given order
+     *      - the type of the field, if exactly one field is selected
+     * @param filter The filter used for returning the items. Can be null, in which case all items are returned
+     * @param resultClass The class of the results
+     * @param fields The selected fields. If none are given the fields selected on the filter are used
+     * @return The list of results
+     */
+    @Transactional(readOnly = true)
+    public <R> List<R> project(JPAFilter<T> filter, Class<R> resultClass, String... fields) {
+        return measure("project", shapeOf(filter, null), () -> selectFields(filter, resultClass, fields), List::size);
+    }
+
+    private <R> List<R> selectFields(JPAFilter<T> filter, Class<R> resultClass, String... fields) {
+        List<String> selection = fields.length > 0 || filter == null ? Arrays.asList(fields) : filter.getSelection();
+        if (selection.isEmpty()) {
+            throw new IllegalArgumentException("A projection needs at least one field");
+        }
+
         CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
-        CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(classOfData);
+        CriteriaQuery<R> criteriaQuery = criteriaBuilder.createQuery(resultClass);
         Root<T> root = criteriaQuery.from(classOfData);
-        criteriaQuery.select(root);
+        List<Path> paths = JPAFilter.getPaths(root, selection);
+        if (resultClass == Tuple.class) {
+            List<Selection<?>> selections = new ArrayList<>();
+            for (int index = 0; index < paths.size(); index++) {
+                selections.add(paths.get(index).alias(selection.get(index)));
+            }
+            criteriaQuery.multiselect(selections);
+        } else if (resultClass == Object[].class) {
+            criteriaQuery.multiselect(paths.toArray(new Selection[0]));
+        } else if (paths.size() == 1 && resultClass.isAssignableFrom(paths.get(0).getJavaType())) {
+            criteriaQuery.select(paths.get(0));
+        } else {
+            criteriaQuery.select(criteriaBuilder.construct(resultClass, paths.toArray(new Selection[0])));
+        }
+
         if (filter != null) {
             Predicate predicate = filter.getPredicate(criteriaBuilder, root);
             if (predicate != null) {
@@ -59,18 +352,145 @@ public abstract class GenericDao<T> {
                 criteriaQuery.orderBy(orderList);
             }
         }
-        try {
-            TypedQuery query = entityManager.createQuery(criteriaQuery);
-            if (filter != null) {
-                query.setMaxResults(filter.getLimit()).setFirstResult(filter.getOffset());
-            } else {
-                query.setMaxResults(JPAFilter.DEFAULT_LIMIT).setFirstResult(0);
+        return entityManager.createQuery(criteriaQuery)
+                .setMaxResults(filter != null ? filter.getLimit() : JPAFilter.DEFAULT_LIMIT)
+                .setFirstResult(filter != null ? filter.getOffset() : 0)
+                .getResultList();
+    }
+
+    /**
+     * Stream the items that satisfy the filter with the default fetch size. See {@link #stream(JPAFilter, int)}
+     * @param filter The filter used for returning the items. Can be null, in which case all items are streamed
+     * @return The stream of items, which must be closed after use
+     */
+    public Stream<T> stream(JPAFilter<T> filter) {
+        return stream(filter, DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Stream the items that satisfy the filter from a forward-only database cursor. The rows are fetched from the
+     * database fetchSize at a time, loaded read-only and detached from the persistence context one chunk at a time,
+     * so the heap used stays the same no matter how many rows there are. Unlike {@link #get(JPAFilter)}, the limit
+     * and offset of the filter are not applied: the stream covers every matching row.
+     * The stream must be consumed inside a transaction and closed afterwards, which releases the cursor.
+     * @param filter The filter used for returning the items. Can be null, in which case all items are streamed
+     * @param fetchSize The number of rows fetched per round trip and detached together
+     * @return The stream of items, which must be closed after use
+     */
+    public Stream<T> stream(JPAFilter<T> filter, int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("The fetch size must be positive");
+        }
+        org.hibernate.query.Query<T> query = entityManager.createQuery(createSelectQuery(filter))
+                .unwrap(org.hibernate.query.Query.class);
+        query.setFetchSize(fetchSize);
+        query.setReadOnly(true);
+        query.setCacheMode(CacheMode.IGNORE);
+        ScrollableResults<T> results = query.scroll(ScrollMode.FORWARD_ONLY);
+
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private final List<T> chunk = new ArrayList<>(fetchSize);
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (chunk.size() >= fetchSize) {
+                    // Only detach what this stream loaded, pending changes of the caller stay managed
+                    for (T processed : chunk) {
+                        entityManager.detach(processed);
+                    }
+                    chunk.clear();
+                }
+                if (!results.next()) {
+                    return false;
+                }
+                T item = results.get();
+                chunk.add(item);
+                action.accept(item);
+                return true;
             }
-            List<T> result = query.getResultList();
-            return result;
-        } catch (NoResultException exception) {
-            return Collections.emptyList();
+        };
+        return StreamSupport.stream(spliterator, false).onClose(results::close);
+    }
+
+    /**
+     * Call the consumer for every item that satisfies the filter, with constant memory use. Same as consuming
+     * {@link #stream(JPAFilter, int)}, but the cursor is always released when the method returns.
+     * @param filter The filter used for returning the items. Can be null, in which case all items are processed
+     * @param fetchSize The number of rows fetched per round trip and detached together
+     * @param consumer The callback called for every item
+     */
+    public void forEach(JPAFilter<T> filter, int fetchSize, Consumer<? super T> consumer) {
+        try (Stream<T> items = stream(filter, fetchSize)) {
+            items.forEach(consumer);
+        }
+    }
+
+    /**
+     * Return a page of items using keyset (seek) pagination. Instead of skipping {@link JPAFilter#getOffset()} rows,
+     * the query continues after the cursor set with {@link JPAFilter#setAfter(String)}, so every page costs the same
+     * no matter how deep it is. The items are ordered by the filter's orderBy fields followed by the id.
+     * @param filter The filter used for returning the items. The limit is the page size, the offset is ignored
+     * @return The page of items together with the cursor for the next page
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<T> getPage(JPAFilter<T> filter) {
+        if (filter == null) {
+            throw new IllegalArgumentException("Keyset pagination requires a filter");
+        }
+        return measure("getPage", shapeOf(filter, null), () -> selectPage(filter), page -> page.getItems().size());
+    }
+
+    private KeysetPage<T> selectPage(JPAFilter<T> filter) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> criteriaQuery = criteriaBuilder.createTupleQuery();
+        Root<T> root = criteriaQuery.from(classOfData);
+        List<Path> keysetPaths = filter.getKeysetPaths(root);
+
+        List<Selection<?>> selections = new ArrayList<>();
+        selections.add(root);
+        for (Path path : keysetPaths) {
+            selections.add(path);
+        }
+        criteriaQuery.multiselect(selections);
+
+        List<Predicate> predicates = new ArrayList<>();
+        Predicate predicate = filter.getPredicate(criteriaBuilder, root);
+        if (predicate != null) {
+            predicates.add(predicate);
+        }
+        Predicate keysetPredicate = filter.getKeysetPredicate(criteriaBuilder, keysetPaths);
+        if (keysetPredicate != null) {
+            predicates.add(keysetPredicate);
+        }
+        if (!predicates.isEmpty()) {
+            criteriaQuery.where(predicates.toArray(new Predicate[0]));
         }
+        criteriaQuery.orderBy(filter.getKeysetOrderBy(criteriaBuilder, keysetPaths));
+
+        // One extra row tells whether there is a next page without running a count
+        List<Tuple> rows = entityManager.createQuery(criteriaQuery)
+                .setMaxResults(filter.getLimit() + 1)
+                .getResultList();
+        boolean hasNext = rows.size() > filter.getLimit();
+        if (hasNext) {
+            rows = rows.subList(0, filter.getLimit());
+        }
+
+        List<T> items = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            items.add(row.get(0, classOfData));
+        }
+
+        String nextCursor = null;
+        if (hasNext && !rows.isEmpty()) {
+            Tuple last = rows.get(rows.size() - 1);
+            Object[] values = new Object[keysetPaths.size()];
+            for (int index = 0; index < values.length; index++) {
+                values[index] = last.get(index + 1);
+            }
+            nextCursor = KeysetCursor.encode(values);
+        }
+        return new KeysetPage<>(items, nextCursor);
     }
 
     /**
@@ -78,7 +498,120 @@ public abstract class GenericDao<T> {
      * @param filter The Filter that will be applied on the results. Can be null
      * @return The number of entries
      */
+    @Transactional(readOnly = true)
     public long count(JPAFilter<T> filter) {
+        return count(filter, filter == null ? CountMode.EXACT : filter.getCountMode()).getValue();
+    }
+
+    /**
+     * Returns the number of entries that satisfy the given filter, counted with the given mode
+     *      - EXACT runs the count query
+     *      - CACHED reuses an exact count for the same filter class and values until it expires or this DAO writes.
+     *        The filter has to build its criteria with the JPAFilter helpers, see {@link JPAFilter#bind}
+     *      - ESTIMATED reads the row count from the table statistics and, if the filter has criteria, counts them on
+     *        a random sample of the rows. UUID ids are uniformly distributed, so the rows below an id boundary are
+     *        such a sample and the database counts them with a primary key range scan.
+     * The estimate falls back to an exact count when the table statistics are not available.
+     * @param filter The Filter that will be applied on the results. Can be null
+     * @param mode How the entries are counted
+     * @return The number of entries and whether it is exact
+     */
+    @Transactional(readOnly = true)
+    public CountResult count(JPAFilter<T> filter, CountMode mode) {
+        FilterBindings bindings = bind(filter);
+        String operation = mode == CountMode.EXACT ? "count" : "count-" + mode.name().toLowerCase();
+        return measure(operation, shapeOf(filter, bindings), () -> count(filter, bindings, mode), result -> 1);
+    }
+
+    private CountResult count(JPAFilter<T> filter, FilterBindings bindings, CountMode mode) {
+        if (mode == CountMode.CACHED) {
+            return new CountResult(cachedCount(filter, bindings), true);
+        }
+        if (mode == CountMode.ESTIMATED) {
+            Long estimate = estimatedCount(filter);
+            if (estimate != null) {
+                return new CountResult(estimate, false);
+            }
+        }
+        return new CountResult(exactCount(filter, bindings), true);
+    }
+
+    /**
+     * Set how long cached counts are reused. A count is only reused while the version of the entity class is the one
+     * it was counted at, so every write through a DAO invalidates it when it is made and again when its transaction
+     * completes, and so does a write of another node delivered by the change feed. Writes that do not call
+     * {@link #onWrite()} are only seen once the count expired.
+     * @param ttl The time to live of a cached count
+     */
+    public void setCountCacheTtl(Duration ttl) {
+        this.countCacheTtlMillis = ttl.toMillis();
+    }
+
+    private long cachedCount(JPAFilter<T> filter, FilterBindings bindings) {
+        List<Object> key = new ArrayList<>();
+        if (filter != null) {
+            // Keyed on the recorded criteria, whether or not the filter's query plan is cached
+            FilterBindings criteria = bindings != null ? bindings : filter.bind(entityManager.getCriteriaBuilder());
+            if (criteria == null) {
+                throw new IllegalArgumentException("A cached count needs the criteria of " + filter.getClass().getSimpleName()
+                        + " to be combined with the JPAFilter helpers");
+            }
+            key.add(criteria.getShape());
+            key.addAll(criteria.getValues());
+        }
+        long now = System.currentTimeMillis();
+        // Read before counting: a write that commits during the count changes the version and the count is not reused
+        long version = writeVersion();
+        CachedCount cached = countCache.get(key);
+        if (cached != null && cached.version == version && cached.expiresAt > now) {
+            return cached.value;
+        }
+        long value = exactCount(filter, bindings);
+        if (countCache.size() >= COUNT_CACHE_SIZE) {
+            countCache.clear();
+        }
+        countCache.put(key, new CachedCount(value, version, now + countCacheTtlMillis));
+        return value;
+    }
+
+    private long writeVersion() {
+        return entityVersions != null ? entityVersions.getVersion(classOfData) : writes.get();
+    }
+
+    private Long estimatedCount(JPAFilter<T> filter) {
+        Long tableRows = TableStatistics.estimateRows(entityManager, getTableName());
+        if (tableRows == null) return null;
+
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> criteriaQuery = criteriaBuilder.createQuery(Long.class);
+        Root<T> root = criteriaQuery.from(classOfData);
+        Predicate predicate = filter == null ? null : filter.getPredicate(criteriaBuilder, root);
+        if (predicate == null) return tableRows;
+
+        double fraction = (double) DEFAULT_SAMPLE_SIZE / Math.max(tableRows, 1);
+        boolean uuidIds = entityManager.getMetamodel().entity(classOfData).getIdType().getJavaType() == UUID.class;
+        if (fraction >= 1 || !uuidIds) return null;
+
+        // The most significant bits of the boundary are fraction * 2^64, read as an unsigned number
+        long mostSignificantBits = new BigDecimal(fraction).multiply(new BigDecimal(BigInteger.ONE.shiftLeft(64)))
+                .toBigInteger().longValue();
+        UUID boundary = new UUID(mostSignificantBits, 0);
+        criteriaQuery.select(criteriaBuilder.count(root))
+                .where(predicate, criteriaBuilder.lessThan(root.get(JPAFilter.ID_FIELD), boundary));
+        long sampled = entityManager.createQuery(criteriaQuery).getSingleResult();
+        return Math.round(sampled / fraction);
+    }
+
+    private String getTableName() {
+        Table table = classOfData.getAnnotation(Table.class);
+        return table != null && !table.name().isEmpty() ? table.name() : classOfData.getSimpleName();
+    }
+
+    private long exactCount(JPAFilter<T> filter, FilterBindings bindings) {
+        TypedQuery<Long> planned = bindings == null ? null : createPlannedQuery(filter, bindings, Long.class, true);
+        if (planned != null) {
+            return planned.getSingleResult();
+        }
         CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
         CriteriaQuery<Long> criteriaQuery = criteriaBuilder.createQuery(Long.class);
         Root<T> root = criteriaQuery.from(classOfData);
@@ -99,13 +632,158 @@ public abstract class GenericDao<T> {
         }
     }
 
+    /**
+     * The cache of the queries compiled for the filter shapes used with this DAO, with its hit and miss counts
+     * @return The query plan cache
+     */
+    public QueryPlanCache getPlanCache() {
+        return planCache;
+    }
+
+    /**
+     * Create the query for the filter from the plan cache: the recorded criteria are compiled to HQL once per filter
+     * shape, later calls with the same shape only bind the values
+     * @return The query with the values bound, or null if the filter shape cannot be cached
+     */
+    private FilterBindings bind(JPAFilter<T> filter) {
+        if (filter == null || !filter.isPlanCacheable()) return null;
+        return filter.bind(entityManager.getCriteriaBuilder());
+    }
+
+    private <R> TypedQuery<R> createPlannedQuery(JPAFilter<T> filter, FilterBindings bindings, Class<R> resultClass, boolean count) {
+        String hql = planCache.get((count ? "count|" : "select|") + bindings.getShape(), () -> compile(filter, bindings, count));
+        if (hql.equals(QueryPlanCache.NOT_CACHEABLE)) return null;
+
+        TypedQuery<R> query = entityManager.createQuery(hql, resultClass);
+        bindings.bind(query);
+        return query;
+    }
+
+    private String compile(JPAFilter<T> filter, FilterBindings bindings, boolean count) {
+        String entityName = entityManager.getMetamodel().entity(classOfData).getName();
+        try {
+            return count
+                    ? HqlRenderer.count(entityName, PLAN_ALIAS, bindings)
+                    : HqlRenderer.select(entityName, PLAN_ALIAS, bindings);
+        } catch (IllegalStateException exception) {
+            log.debug("The query of " + filter.getClass().getSimpleName() + " cannot be cached: " + exception.getMessage());
+            return QueryPlanCache.NOT_CACHEABLE;
+        }
+    }
+
+    /**
+     * Build the select query for the given filter, with its predicate and ordering applied
+     * @param filter The filter. Can be null, in which case all items are selected
+     * @return The criteria query
+     */
+    protected CriteriaQuery<T> createSelectQuery(JPAFilter<T> filter) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(classOfData);
+        Root<T> root = criteriaQuery.from(classOfData);
+        criteriaQuery.select(root);
+        if (filter != null) {
+            Predicate predicate = filter.getPredicate(criteriaBuilder, root);
+            if (predicate != null) {
+                criteriaQuery.where(predicate);
+            }
+            List<Order> orderList = filter.getOrderBy(criteriaBuilder, root);
+            if (!orderList.isEmpty()) {
+                criteriaQuery.orderBy(orderList);
+            }
+        }
+        return criteriaQuery;
+    }
+
     /**
      * Return the entry with the given ID or null if no such entry exists
      * @param id The ID of the object
      * @return The object with the specified ID
      */
+    @Transactional(readOnly = true)
     public T find(Object id) {
-        return entityManager.find(classOfData, id);
+        return measure("find", ID_SHAPE, () -> entityManager.find(classOfData, id), found -> found == null ? 0 : 1);
+    }
+
+    /**
+     * Return the entries with the given IDs, in the order of the IDs. The entries already in the persistence
+     * context are taken from it; the others are loaded with IN lists of at most {@link #setInChunkSize(int)} IDs.
+     * Every IN list is padded to a power of two, or to the chunk size if that is smaller, by repeating its last ID,
+     * so the statements take only a few shapes and their prepared statements and plans are reused.
+     * @param ids The IDs of the objects
+     * @return The objects found, in the order of the IDs. Missing IDs are left out, repeated IDs appear once
+     */
+    @Transactional(readOnly = true)
+    public List<T> findAll(Collection<?> ids) {
+        if (ids == null || ids.isEmpty()) return new ArrayList<>();
+        return measure("findAll", ID_SHAPE, () -> loadAll(ids, null), List::size);
+    }
+
+    /**
+     * Set the maximum number of IDs in one IN list of {@link #findAll(Collection)}
+     * @param inChunkSize The maximum number of IDs per statement
+     */
+    @Autowired
+    public void setInChunkSize(@Value("${dao.in-chunk-size:" + DEFAULT_IN_CHUNK_SIZE + "}") int inChunkSize) {
+        if (inChunkSize <= 0) {
+            throw new IllegalArgumentException("The IN chunk size must be positive");
+        }
+        this.inChunkSize = inChunkSize;
+    }
+
+    /**
+     * Load the entities with the given ids, in the order of the ids
+     * @param graph The entity graph to load them with, or null. With a graph every entity is queried, the ones
+     *              already in the persistence context may lack the associations of the graph
+     */
+    private List<T> loadAll(Collection<?> ids, EntityGraph<T> graph) {
+        Collection<?> distinctIds = new LinkedHashSet<>(ids);
+        Map<Object, T> found = new HashMap<>();
+        List<Object> missing = new ArrayList<>();
+        if (graph != null) {
+            missing.addAll(distinctIds);
+        } else {
+            SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+            EntityPersister persister = session.getFactory().getMappingMetamodel().getEntityDescriptor(classOfData);
+            PersistenceContext persistenceContext = session.getPersistenceContextInternal();
+            for (Object id : distinctIds) {
+                Object managed = persistenceContext.getEntity(session.generateEntityKey(id, persister));
+                EntityEntry entry = managed == null ? null : persistenceContext.getEntry(managed);
+                if (entry == null) {
+                    missing.add(id);
+                } else if (entry.getStatus() != Status.DELETED && entry.getStatus() != Status.GONE) {
+                    found.put(id, classOfData.cast(managed));
+                }
+            }
+        }
+
+        String query = "select e from " + entityManager.getMetamodel().entity(classOfData).getName()
+                + " e where e." + JPAFilter.ID_FIELD + " in :ids";
+        PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+        for (int from = 0; from < missing.size(); from += inChunkSize) {
+            List<Object> chunk = new ArrayList<>(missing.subList(from, Math.min(from + inChunkSize, missing.size())));
+            int padded = Integer.highestOneBit(chunk.size()) == chunk.size() ? chunk.size() : Integer.highestOneBit(chunk.size()) << 1;
+            // The chunk size may not be a power of two, and is the limit the database was configured for
+            padded = Math.min(padded, inChunkSize);
+            while (chunk.size() < padded) {
+                chunk.add(chunk.get(chunk.size() - 1));
+            }
+            TypedQuery<T> typedQuery = entityManager.createQuery(query, classOfData).setParameter("ids", chunk);
+            if (graph != null) {
+                typedQuery.setHint(LOAD_GRAPH, graph);
+            }
+            for (T entity : typedQuery.getResultList()) {
+                found.put(persistenceUnitUtil.getIdentifier(entity), entity);
+            }
+        }
+
+        List<T> result = new ArrayList<>(found.size());
+        for (Object id : distinctIds) {
+            T entity = found.get(id);
+            if (entity != null) {
+                result.add(entity);
+            }
+        }
+        return result;
     }
 
     /**
@@ -114,8 +792,11 @@ public abstract class GenericDao<T> {
      * @return The object stored, with the generated values set
      */
     public T persist(T obj) {
-        entityManager.persist(obj);
-        return obj;
+        return measure("persist", ENTITY_SHAPE, () -> {
+            entityManager.persist(obj);
+            onWrite(ChangeType.INSERT, idOf(obj));
+            return obj;
+        }, stored -> 1);
     }
 
     /**
@@ -127,14 +808,108 @@ public abstract class GenericDao<T> {
         return persist(obj);
     }
 
+    /**
+     * Insert all given objects using JDBC batching, with the default batch size. See {@link #persistAll(Collection, int)}
+     * @param objects The objects to store in the database
+     * @return The report with the number of objects stored and the batch timings
+     */
+    public BatchReport persistAll(Collection<T> objects) {
+        return persistAll(objects, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Insert all given objects using JDBC batching. Every batchSize objects the persistence context is flushed,
+     * which sends the inserts as one JDBC batch, and then cleared so memory use stays bounded for large imports.
+     * Because of the clear, every entity managed by the current persistence context is detached afterwards.
+     * @param objects The objects to store in the database
+     * @param batchSize The number of objects written per batch
+     * @return The report with the number of objects stored and the batch timings
+     */
+    public BatchReport persistAll(Collection<T> objects, int batchSize) {
+        return measure("persistAll", ENTITY_SHAPE, () -> writeAll(objects, batchSize, ChangeType.INSERT, entityManager::persist), BatchReport::getCount);
+    }
+
+    /**
+     * Update all given objects using JDBC batching, with the default batch size. See {@link #mergeAll(Collection, int)}
+     * @param objects The objects to update
+     * @return The report with the number of objects updated and the batch timings
+     */
+    public BatchReport mergeAll(Collection<T> objects) {
+        return mergeAll(objects, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Update all given objects using JDBC batching. Works like {@link #persistAll(Collection, int)}, with merge
+     * instead of persist.
+     * @param objects The objects to update
+     * @param batchSize The number of objects written per batch
+     * @return The report with the number of objects updated and the batch timings
+     */
+    public BatchReport mergeAll(Collection<T> objects, int batchSize) {
+        return measure("mergeAll", ENTITY_SHAPE, () -> writeAll(objects, batchSize, ChangeType.UPDATE, entityManager::merge), BatchReport::getCount);
+    }
+
+    private BatchReport writeAll(Collection<T> objects, int batchSize, ChangeType changeType, Consumer<T> operation) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive");
+        }
+        BatchReport report = new BatchReport();
+        if (objects == null || objects.isEmpty()) return report;
+
+        // Make sure the flush is sent as JDBC batches even if hibernate.jdbc.batch_size is not configured
+        Session session = entityManager.unwrap(Session.class);
+        Integer previousBatchSize = session.getJdbcBatchSize();
+        session.setJdbcBatchSize(batchSize);
+        try {
+            int inBatch = 0;
+            long start = System.nanoTime();
+            for (T obj : objects) {
+                operation.accept(obj);
+                if (++inBatch == batchSize) {
+                    flushBatch(report, inBatch, start);
+                    inBatch = 0;
+                    start = System.nanoTime();
+                }
+            }
+            if (inBatch > 0) {
+                flushBatch(report, inBatch, start);
+            }
+        } finally {
+            session.setJdbcBatchSize(previousBatchSize);
+        }
+        onWrite();
+        List<Object> ids = new ArrayList<>(objects.size());
+        for (T obj : objects) {
+            ids.add(idOf(obj));
+        }
+        if (changeOutbox != null) {
+            changeOutbox.appendAll(classOfData, ids, changeType);
+        }
+        // Listeners reload their state once for a batch, instead of once per entity
+        publishChange(changeType, ids.size() == 1 ? ids.get(0) : null);
+        log.info("Wrote " + classOfData.getSimpleName() + ": " + report);
+        return report;
+    }
+
+    private void flushBatch(BatchReport report, int size, long start) {
+        entityManager.flush();
+        entityManager.clear();
+        long nanos = System.nanoTime() - start;
+        report.addBatch(size, nanos);
+        log.debug("Batch of " + size + " " + classOfData.getSimpleName() + " written in " + nanos / 1_000_000 + " ms");
+    }
+
     /**
      * Update the entry in the database
      * @param obj The object to update
      * @return The updated object
      */
     public T merge(T obj) {
-        entityManager.merge(obj);
-        return obj;
+        return measure("merge", ENTITY_SHAPE, () -> {
+            entityManager.merge(obj);
+            onWrite(ChangeType.UPDATE, idOf(obj));
+            return obj;
+        }, stored -> 1);
     }
 
     /**
@@ -151,10 +926,13 @@ public abstract class GenericDao<T> {
      * @param id The ID of the object that will be deleted
      */
     public void delete(String id) {
-        T obj = entityManager.find(classOfData, id);
-        if (obj != null) {
+        measure("delete", ID_SHAPE, () -> {
+            T obj = entityManager.find(classOfData, id);
+            if (obj == null) return 0;
             entityManager.remove(obj);
-        }
+            onWrite(ChangeType.DELETE, id);
+            return 1;
+        }, Integer::longValue);
     }
 
     /**
@@ -164,26 +942,265 @@ public abstract class GenericDao<T> {
      */
     public void delete(JPAFilter<T> filter) {
         if (filter == null) return;
+        measure("delete", shapeOf(filter, null), () -> deleteMatching(filter), Integer::longValue);
+    }
+
+    private int deleteMatching(JPAFilter<T> filter) {
+        return deleteMatching(filter, null, null);
+    }
 
+    private int deleteMatching(JPAFilter<T> filter, Object fromId, Object toId) {
         CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
         CriteriaDelete<T> criteriaDelete = criteriaBuilder.createCriteriaDelete(classOfData);
         Root<T> root = criteriaDelete.from(classOfData);
 
         Predicate predicate = filter.getPredicate(criteriaBuilder, root);
         if (predicate != null) {
-            criteriaDelete.where(predicate);
+            criteriaDelete.where(withIdRange(criteriaBuilder, root, predicate, fromId, toId));
             int result = entityManager.createQuery(criteriaDelete).executeUpdate();
+            onWrite(ChangeType.DELETE, null);
             log.info("There were " + result + " items deleted");
+            return result;
         } else {
             log.warn("Executing a delete without any criteria. Ignoring!");
+            return 0;
         }
     }
 
+    /**
+     * Delete the entries that satisfy the filter in chunks of primary key ranges, each in its own transaction, so
+     * no transaction holds its locks for long and replicas can keep up. See {@link #updateInChunks}
+     * @param filter The filter. Its predicate must not be null
+     * @param chunkSize The number of matching rows per chunk
+     * @param progress Called after every committed chunk. Can be null
+     * @return The final progress, with the total number of rows deleted
+     */
+    public BulkProgress deleteInChunks(JPAFilter<T> filter, int chunkSize, Consumer<BulkProgress> progress) {
+        return inChunks("delete", filter, chunkSize, progress, (fromId, toId) -> deleteMatching(filter, fromId, toId));
+    }
+
+    /**
+     * Execute an update statement setting the given fields on every entry that satisfies the filter, without
+     * loading the entries. Resulting SQL is similar to
+     *      - UPDATE [table] SET [field] = [value], ... WHERE [filter]
+     * If the filter is null or returns a null predicate, the update is ignored.
+     * The statement bypasses the persistence context: entities already loaded keep their old values.
+     * @param filter The filter
+     * @param values The new value of every updated field, by field name
+     * @return The number of entries updated
+     */
+    public int update(JPAFilter<T> filter, Map<String, Object> values) {
+        if (filter == null) return 0;
+        return measure("bulkUpdate", shapeOf(filter, null), () -> updateMatching(filter, values, null, null), Integer::longValue);
+    }
+
+    /**
+     * Update the entries that satisfy the filter in chunks, each in its own transaction. The matching ids are walked
+     * in primary key order: every chunk selects the next chunkSize matching ids and updates the matching rows in
+     * the range up to the last of them, so every statement touches a bounded key range. Rows inserted behind the
+     * current range while the update runs are not updated.
+     * Requires the transaction manager to be set, which the Spring DAOs have.
+     * @param filter The filter. Its predicate must not be null
+     * @param values The new value of every updated field, by field name
+     * @param chunkSize The number of matching rows per chunk
+     * @param progress Called after every committed chunk. Can be null
+     * @return The final progress, with the total number of rows updated
+     */
+    public BulkProgress updateInChunks(JPAFilter<T> filter, Map<String, Object> values, int chunkSize, Consumer<BulkProgress> progress) {
+        return inChunks("update", filter, chunkSize, progress, (fromId, toId) -> updateMatching(filter, values, fromId, toId));
+    }
+
+    private int updateMatching(JPAFilter<T> filter, Map<String, Object> values, Object fromId, Object toId) {
+        if (values == null || values.isEmpty()) {
+            throw new IllegalArgumentException("An update needs at least one field value");
+        }
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<T> criteriaUpdate = criteriaBuilder.createCriteriaUpdate(classOfData);
+        Root<T> root = criteriaUpdate.from(classOfData);
+
+        Predicate predicate = filter.getPredicate(criteriaBuilder, root);
+        if (predicate == null) {
+            log.warn("Executing an update without any criteria. Ignoring!");
+            return 0;
+        }
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            criteriaUpdate.set(JPAFilter.getPaths(root, Collections.singletonList(value.getKey())).get(0), value.getValue());
+        }
+        criteriaUpdate.where(withIdRange(criteriaBuilder, root, predicate, fromId, toId));
+        int result = entityManager.createQuery(criteriaUpdate).executeUpdate();
+        onWrite(ChangeType.UPDATE, null);
+        log.info("There were " + result + " items updated");
+        return result;
+    }
+
+    private BulkProgress inChunks(String operation, JPAFilter<T> filter, int chunkSize, Consumer<BulkProgress> progress,
+                                  BiFunction<Object, Object, Integer> chunk) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size must be positive");
+        }
+        if (transactionTemplate == null) {
+            throw new IllegalStateException("Chunked operations need a transaction manager");
+        }
+        long start = System.currentTimeMillis();
+        BulkProgress current = new BulkProgress(0, 0, null, 0);
+        while (true) {
+            Object fromId = current.getLastId();
+            Chunk done = transactionTemplate.execute(status -> {
+                List<Object> ids = nextIds(filter, fromId, chunkSize);
+                if (ids.isEmpty()) return null;
+                Object toId = ids.get(ids.size() - 1);
+                int rows = measure(operation + "Chunk", shapeOf(filter, null), () -> chunk.apply(fromId, toId), Integer::longValue);
+                return new Chunk(toId, ids.size(), rows);
+            });
+            if (done == null) break;
+
+            current = new BulkProgress(current.getChunks() + 1, current.getRows() + done.rows, done.lastId,
+                    System.currentTimeMillis() - start);
+            log.debug(operation + " of " + classOfData.getSimpleName() + ": " + current);
+            if (progress != null) {
+                progress.accept(current);
+            }
+            if (done.matched < chunkSize) break;
+        }
+        log.info("Finished chunked " + operation + " of " + classOfData.getSimpleName() + ": " + current);
+        return current;
+    }
+
+    private List<Object> nextIds(JPAFilter<T> filter, Object afterId, int chunkSize) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object> criteriaQuery = criteriaBuilder.createQuery(Object.class);
+        Root<T> root = criteriaQuery.from(classOfData);
+        Path id = root.get(JPAFilter.ID_FIELD);
+        Predicate predicate = filter.getPredicate(criteriaBuilder, root);
+        if (predicate == null) {
+            throw new IllegalArgumentException("Chunked operations need a filter with criteria");
+        }
+        criteriaQuery.select(id).where(withIdRange(criteriaBuilder, root, predicate, afterId, null)).orderBy(criteriaBuilder.asc(id));
+        return entityManager.createQuery(criteriaQuery).setMaxResults(chunkSize).getResultList();
+    }
+
+    /**
+     * Restrict the predicate to the ids after fromId, up to and including toId. Null bounds are left out
+     */
+    private Predicate withIdRange(CriteriaBuilder criteriaBuilder, Root<T> root, Predicate predicate, Object fromId, Object toId) {
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(predicate);
+        Path id = root.get(JPAFilter.ID_FIELD);
+        if (fromId != null) {
+            predicates.add(criteriaBuilder.greaterThan(id, (Comparable) fromId));
+        }
+        if (toId != null) {
+            predicates.add(criteriaBuilder.lessThanOrEqualTo(id, (Comparable) toId));
+        }
+        return predicates.size() == 1 ? predicate : criteriaBuilder.and(predicates.toArray(new Predicate[0]));
+    }
+
+    /**
+     * Called after every write through this DAO. Drops the cached counts, since they may no longer be right, and
+     * bumps the version of the entity class, now and when the transaction completes, so counts taken before the
+     * commit are not reused after it. Subclasses that write with the entity manager directly must call it too,
+     * or {@link #onWrite(ChangeType, Object)} to also record the change in the outbox.
+     */
+    protected void onWrite() {
+        countCache.clear();
+        if (entityVersions != null) {
+            entityVersions.bump(classOfData);
+            return;
+        }
+        writes.incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    writes.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    /**
+     * Called after a write of one entity, or of every entry with a null id. Does what {@link #onWrite()} does,
+     * appends the change to the outbox in the transaction of the write, and publishes an {@link EntityChangedEvent},
+     * which the transactional listeners receive once the write is committed.
+     * @param changeType The type of the change
+     * @param id The id of the written entity, or null for a bulk change
+     */
+    protected void onWrite(ChangeType changeType, Object id) {
+        onWrite();
+        if (changeOutbox != null) {
+            changeOutbox.append(classOfData, id, changeType);
+        }
+        publishChange(changeType, id);
+    }
+
+    private void publishChange(ChangeType changeType, Object id) {
+        if (changePublisher != null) {
+            changePublisher.publishEvent(new EntityChangedEvent(classOfData, id, changeType));
+        }
+    }
+
+    /**
+     * Append the change to the outbox without the rest of {@link #onWrite()}, for writes of state that no cached
+     * count or version-tagged read depends on.
+     * @param changeType The type of the change
+     * @param id The id of the written entity, or null for a bulk change
+     */
+    protected void appendChange(ChangeType changeType, Object id) {
+        if (changeOutbox != null) {
+            changeOutbox.append(classOfData, id, changeType);
+        }
+    }
+
+    private Object idOf(T obj) {
+        return entityManager.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(obj);
+    }
+
     /**
      * Hard deletes the object from the database
      * @param obj The object that will be deleted
      */
     public void delete(T obj) {
-        entityManager.remove(entityManager.contains(obj) ? obj : entityManager.merge(obj));
+        measure("delete", ENTITY_SHAPE, () -> {
+            entityManager.remove(entityManager.contains(obj) ? obj : entityManager.merge(obj));
+            onWrite(ChangeType.DELETE, idOf(obj));
+            return 1;
+        }, Integer::longValue);
+    }
+
+    /**
+     * Run a DAO call and record its duration, rows and entity loads in the {@link DaoMetrics}, if set
+     * @param operation The name of the operation
+     * @param shape The filter shape, without the bind values
+     * @param call The call
+     * @param rows Returns the number of rows read or written from the result of the call
+     * @return The result of the call
+     */
+    protected <R> R measure(String operation, String shape, Supplier<R> call, ToLongFunction<R> rows) {
+        if (metrics == null) return call.get();
+
+        SqlCapture.clear();
+        long managedBefore = managedEntities();
+        long start = System.nanoTime();
+        R result = null;
+        boolean failed = true;
+        try {
+            result = call.get();
+            failed = false;
+            return result;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            long loaded = Math.max(managedEntities() - managedBefore, 0);
+            metrics.record(classOfData, operation, shape, nanos, failed ? 0 : rows.applyAsLong(result), loaded, failed);
+        }
+    }
+
+    private long managedEntities() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) return 0;
+        return entityManager.unwrap(Session.class).getStatistics().getEntityCount();
+    }
+
+    private String shapeOf(JPAFilter<T> filter, FilterBindings bindings) {
+        if (filter == null) return ALL_SHAPE;
+        return bindings != null ? bindings.getShape() : filter.getClass().getSimpleName();
     }
 }
\ No newline at end of file
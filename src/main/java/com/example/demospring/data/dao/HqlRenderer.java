@@ -0,0 +1,148 @@
+package com.example.demospring.data.dao;
+
+import com.example.demospring.data.filter.FilterBindings;
+import com.example.demospring.data.filter.FilterCriterion;
+
+import java.util.List;
+
+/**
+ * Renders the criteria recorded by the {@link com.example.demospring.data.filter.JPAFilter} helpers as HQL, so a
+ * compiled filter shape can be reused through the Hibernate query plan cache. The values are not part of the query,
+ * every operation compares with its parameters p0..pn. An operation or field name that is not supported throws an
+ * {@link IllegalStateException} and the filter shape is not cached.
+ */
+final class HqlRenderer {
+    private HqlRenderer() {
+    }
+
+    /**
+     * Render a select of the root entity
+     * @param entityName The name of the entity
+     * @param alias The alias of the root
+     * @param bindings The recorded criteria and ordering of the filter
+     * @return The HQL query
+     */
+    static String select(String entityName, String alias, FilterBindings bindings) {
+        StringBuilder hql = new StringBuilder("select ").append(alias);
+        from(hql, entityName, alias, bindings.getCriterion());
+        List<String> orderBy = bindings.getOrderBy();
+        if (!orderBy.isEmpty()) {
+            hql.append(" order by ");
+            for (int index = 0; index < orderBy.size(); index++) {
+                if (index > 0) {
+                    hql.append(", ");
+                }
+                String field = orderBy.get(index);
+                boolean descending = field.startsWith("-");
+                path(hql, alias, descending ? field.substring(1) : field);
+                hql.append(descending ? " desc" : " asc");
+            }
+        }
+        return hql.toString();
+    }
+
+    /**
+     * Render a count of the root entity
+     * @param entityName The name of the entity
+     * @param alias The alias of the root
+     * @param bindings The recorded criteria of the filter
+     * @return The HQL query
+     */
+    static String count(String entityName, String alias, FilterBindings bindings) {
+        StringBuilder hql = new StringBuilder("select count(").append(alias).append(")");
+        from(hql, entityName, alias, bindings.getCriterion());
+        return hql.toString();
+    }
+
+    private static void from(StringBuilder hql, String entityName, String alias, FilterCriterion criterion) {
+        hql.append(" from ").append(entityName).append(' ').append(alias);
+        if (criterion != null) {
+            hql.append(" where ");
+            criterion(hql, alias, criterion);
+        }
+    }
+
+    private static void criterion(StringBuilder hql, String alias, FilterCriterion criterion) {
+        switch (criterion.getOperation()) {
+            case "and":
+            case "or":
+                List<FilterCriterion> criteria = criterion.getCriteria();
+                for (int index = 0; index < criteria.size(); index++) {
+                    if (index > 0) {
+                        hql.append(' ').append(criterion.getOperation()).append(' ');
+                    }
+                    hql.append('(');
+                    criterion(hql, alias, criteria.get(index));
+                    hql.append(')');
+                }
+                break;
+            case "not":
+                hql.append("not (");
+                criterion(hql, alias, criterion.getCriteria().get(0));
+                hql.append(')');
+                break;
+            case "eq":
+                comparison(hql, alias, criterion, false, "=");
+                break;
+            case "ne":
+                comparison(hql, alias, criterion, false, "<>");
+                break;
+            case "lt":
+                comparison(hql, alias, criterion, false, "<");
+                break;
+            case "gt":
+                comparison(hql, alias, criterion, false, ">");
+                break;
+            case "eqic":
+                comparison(hql, alias, criterion, true, "=");
+                break;
+            case "like":
+                comparison(hql, alias, criterion, false, "like");
+                break;
+            case "likeic":
+                comparison(hql, alias, criterion, true, "like");
+                break;
+            case "in":
+                path(hql, alias, criterion.getField());
+                hql.append(" in (");
+                for (int index = 0; index < criterion.getParameterCount(); index++) {
+                    if (index > 0) {
+                        hql.append(", ");
+                    }
+                    hql.append(":p").append(criterion.getFirstParameter() + index);
+                }
+                hql.append(')');
+                break;
+            default:
+                throw new IllegalStateException("Unsupported operation " + criterion.getOperation());
+        }
+    }
+
+    /**
+     * Compare the field, upper-cased if the recorded value was, with the first parameter of the criterion
+     */
+    private static void comparison(StringBuilder hql, String alias, FilterCriterion criterion, boolean upper, String operator) {
+        if (upper) {
+            hql.append("upper(");
+        }
+        path(hql, alias, criterion.getField());
+        if (upper) {
+            hql.append(')');
+        }
+        hql.append(' ').append(operator).append(" :p").append(criterion.getFirstParameter());
+    }
+
+    /**
+     * The field names come from the filter code, they are checked anyway since they end up in the query text
+     */
+    private static void path(StringBuilder hql, String alias, String field) {
+        hql.append(alias);
+        for (String name : field.split("\\.")) {
+            if (name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))
+                    || !name.chars().skip(1).allMatch(Character::isJavaIdentifierPart)) {
+                throw new IllegalStateException("Unsupported field " + field);
+            }
+            hql.append('.').append(name);
+        }
+    }
+}
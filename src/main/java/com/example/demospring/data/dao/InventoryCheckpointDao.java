@@ -0,0 +1,103 @@
+package com.example.demospring.data.dao;
+
+import com.example.demospring.data.entities.InventoryCheckpointEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public class InventoryCheckpointDao extends GenericDao<InventoryCheckpointEntity> {
+    public InventoryCheckpointDao(EntityManager entityManager) {
+        super(InventoryCheckpointEntity.class, entityManager);
+    }
+
+    /**
+     * Return the last sequence written by the node
+     * @param nodeId The id of the node
+     * @return The last sequence, or 0 if the node never wrote a checkpoint
+     */
+    public long getLastSequence(String nodeId) {
+        InventoryCheckpointEntity checkpoint = find(nodeId);
+        return checkpoint == null || checkpoint.getLastSequence() == null ? 0 : checkpoint.getLastSequence();
+    }
+
+    /**
+     * Store the last sequence written by the node
+     * @param nodeId The id of the node
+     * @param lastSequence The last sequence written
+     */
+    public void setLastSequence(String nodeId, long lastSequence) {
+        InventoryCheckpointEntity checkpoint = find(nodeId);
+        if (checkpoint == null) {
+            checkpoint = new InventoryCheckpointEntity();
+            checkpoint.setNodeId(nodeId);
+            checkpoint.setLastSequence(lastSequence);
+            persist(checkpoint);
+        } else {
+            checkpoint.setLastSequence(lastSequence);
+        }
+    }
+
+    /**
+     * Take or renew the inventory lease for the node. The lease is exclusive across all nodes: it is refused while
+     * another process holds an unexpired lease, under any node id. Every checkpoint row is locked for the check, so
+     * two processes never take it together.
+     * @param nodeId The id of the node
+     * @param owner The owner taking the lease, stable across restarts so a node can take its own lease back
+     * @param leaseMillis How long the lease lasts without a renewal
+     * @return The lease, with the checkpoint of the other process if it holds the lease, and whether the lease was
+     *      taken over rather than renewed. A lapsed lease that nobody else took in between is renewed
+     */
+    public InventoryLease acquireLease(String nodeId, String owner, long leaseMillis) {
+        LocalDateTime now = LocalDateTime.now();
+        List<InventoryCheckpointEntity> checkpoints = entityManager.createQuery(
+                        "select c from InventoryCheckpointEntity c", InventoryCheckpointEntity.class)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+        InventoryCheckpointEntity own = null;
+        long lastEpoch = 0;
+        for (InventoryCheckpointEntity checkpoint : checkpoints) {
+            if (checkpoint.getNodeId().equals(nodeId)) {
+                own = checkpoint;
+            }
+            if (checkpoint.getLeaseOwner() != null && !checkpoint.getLeaseOwner().equals(owner)
+                    && checkpoint.getLeaseUntil() != null && checkpoint.getLeaseUntil().isAfter(now)) {
+                return new InventoryLease(checkpoint, false);
+            }
+            lastEpoch = Math.max(lastEpoch, epochOf(checkpoint));
+        }
+        if (own == null) {
+            own = new InventoryCheckpointEntity();
+            own.setNodeId(nodeId);
+            own.setLastSequence(0L);
+            persist(own);
+        }
+        boolean takenOver = !owner.equals(own.getLeaseOwner()) || epochOf(own) == 0 || epochOf(own) < lastEpoch;
+        if (takenOver) {
+            own.setLeaseEpoch(lastEpoch + 1);
+        }
+        own.setLeaseOwner(owner);
+        own.setLeaseUntil(now.plusNanos(leaseMillis * 1_000_000));
+        return new InventoryLease(null, takenOver);
+    }
+
+    private static long epochOf(InventoryCheckpointEntity checkpoint) {
+        return checkpoint.getLeaseEpoch() == null ? 0 : checkpoint.getLeaseEpoch();
+    }
+
+    /**
+     * Give up the inventory lease, so another process can take it at once
+     * @param nodeId The id of the node
+     * @param owner The id of the process holding the lease
+     */
+    public void releaseLease(String nodeId, String owner) {
+        InventoryCheckpointEntity checkpoint = find(nodeId);
+        if (checkpoint != null && owner.equals(checkpoint.getLeaseOwner())) {
+            checkpoint.setLeaseOwner(null);
+            checkpoint.setLeaseUntil(null);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.demospring.data.dao;
+
+import com.example.demospring.data.entities.InventoryCheckpointEntity;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The outcome of an attempt to take the inventory lease
+ */
+@Getter
+@AllArgsConstructor
+public class InventoryLease {
+    /**
+     * The checkpoint of the node holding the lease, or null if the lease was taken
+     */
+    private final InventoryCheckpointEntity holder;
+
+    /**
+     * Whether the lease was taken over rather than renewed: the owner did not hold it before, or another owner held
+     * it since. The in-memory state of the owner may then be stale
+     */
+    private final boolean takenOver;
+
+    public boolean isAcquired() {
+        return holder == null;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.demospring.data.dao;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * A page returned by keyset pagination, together with the cursor for the next page
+ */
+@Getter
+@AllArgsConstructor
+public class KeysetPage<T> {
+    private final List<T> items;
+
+    /**
+     * The cursor that must be set on the filter to retrieve the next page, or null if this is the last page
+     */
+    private final String nextCursor;
+
+    /**
+     * Whether there is another page after this one
+     * @return True if a next page exists
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
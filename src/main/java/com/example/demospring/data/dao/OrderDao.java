@@ -0,0 +1,74 @@
+package com.example.demospring.data.dao;
+
+import com.example.demospring.data.entities.OrderEntity;
+import com.example.demospring.data.event.OrdersPlacedEvent;
+import com.example.demospring.data.projection.SaleLine;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+@Repository
+public class OrderDao extends GenericDao<OrderEntity> {
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    public OrderDao(EntityManager entityManager, ApplicationEventPublisher eventPublisher) {
+        super(OrderEntity.class, entityManager);
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public OrderEntity persist(OrderEntity order) {
+        OrderEntity stored = super.persist(order);
+        eventPublisher.publishEvent(new OrdersPlacedEvent(Collections.singletonList(stored)));
+        return stored;
+    }
+
+    @Override
+    public BatchReport persistAll(Collection<OrderEntity> orders, int batchSize) {
+        BatchReport report = super.persistAll(orders, batchSize);
+        if (orders != null && !orders.isEmpty()) {
+            eventPublisher.publishEvent(new OrdersPlacedEvent(new ArrayList<>(orders)));
+        }
+        return report;
+    }
+
+    /**
+     * Read the sold items of the given orders, the items of an order one after the other
+     * @param orderIds The ids of the orders
+     * @return The items
+     */
+    public List<SaleLine> getSaleLines(Collection<UUID> orderIds) {
+        if (orderIds.isEmpty()) return Collections.emptyList();
+        String query = "select new " + SaleLine.class.getName() + "(o.id, o.orderDate, i.product.id, i.price)"
+                + " from OrderItemEntity i join i.order o where o.id in :ids order by o.id";
+        return entityManager.createQuery(query, SaleLine.class)
+                .setParameter("ids", orderIds)
+                .getResultList();
+    }
+
+    /**
+     * Read every sold item from a forward-only cursor, the items of an order one after the other. Must run in a
+     * transaction.
+     * @param consumer Called with every item
+     */
+    public void forEachSaleLine(Consumer<SaleLine> consumer) {
+        String query = "select new " + SaleLine.class.getName() + "(o.id, o.orderDate, i.product.id, i.price)"
+                + " from OrderItemEntity i join i.order o order by o.id";
+        try (Stream<SaleLine> lines = entityManager.createQuery(query, SaleLine.class)
+                .setHint("org.hibernate.fetchSize", DEFAULT_FETCH_SIZE)
+                .setHint("org.hibernate.readOnly", true)
+                .getResultStream()) {
+            lines.forEach(consumer);
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package com.example.demospring.data.dao;
 
 import com.example.demospring.data.entities.ProductEntity;
+import com.example.demospring.data.event.ChangeType;
+import com.example.demospring.data.filter.JPAFilter;
+import com.example.demospring.data.projection.ProductExportRow;
+import com.example.demospring.data.projection.ProductSummary;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.CriteriaBuilder;
@@ -9,23 +13,50 @@ import jakarta.persistence.criteria.Root;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Repository
-public class ProductDao {
-    private final EntityManager entityManager;
-
+public class ProductDao extends GenericDao<ProductEntity> {
     @Autowired
     public ProductDao(EntityManager entityManager){
-        this.entityManager = entityManager;
+        super(ProductEntity.class, entityManager);
     }
 
     public void addProduct(ProductEntity toAdd){
-        entityManager.persist(toAdd);
+        persist(toAdd);
     }
 
+    @Override
     public ProductEntity update(ProductEntity toUpdate){
-        return entityManager.merge(toUpdate);
+        ProductEntity updated = entityManager.merge(toUpdate);
+        onWrite(ChangeType.UPDATE, updated.getId());
+        return updated;
+    }
+
+    /**
+     * Add the delta to the inventory of the product with a single UPDATE statement, without loading the product.
+     * The change goes to the outbox as an inventory change only: the version of the products and their cached counts
+     * stay, so the write-behind flushes of every sale do not keep the product reads from being tagged.
+     * @param id The id of the product
+     * @param delta The change of the inventory, negative for sold units
+     * @return The number of rows updated
+     */
+    public int addInventory(UUID id, long delta) {
+        int updated = entityManager.createQuery("UPDATE ProductEntity p SET p.inventory = COALESCE(p.inventory, 0) + :delta WHERE p.id = :id")
+                .setParameter("delta", Math.toIntExact(delta))
+                .setParameter("id", id)
+                .executeUpdate();
+        if (updated > 0) {
+            appendChange(ChangeType.INVENTORY, id);
+        }
+        return updated;
     }
 
     public List<ProductEntity> findAll(){
@@ -39,4 +70,50 @@ public class ProductDao {
         return query.getResultList();
 
     }
+
+    /**
+     * Return the list fields of the products that satisfy the filter, without loading the entities
+     * @param filter The filter. Can be null, in which case all products are returned
+     * @return The product summaries
+     */
+    public List<ProductSummary> getSummaries(JPAFilter<ProductEntity> filter) {
+        return project(filter, ProductSummary.class, ProductSummary.FIELDS);
+    }
+
+    /**
+     * Return the ids of the categories of the products, in one query and without loading the entities
+     * @param productIds The ids of the products. Can be null, in which case the categories of all products are returned
+     * @return The category ids by product id. Products without categories are left out
+     */
+    public Map<UUID, List<UUID>> getCategoryIds(Collection<UUID> productIds) {
+        if (productIds != null && productIds.isEmpty()) return new HashMap<>();
+        String query = "select p.id, c.id from ProductEntity p join p.categories c"
+                + (productIds == null ? "" : " where p.id in :ids");
+        TypedQuery<Object[]> typedQuery = entityManager.createQuery(query, Object[].class);
+        if (productIds != null) {
+            typedQuery.setParameter("ids", productIds);
+        }
+        Map<UUID, List<UUID>> categoryIds = new HashMap<>();
+        for (Object[] row : typedQuery.getResultList()) {
+            categoryIds.computeIfAbsent((UUID) row[0], id -> new ArrayList<>(1)).add((UUID) row[1]);
+        }
+        return categoryIds;
+    }
+
+    /**
+     * Read every product with the ids of its categories from a forward-only cursor, without loading the entities,
+     * so the heap used does not depend on the number of products. Must run in a transaction.
+     * @param consumer Called with every row, the rows of a product one after the other
+     */
+    public void forEachExportRow(Consumer<ProductExportRow> consumer) {
+        String query = "select new " + ProductExportRow.class.getName()
+                + "(p.id, p.name, p.description, p.price, p.inventory, c.id)"
+                + " from ProductEntity p left join p.categories c order by p.id";
+        try (Stream<ProductExportRow> rows = entityManager.createQuery(query, ProductExportRow.class)
+                .setHint("org.hibernate.fetchSize", DEFAULT_FETCH_SIZE)
+                .setHint("org.hibernate.readOnly", true)
+                .getResultStream()) {
+            rows.forEach(consumer);
+        }
+    }
 }
@@ -0,0 +1,68 @@
+package com.example.demospring.data.dao;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Caches the queries compiled for each filter shape, as parameterized HQL. Creating a query from the same HQL
+ * string is answered by the Hibernate query plan cache, so the criteria tree is built and translated only once
+ * per shape. The cache is bounded: once full, new shapes are compiled on every call but not stored.
+ */
+public class QueryPlanCache {
+    /**
+     * Cached for the shapes that cannot be compiled to HQL, so they are not compiled again on every call
+     */
+    public static final String NOT_CACHEABLE = "";
+
+    private final Map<String, String> plans = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public QueryPlanCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Return the compiled query for the key, compiling it on the first call
+     * @param key The key of the query shape
+     * @param compiler Compiles the query when it is not cached
+     * @return The HQL of the query
+     */
+    public String get(String key, Supplier<String> compiler) {
+        String plan = plans.get(key);
+        if (plan != null) {
+            hits.increment();
+            return plan;
+        }
+        misses.increment();
+        plan = compiler.get();
+        if (plans.size() < maxSize) {
+            plans.putIfAbsent(key, plan);
+        }
+        return plan;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return plans.size();
+    }
+
+    public void clear() {
+        plans.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "QueryPlanCache{size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + "}";
+    }
+}
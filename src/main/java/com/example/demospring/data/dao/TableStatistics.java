@@ -0,0 +1,49 @@
+package com.example.demospring.data.dao;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.util.List;
+
+/**
+ * Reads the estimated number of rows of a table from the statistics the database keeps for its query planner.
+ * The estimate is free to read but can be off by a large factor right after bulk changes.
+ */
+final class TableStatistics {
+    private TableStatistics() {
+    }
+
+    /**
+     * Return the estimated number of rows of the table
+     * @param entityManager The entity manager
+     * @param tableName The name of the table
+     * @return The estimated row count, or null if the database does not expose one
+     */
+    static Long estimateRows(EntityManager entityManager, String tableName) {
+        String sql = statisticsQuery(entityManager);
+        if (sql == null) return null;
+
+        List<?> rows = entityManager.createNativeQuery(sql).setParameter(1, tableName).getResultList();
+        if (rows.isEmpty() || rows.get(0) == null) return null;
+        return ((Number) rows.get(0)).longValue();
+    }
+
+    private static String statisticsQuery(EntityManager entityManager) {
+        Dialect dialect = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect();
+        if (dialect instanceof MySQLDialect) {
+            return "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?1";
+        }
+        if (dialect instanceof PostgreSQLDialect) {
+            return "SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE relname = ?1";
+        }
+        if (dialect instanceof H2Dialect) {
+            return "SELECT ROW_COUNT_ESTIMATE FROM INFORMATION_SCHEMA.TABLES WHERE UPPER(TABLE_NAME) = UPPER(?1)";
+        }
+        return null;
+    }
+}
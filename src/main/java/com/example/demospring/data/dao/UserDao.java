@@ -1,22 +1,110 @@
 package com.example.demospring.data.dao;
 
 import com.example.demospring.data.entities.UserEntity;
+import com.example.demospring.data.filter.JPAFilter;
 import com.example.demospring.data.filter.UserFilter;
+import com.example.demospring.data.projection.UserSummary;
 import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
+/**
+ * The users. Logins look the user up by email through a bounded cache, which also remembers the emails that have
+ * no user for a shorter time, so repeated attempts with unknown emails do not reach the database. Every write
+ * through this DAO empties the cache; writes made elsewhere (another node, SQL) are seen once the entries expire.
+ */
 @Repository
-public class UserDao extends GenericDao {
-    public UserDao(EntityManager entityManager) {
+public class UserDao extends GenericDao<UserEntity> {
+    private final ExpiringLruCache<String, Optional<UserEntity>> byEmail;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+
+    @Autowired
+    public UserDao(EntityManager entityManager,
+                   @Value("${users.login-cache.size:10000}") int cacheSize,
+                   @Value("${users.login-cache.ttl-ms:300000}") long ttlMillis,
+                   @Value("${users.login-cache.negative-ttl-ms:60000}") long negativeTtlMillis) {
         super(UserEntity.class, entityManager);
+        this.byEmail = new ExpiringLruCache<>(cacheSize);
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
     }
 
     public List<UserEntity> findAdminWithUserName(String userName){
+        UserEntity user = findByEmail(userName);
+        return user == null ? Collections.emptyList() : Collections.singletonList(user);
+    }
+
+    /**
+     * Return the user with the given email, from the login cache if possible. The user returned is a detached
+     * copy: changes to it are only stored by merging it.
+     * @param email The email of the user
+     * @return The user, or null if no user has this email
+     */
+    public UserEntity findByEmail(String email) {
+        if (email == null) return null;
+        Optional<UserEntity> cached = byEmail.get(email,
+                key -> Optional.ofNullable(loadByEmail(key)).map(UserDao::copy),
+                user -> user.isPresent() ? ttlMillis : negativeTtlMillis);
+        return cached.map(UserDao::copy).orElse(null);
+    }
+
+    /**
+     * The login cache, for its size and hit counts
+     * @return The cache of users by email
+     */
+    public ExpiringLruCache<String, Optional<UserEntity>> getLoginCache() {
+        return byEmail;
+    }
+
+    /**
+     * Return the list fields of the users that satisfy the filter. The password hash and salt are not read.
+     * @param filter The filter. Can be null, in which case all users are returned
+     * @return The user summaries
+     */
+    public List<UserSummary> getSummaries(JPAFilter<UserEntity> filter) {
+        return project(filter, UserSummary.class, UserSummary.FIELDS);
+    }
+
+    /**
+     * Empties the login cache as well. A lookup running next to the write could put the old row back before the
+     * write commits, so the cache is emptied again once the transaction completes.
+     */
+    @Override
+    protected void onWrite() {
+        super.onWrite();
+        byEmail.clear();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    byEmail.clear();
+                }
+            });
+        }
+    }
+
+    private UserEntity loadByEmail(String email) {
         UserFilter filter = new UserFilter();
-        filter.setEmail(userName);
-        return get(filter);
+        filter.setEmail(email);
+        return findFirst(filter);
     }
 
+    private static UserEntity copy(UserEntity user) {
+        UserEntity copy = new UserEntity();
+        copy.setId(user.getId());
+        copy.setEmail(user.getEmail());
+        copy.setPasswordHash(user.getPasswordHash());
+        copy.setPasswordSalt(user.getPasswordSalt());
+        copy.setRole(user.getRole());
+        copy.setName(user.getName());
+        return copy;
+    }
 }
@@ -0,0 +1,33 @@
+package com.example.demospring.data.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * How far a catalog import got. It is updated in the same transaction as the products of every chunk, so a
+ * resumed import continues exactly after the last committed record.
+ */
+@Data
+@Entity
+@Table(name = "catalog_import_checkpoint")
+public class CatalogImportCheckpointEntity {
+    @Id
+    @Column(name = "import_id")
+    private String importId;
+
+    /**
+     * The size of the file when the import started, to detect a file replaced between two runs
+     */
+    @Column(name = "file_size")
+    private Long fileSize;
+
+    /**
+     * The number of records committed, valid or not, counted from the first record after the header
+     */
+    @Column(name = "records")
+    private Long records;
+
+    @Column(name = "completed")
+    private Boolean completed;
+
+}
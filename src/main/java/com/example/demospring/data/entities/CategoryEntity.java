@@ -2,6 +2,8 @@ package com.example.demospring.data.entities;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import java.util.List;
 import java.util.UUID;
@@ -18,12 +20,15 @@ public class CategoryEntity {
     @Column
     private String name;
 
-    @ManyToMany(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "parent",foreignKey = @ForeignKey(name = "categories_fk"))
     private CategoryEntity parent;
 
-    @OneToMany(fetch = FetchType.LAZY)
-    @JoinColumn(name = "parent",foreignKey = @ForeignKey(name = "categories_fk"))
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @OneToMany(fetch = FetchType.LAZY, mappedBy = "parent")
     private List<CategoryEntity> children;
 
 }
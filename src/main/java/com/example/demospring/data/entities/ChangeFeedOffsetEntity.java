@@ -0,0 +1,21 @@
+package com.example.demospring.data.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * The id of the last change record a node delivered to its subscribers, so the node continues from there after a
+ * restart.
+ */
+@Data
+@Entity
+@Table(name = "change_feed_offset")
+public class ChangeFeedOffsetEntity {
+    @Id
+    @Column(name = "node_id")
+    private String nodeId;
+
+    @Column(name = "last_id")
+    private Long lastId;
+
+}
@@ -0,0 +1,53 @@
+package com.example.demospring.data.entities;
+
+import com.example.demospring.data.event.ChangeType;
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * A change of an entity, appended to the outbox in the same transaction as the write itself, so the change feed
+ * sees exactly the committed writes. The rows are inserted with JDBC by the
+ * {@link com.example.demospring.data.dao.ChangeOutbox}, the entity is only used to read them back.
+ */
+@Data
+@Entity
+@Table(name = "change_outbox", indexes = @Index(name = "change_outbox_created_at", columnList = "created_at"))
+public class ChangeRecordEntity {
+    @Id
+    @Column(name = "id")
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * The JPA name of the entity
+     */
+    @Column(name = "entity_type", length = 64)
+    private String entityType;
+
+    /**
+     * The id of the changed entity. Null for bulk changes, where every entry of the type may have changed
+     */
+    @Column(name = "entity_id", length = 64)
+    private String entityId;
+
+    @Column(name = "change_type", length = 16)
+    @Enumerated(EnumType.STRING)
+    private ChangeType changeType;
+
+    /**
+     * The version of the entity type on the writing node after the write. Versions are counted by each node for
+     * itself (see EntityVersions) and restart at 0 with the node, so they only order the changes of one node run
+     * and must not be compared across nodes
+     */
+    @Column(name = "entity_version")
+    private Long entityVersion;
+
+    @Column(name = "node_id", length = 64)
+    private String nodeId;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+}
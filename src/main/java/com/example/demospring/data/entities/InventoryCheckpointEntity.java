@@ -0,0 +1,36 @@
+package com.example.demospring.data.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * The last inventory delta log sequence written to the product table by a node. It is updated in the same
+ * transaction as the inventory, so a delta is never applied twice when the log is replayed after a crash.
+ *
+ * The rows also hold the inventory lease: the process that owns the in-memory inventory and until when. Every
+ * takeover of the lease stores a new epoch, higher than the epochs of all rows, so an owner whose row has the
+ * highest epoch knows nobody else held the lease since.
+ */
+@Data
+@Entity
+@Table(name = "inventory_checkpoint")
+public class InventoryCheckpointEntity {
+    @Id
+    @Column(name = "node_id")
+    private String nodeId;
+
+    @Column(name = "last_sequence")
+    private Long lastSequence;
+
+    @Column(name = "lease_owner")
+    private String leaseOwner;
+
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+
+    @Column(name = "lease_epoch")
+    private Long leaseEpoch;
+
+}
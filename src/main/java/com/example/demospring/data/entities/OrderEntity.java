@@ -3,12 +3,15 @@ package com.example.demospring.data.entities;
 import com.example.demospring.data.OrderStatus;
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
 
 @Data
+@Entity
 @Table(name = "orders")
 public class OrderEntity {
     @Id
@@ -23,8 +26,9 @@ public class OrderEntity {
     @Column(name = "order_date")
     private LocalDateTime orderDate;
 
-    @OneToMany
-    @JoinTable(name = "order_id", foreignKey = @ForeignKey(name = "product_to_order_fk"))
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @OneToMany(mappedBy = "order", cascade = CascadeType.PERSIST)
     private List<OrderItemEntity> items;
 
     @Column
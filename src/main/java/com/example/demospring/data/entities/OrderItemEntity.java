@@ -2,6 +2,8 @@ package com.example.demospring.data.entities;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import java.math.BigDecimal;
 import java.util.UUID;
@@ -15,6 +17,12 @@ public class OrderItemEntity {
     @GeneratedValue(generator = "uuid2")
     private UUID id;
 
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "order_id", foreignKey = @ForeignKey(name = "product_to_order_fk"))
+    private OrderEntity order;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "product_id", foreignKey = @ForeignKey(name = "order_items_to_product_fk"))
     private ProductEntity product;
@@ -22,6 +22,11 @@ public class ProductEntity {
 
     private BigDecimal price;
 
+    /**
+     * Owned by the inventory reservation engine, which writes it through ProductDao.addInventory. Merging a product
+     * must not overwrite the deltas written concurrently, so the column is left out of entity updates.
+     */
+    @Column(updatable = false)
     private Integer inventory;
 
     @ManyToMany
@@ -0,0 +1,47 @@
+package com.example.demospring.data.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * A committed change read back from the outbox and delivered by the change feed
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class ChangeRecord {
+    /**
+     * The position of the record in the outbox. Records are delivered in increasing id order, except the ones
+     * committed after the gap timeout of the feed
+     */
+    private final long id;
+
+    private final Class<?> entityType;
+
+    /**
+     * The id of the changed entity, of the id type of the entity. Null for bulk changes, where every entry may have
+     * changed
+     */
+    private final Object entityId;
+
+    private final ChangeType changeType;
+
+    /**
+     * The version of the entity type on the writing node after the write. Versions are counted by each node for
+     * itself (see EntityVersions) and restart at 0 with the node, so they only order the changes of one node run
+     * and must not be compared across nodes
+     */
+    private final long entityVersion;
+
+    private final String nodeId;
+
+    /**
+     * Whether the change was written by this node, which already reacted to it locally
+     */
+    private final boolean local;
+
+    private final LocalDateTime createdAt;
+}
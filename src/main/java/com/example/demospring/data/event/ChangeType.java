@@ -0,0 +1,12 @@
+package com.example.demospring.data.event;
+
+public enum ChangeType {
+    INSERT,
+    UPDATE,
+    DELETE,
+    /**
+     * Only the stock of a product changed. It is not part of any cached or tagged read, so it neither bumps the
+     * entity version nor drops the cached counts
+     */
+    INVENTORY
+}
@@ -0,0 +1,23 @@
+package com.example.demospring.data.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Published by the DAOs when an entity is written. Listeners that keep derived state (caches, indexes) should use
+ * a transactional event listener so they only react once the write is committed.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class EntityChangedEvent {
+    private final Class<?> entityType;
+
+    /**
+     * The id of the changed entity. Null for bulk changes, where listeners should assume every entry may have changed
+     */
+    private final Object id;
+
+    private final ChangeType changeType;
+}
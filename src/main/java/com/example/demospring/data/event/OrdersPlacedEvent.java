@@ -0,0 +1,19 @@
+package com.example.demospring.data.event;
+
+import com.example.demospring.data.entities.OrderEntity;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Published by the {@link com.example.demospring.data.dao.OrderDao} when orders are inserted. Unlike
+ * {@link EntityChangedEvent} it carries the orders with their items, so listeners do not have to read them again.
+ * The entities may be detached by the time a transactional listener runs; only their loaded state and the ids of
+ * their associations can be used.
+ */
+@Getter
+@AllArgsConstructor
+public class OrdersPlacedEvent {
+    private final List<OrderEntity> orders;
+}
@@ -0,0 +1,21 @@
+package com.example.demospring.data.filter;
+
+/**
+ * How the DAO counts the entries that satisfy a filter
+ */
+public enum CountMode {
+    /**
+     * Run SELECT COUNT(*) every time
+     */
+    EXACT,
+    /**
+     * Run the exact count and reuse it until it expires or the DAO writes to the table. Counts are reused per filter
+     * class and criteria values, so the filter has to build and combine its predicates with the JPAFilter helpers;
+     * the DAO rejects the count of any other filter
+     */
+    CACHED,
+    /**
+     * Estimate the count from the table statistics, counting only a sample of the rows when there are criteria
+     */
+    ESTIMATED
+}
@@ -0,0 +1,49 @@
+package com.example.demospring.data.filter;
+
+import jakarta.persistence.Query;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * The shape and values of the criteria of a filter, as recorded by {@link JPAFilter#bind}. Two filters with the
+ * same shape compile to the same query, with the values bound to the parameters p0..pn.
+ */
+@Getter
+@AllArgsConstructor
+public class FilterBindings {
+    private final String shape;
+
+    /**
+     * The recorded criteria, or null if the filter has none
+     */
+    private final FilterCriterion criterion;
+
+    /**
+     * The orderBy fields of the filter, descending fields start with "-"
+     */
+    private final List<String> orderBy;
+
+    private final List<Object> values;
+
+    /**
+     * Bind the values to the parameters of a query compiled for this shape. Values recorded by helpers whose
+     * predicate was not used are not part of the query and are skipped.
+     * @param query The query
+     */
+    public void bind(Query query) {
+        if (criterion != null) {
+            bind(query, criterion);
+        }
+    }
+
+    private void bind(Query query, FilterCriterion criterion) {
+        for (FilterCriterion combined : criterion.getCriteria()) {
+            bind(query, combined);
+        }
+        for (int index = criterion.getFirstParameter(); index < criterion.getFirstParameter() + criterion.getParameterCount(); index++) {
+            query.setParameter("p" + index, values.get(index));
+        }
+    }
+}
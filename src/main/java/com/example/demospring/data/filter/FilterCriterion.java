@@ -0,0 +1,56 @@
+package com.example.demospring.data.filter;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * A criterion recorded by the {@link JPAFilter} helpers: either an operation on a field, such as "eq" or "like", with
+ * the indexes of its parameters, or the combination of other criteria with "and", "or" or "not".
+ */
+@Getter
+@AllArgsConstructor
+public class FilterCriterion {
+    private final String operation;
+
+    /**
+     * The field name, nested fields are separated by ".". Null for a combination
+     */
+    private final String field;
+
+    /**
+     * The index of the first parameter of the operation, its parameters are named p[first]..p[first + count - 1]
+     */
+    private final int firstParameter;
+
+    private final int parameterCount;
+
+    /**
+     * The combined criteria, empty for an operation on a field
+     */
+    private final List<FilterCriterion> criteria;
+
+    /**
+     * Whether this criterion combines other criteria
+     * @return True for "and", "or" and "not"
+     */
+    public boolean isCombination() {
+        return field == null;
+    }
+
+    /**
+     * The shape of the criterion: the operations, fields and parameter indexes, without the values
+     */
+    @Override
+    public String toString() {
+        if (!isCombination()) {
+            return operation + ":" + field + "@" + firstParameter + "/" + parameterCount;
+        }
+        StringBuilder shape = new StringBuilder(operation).append('(');
+        for (FilterCriterion criterion : criteria) {
+            shape.append(criterion).append(';');
+        }
+        return shape.append(')').toString();
+    }
+}
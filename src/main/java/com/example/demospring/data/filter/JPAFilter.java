@@ -1,19 +1,44 @@
 package com.example.demospring.data.filter;
 
 import jakarta.persistence.criteria.*;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.hibernate.query.criteria.JpaOrder;
+import org.hibernate.query.sqm.NullPrecedence;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A filter that will be used for limiting objects retrieved by the DAO
  */
 public abstract class JPAFilter<U> {
     public static final int DEFAULT_LIMIT = 10_000;
+    public static final String ID_FIELD = "id";
 
     protected int limit = DEFAULT_LIMIT;
     protected int offset = 0;
     protected List<String> orderBy = new ArrayList<>();
+    protected String after;
+    protected CountMode countMode = CountMode.EXACT;
+    protected List<String> selection = new ArrayList<>();
+    protected List<String> fetchPlan = new ArrayList<>();
+
+    private static final Map<String, String[]> FIELD_PATHS = new ConcurrentHashMap<>();
+
+    /**
+     * How the helper methods use the values. LITERAL passes them to the criteria as they are, RECORD only records
+     * the criteria and their values without building anything.
+     */
+    private enum BindingMode { LITERAL, RECORD }
+
+    private BindingMode bindingMode = BindingMode.LITERAL;
+    private Map<Predicate, FilterCriterion> criteria;
+    private List<Object> bindings;
 
     /**
      * Return the JPA Predicate which filters the result. This can be obtained using the helper methods from this class
@@ -23,6 +48,40 @@ public abstract class JPAFilter<U> {
      */
     public abstract Predicate getPredicate(CriteriaBuilder criteriaBuilder, Root root);
 
+    /**
+     * Whether the DAO may cache the compiled query for this filter and only bind values on later calls. That requires
+     * getPredicate to build its predicates through the helper methods of this class and to combine them with
+     * {@link #andPredicateBuilder}, {@link #orPredicateBuilder} and {@link #not} only, so the query shape follows from
+     * the helpers that returned a predicate. Filters that do so can override this and return true.
+     * @return True if the query plan of this filter can be cached
+     */
+    public boolean isPlanCacheable() {
+        return false;
+    }
+
+    /**
+     * Run getPredicate without building a query, only recording which criteria are used, how they are combined and
+     * their values. The shape identifies the compiled query, the values are bound to its parameters p0..pn.
+     * @param criteriaBuilder The CriteriaBuilder used for the placeholder predicates
+     * @return The criteria, their shape and values, or null if getPredicate combined predicates without the helpers
+     */
+    public FilterBindings bind(CriteriaBuilder criteriaBuilder) {
+        bindingMode = BindingMode.RECORD;
+        criteria = new IdentityHashMap<>();
+        bindings = new ArrayList<>();
+        try {
+            Predicate predicate = getPredicate(criteriaBuilder, null);
+            FilterCriterion criterion = predicate == null ? null : criteria.get(predicate);
+            if (predicate != null && criterion == null) return null;
+            String shape = criterion == null ? "" : criterion.toString();
+            return new FilterBindings(getClass().getName() + "|" + shape + "|order:" + orderBy, criterion,
+                    new ArrayList<>(orderBy), bindings);
+        } finally {
+            bindingMode = BindingMode.LITERAL;
+            criteria = null;
+        }
+    }
+
     /**
      * Set the maximum number of entries returned.
      * @param limit - The number of results returned
@@ -55,6 +114,92 @@ public abstract class JPAFilter<U> {
         return this.offset;
     }
 
+    /**
+     * Set the keyset cursor after which the next page starts. The cursor is the one returned by the DAO for the
+     * previous page; null starts from the first page. Only used by keyset pagination, the offset is ignored there.
+     * @param after The opaque cursor returned with the previous page
+     */
+    public void setAfter(String after) {
+        this.after = after;
+    }
+
+    /**
+     * The keyset cursor after which the next page starts
+     * @return The cursor, or null for the first page
+     */
+    public String getAfter() {
+        return this.after;
+    }
+
+    /**
+     * Set how the DAO counts the entries that satisfy this filter
+     * @param countMode The count mode
+     */
+    public void setCountMode(CountMode countMode) {
+        this.countMode = countMode;
+    }
+
+    /**
+     * How the DAO counts the entries that satisfy this filter
+     * @return The count mode, EXACT by default
+     */
+    public CountMode getCountMode() {
+        return this.countMode;
+    }
+
+    /**
+     * Select only the given fields instead of the whole entity, used by the projection queries of the DAO.
+     * Can be chained to select more fields
+     * @param fields The field names, nested fields are separated by "."
+     * @return The current JPA Filter
+     */
+    public JPAFilter<U> select(String... fields) {
+        this.selection.addAll(Arrays.asList(fields));
+        return this;
+    }
+
+    /**
+     * The fields selected with {@link #select(String...)}
+     * @return The selected field names, empty if the whole entity is selected
+     */
+    public List<String> getSelection() {
+        return this.selection;
+    }
+
+    /**
+     * Load the given associations together with the entities, instead of one query per entity when they are first
+     * accessed. Can be chained to fetch more associations. A plan fetching a collection loads the page by id, in
+     * chunks of dao.in-chunk-size ids
+     * @param paths The association paths, nested associations are separated by ".", e.g. "items.product"
+     * @return The current JPA Filter
+     */
+    public JPAFilter<U> fetch(String... paths) {
+        this.fetchPlan.addAll(Arrays.asList(paths));
+        return this;
+    }
+
+    /**
+     * The associations added with {@link #fetch(String...)}
+     * @return The association paths, empty if nothing is fetched eagerly
+     */
+    public List<String> getFetchPlan() {
+        return this.fetchPlan;
+    }
+
+    /**
+     * Resolve the given fields against the root
+     * @param root The JPA Root needed for building the paths
+     * @param fields The field names, nested fields are separated by "."
+     * @return The paths, in the same order as the fields
+     */
+    public static List<Path> getPaths(Root root, List<String> fields) {
+        List<Path> paths = new ArrayList<>();
+        for (String field : fields) {
+            paths.add(get(root, field));
+        }
+        return paths;
+    }
+
     /**
      * Order the result by the specified filed. Can be chained to order by multiple fields
      * @param field The field name to order by
@@ -89,6 +234,14 @@ public abstract class JPAFilter<U> {
      */
     protected <T> Predicate equals(CriteriaBuilder criteriaBuilder, Root root, String field, T value) {
         if (value == null) return null;
+        return equalTo(criteriaBuilder, root, field, value);
+    }
+
+    /**
+     * The equals predicate, also built for a null value: "= null" matches no row
+     */
+    private Predicate equalTo(CriteriaBuilder criteriaBuilder, Root root, String field, Object value) {
+        if (bindingMode == BindingMode.RECORD) return record(criteriaBuilder, "eq", field, value);
         Predicate predicate = criteriaBuilder.equal(get(root, field), value);
         return predicate;
     }
@@ -105,6 +258,7 @@ public abstract class JPAFilter<U> {
      */
     protected <T> Predicate notEquals(CriteriaBuilder criteriaBuilder, Root root, String field, T value) {
         if (value == null) return null;
+        if (bindingMode == BindingMode.RECORD) return record(criteriaBuilder, "ne", field, value);
         Predicate predicate = criteriaBuilder.notEqual(get(root, field), value);
         return predicate;
     }
@@ -120,6 +274,7 @@ public abstract class JPAFilter<U> {
      */
     protected Predicate lessThan(CriteriaBuilder criteriaBuilder, Root root, String field, Comparable value) {
         if (value == null) return null;
+        if (bindingMode == BindingMode.RECORD) return record(criteriaBuilder, "lt", field, value);
         Predicate predicate = criteriaBuilder.lessThan(get(root, field), value);
         return predicate;
     }
@@ -135,6 +290,7 @@ public abstract class JPAFilter<U> {
      */
     protected Predicate greaterThan(CriteriaBuilder criteriaBuilder, Root root, String field, Comparable value) {
         if (value == null) return null;
+        if (bindingMode == BindingMode.RECORD) return record(criteriaBuilder, "gt", field, value);
         Predicate predicate = criteriaBuilder.greaterThan(get(root, field), value);
         return predicate;
     }
@@ -150,7 +306,9 @@ public abstract class JPAFilter<U> {
      */
     protected Predicate equalsIgnoreCase(CriteriaBuilder criteriaBuilder, Root root, String field, String value) {
         if (value == null) return null;
-        Predicate predicate = criteriaBuilder.equal(criteriaBuilder.upper(get(root, field)), value.toUpperCase());
+        String upper = value.toUpperCase();
+        if (bindingMode == BindingMode.RECORD) return record(criteriaBuilder, "eqic", field, upper);
+        Predicate predicate = criteriaBuilder.equal(criteriaBuilder.upper(get(root, field)), upper);
         return predicate;
     }
 
@@ -165,7 +323,9 @@ public abstract class JPAFilter<U> {
      */
     protected Predicate like(CriteriaBuilder criteriaBuilder, Root root, String field, String value) {
         if (value == null) return null;
-        Predicate predicate = criteriaBuilder.like(get(root, field), "%" + value +"%");
+        String pattern = "%" + value +"%";
+        if (bindingMode == BindingMode.RECORD) return record(criteriaBuilder, "like", field, pattern);
+        Predicate predicate = criteriaBuilder.like(get(root, field), pattern);
         return predicate;
     }
 
@@ -180,19 +340,28 @@ public abstract class JPAFilter<U> {
      */
     protected Predicate likeIgnoreCase(CriteriaBuilder criteriaBuilder, Root root, String field, String value) {
         if (value == null) return null;
-        Predicate predicate = criteriaBuilder.like(criteriaBuilder.upper(get(root, field)), "%" + value.toUpperCase() +"%");
+        String pattern = "%" + value.toUpperCase() +"%";
+        if (bindingMode == BindingMode.RECORD) return record(criteriaBuilder, "likeic", field, pattern);
+        Predicate predicate = criteriaBuilder.like(criteriaBuilder.upper(get(root, field)), pattern);
         return predicate;
     }
 
     protected Predicate in(CriteriaBuilder criteriaBuilder, Root root, String field, Object... values) {
         if (values == null || values.length == 0) return null;
 
+        // The number of values changes the query, so it is part of the shape as the parameter count
+        if (bindingMode == BindingMode.RECORD) {
+            int first = bindings.size();
+            Collections.addAll(bindings, values);
+            return recorded(criteriaBuilder, new FilterCriterion("in", field, first, values.length, Collections.emptyList()));
+        }
         Predicate predicate = get(root, field).in(values);
         return predicate;
     }
 
     /**
-     * Build an OR predicate for the specified values
+     * Build an OR predicate for the specified values. Unlike {@link #equals}, a null value is compared as well, and
+     * "[field] = null" matches no row
      *      - SELECT * FROM [table] WHERE [field] = [value0] OR [field] = [value1] OR ... OR [field] = [valuen]
      * @param criteriaBuilder The CriteriaBuilder used for building the predicate
      * @param root The JPA Root needed for building the predicate
@@ -205,13 +374,10 @@ public abstract class JPAFilter<U> {
         List<Predicate> predicateList = new ArrayList<>();
         if (values != null) {
             for (T value : values) {
-                Predicate predicate = criteriaBuilder.equal(get(root, field), value);
-                predicateList.add(predicate);
+                predicateList.add(equalTo(criteriaBuilder, root, field, value));
             }
         }
-
-        if (predicateList.isEmpty()) return null;
-        return criteriaBuilder.or(predicateList.toArray(new Predicate[0]));
+        return orPredicateBuilder(criteriaBuilder, predicateList.toArray(new Predicate[0]));
     }
 
     /**
@@ -235,6 +401,7 @@ public abstract class JPAFilter<U> {
         }
 
         if (predicateList.isEmpty()) return null;
+        if (bindingMode == BindingMode.RECORD) return combine(criteriaBuilder, "and", predicateList);
         return criteriaBuilder.and(predicateList.toArray(new Predicate[0]));
     }
 
@@ -258,9 +425,24 @@ public abstract class JPAFilter<U> {
             }
         }
         if (predicateList.isEmpty()) return null;
+        if (bindingMode == BindingMode.RECORD) return combine(criteriaBuilder, "or", predicateList);
         return criteriaBuilder.or(predicateList.toArray(new Predicate[0]));
     }
 
+    /**
+     * Negates a Predicate built with the helper methods of this class
+     * Resulted SQL similar to:
+     *      SELECT * FROM [table] WHERE NOT ([predicate])
+     * @param criteriaBuilder The CriteriaBuilder used for building the predicate
+     * @param predicate The predicate to negate. Can be null
+     * @return The resulted predicate, or null if the predicate is null
+     */
+    protected Predicate not(CriteriaBuilder criteriaBuilder, Predicate predicate) {
+        if (predicate == null) return null;
+        if (bindingMode == BindingMode.RECORD) return combine(criteriaBuilder, "not", Collections.singletonList(predicate));
+        return criteriaBuilder.not(predicate);
+    }
+
     /**
      * Create the orderBy statement
      * @param criteriaBuilder The CriteriaBuilder used for building the predicate
@@ -272,18 +454,152 @@ public abstract class JPAFilter<U> {
 
         List<Order> orderList = new ArrayList<>();
         for (String order:orderBy) {
-            if (order.startsWith("-")) {
-                orderList.add(criteriaBuilder.desc(get(root, order.substring(1))));
-            } else {
-                orderList.add(criteriaBuilder.asc(get(root, order)));
-            }
+            orderList.add(toOrder(criteriaBuilder, get(root, stripDirection(order)), order));
         }
 
         return orderList;
     }
 
-    private Path get(Root root, String fieldName) {
-        String[] fields = fieldName.split("\\.");
+    /**
+     * The fields used for keyset pagination: the orderBy fields followed by the id, which is used as tie-breaker
+     * so that every row has a unique position. Descending fields keep their "-" prefix.
+     * @return The list of keyset fields
+     */
+    public List<String> getKeysetFields() {
+        List<String> fields = new ArrayList<>();
+        if (orderBy != null) {
+            fields.addAll(orderBy);
+        }
+        if (!fields.contains(ID_FIELD) && !fields.contains("-" + ID_FIELD)) {
+            fields.add(ID_FIELD);
+        }
+        return fields;
+    }
+
+    /**
+     * Resolve the keyset fields against the root. The DAO selects these paths next to the entity so the cursor
+     * for the next page can be built from the last row.
+     * @param root The JPA Root needed for building the paths
+     * @return The paths, in the same order as {@link #getKeysetFields()}
+     */
+    public List<Path> getKeysetPaths(Root root) {
+        List<Path> paths = new ArrayList<>();
+        for (String field : getKeysetFields()) {
+            paths.add(get(root, stripDirection(field)));
+        }
+        return paths;
+    }
+
+    /**
+     * Create the orderBy statement used by keyset pagination. Nulls of nullable fields sort after every value, last
+     * in ascending and first in descending order, whatever the default of the database is, so the keyset predicate
+     * can rely on it.
+     * @param criteriaBuilder The CriteriaBuilder used for building the statement
+     * @param paths The paths returned by {@link #getKeysetPaths(Root)}
+     * @return The list of Order statements used for ordering the result
+     */
+    public List<Order> getKeysetOrderBy(CriteriaBuilder criteriaBuilder, List<Path> paths) {
+        List<String> fields = getKeysetFields();
+        List<Order> orderList = new ArrayList<>();
+        for (int index = 0; index < fields.size(); index++) {
+            Order order = toOrder(criteriaBuilder, paths.get(index), fields.get(index));
+            if (isNullable(paths.get(index))) {
+                order = ((JpaOrder) order).nullPrecedence(fields.get(index).startsWith("-") ? NullPrecedence.FIRST : NullPrecedence.LAST);
+            }
+            orderList.add(order);
+        }
+        return orderList;
+    }
+
+    /**
+     * Build the predicate that skips every row up to and including the cursor set with {@link #setAfter(String)}.
+     * For the keyset (a, b, id) ordered ascending the resulting SQL is similar to
+     *      - WHERE a > :a OR (a = :a AND b > :b) OR (a = :a AND b = :b AND id > :id)
+     * which the database can answer with an index seek, no matter how deep the page is. A nullable field sorts its
+     * nulls after every value (see {@link #getKeysetOrderBy}): "a > :a" becomes "a > :a OR a IS NULL", and a null
+     * cursor value compares with IS NULL.
+     * @param criteriaBuilder The CriteriaBuilder used for building the predicate
+     * @param paths The paths returned by {@link #getKeysetPaths(Root)}
+     * @return The predicate, or null if no cursor was set
+     */
+    public Predicate getKeysetPredicate(CriteriaBuilder criteriaBuilder, List<Path> paths) {
+        if (after == null) return null;
+
+        List<String> fields = getKeysetFields();
+        Object[] values = KeysetCursor.decode(after, paths);
+        List<Predicate> branches = new ArrayList<>();
+        for (int index = 0; index < fields.size(); index++) {
+            Predicate after = after(criteriaBuilder, paths.get(index), fields.get(index).startsWith("-"), (Comparable) values[index]);
+            // Nothing sorts after a null in ascending order, the rows after it differ in a later field
+            if (after == null) continue;
+            Predicate[] branch = new Predicate[index + 1];
+            for (int previous = 0; previous < index; previous++) {
+                branch[previous] = values[previous] == null
+                        ? criteriaBuilder.isNull(paths.get(previous))
+                        : criteriaBuilder.equal(paths.get(previous), values[previous]);
+            }
+            branch[index] = after;
+            branches.add(criteriaBuilder.and(branch));
+        }
+        return criteriaBuilder.or(branches.toArray(new Predicate[0]));
+    }
+
+    /**
+     * The predicate of the rows that sort after the value in the given field alone, or null if none can
+     */
+    private Predicate after(CriteriaBuilder criteriaBuilder, Path path, boolean descending, Comparable value) {
+        if (descending) {
+            return value == null ? criteriaBuilder.isNotNull(path) : criteriaBuilder.lessThan(path, value);
+        }
+        if (value == null) return null;
+        Predicate greater = criteriaBuilder.greaterThan(path, value);
+        return isNullable(path) ? criteriaBuilder.or(greater, criteriaBuilder.isNull(path)) : greater;
+    }
+
+    private boolean isNullable(Path path) {
+        if (!(path.getModel() instanceof SingularAttribute)) return false;
+        SingularAttribute<?, ?> attribute = (SingularAttribute<?, ?>) path.getModel();
+        return attribute.isOptional() && !attribute.isId();
+    }
+
+    private Order toOrder(CriteriaBuilder criteriaBuilder, Path path, String field) {
+        return field.startsWith("-") ? criteriaBuilder.desc(path) : criteriaBuilder.asc(path);
+    }
+
+    private String stripDirection(String field) {
+        return field.startsWith("-") ? field.substring(1) : field;
+    }
+
+    private Predicate record(CriteriaBuilder criteriaBuilder, String operation, String field, Object value) {
+        bindings.add(value);
+        return recorded(criteriaBuilder, new FilterCriterion(operation, field, bindings.size() - 1, 1, Collections.emptyList()));
+    }
+
+    /**
+     * Return a placeholder predicate standing for the given criterion. The placeholders are told apart by identity
+     */
+    private Predicate recorded(CriteriaBuilder criteriaBuilder, FilterCriterion criterion) {
+        Predicate placeholder = criteriaBuilder.conjunction();
+        criteria.put(placeholder, criterion);
+        return placeholder;
+    }
+
+    /**
+     * Record the combination of placeholders. A predicate that is not a placeholder was not built with the helpers,
+     * its criterion is unknown and so is the combination
+     */
+    private Predicate combine(CriteriaBuilder criteriaBuilder, String operator, List<Predicate> predicates) {
+        List<FilterCriterion> combined = new ArrayList<>();
+        for (Predicate predicate : predicates) {
+            FilterCriterion criterion = criteria.get(predicate);
+            if (criterion == null) return criteriaBuilder.conjunction();
+            combined.add(criterion);
+        }
+        return recorded(criteriaBuilder, new FilterCriterion(operator, null, 0, 0, combined));
+    }
+
+    private static Path get(Root root, String fieldName) {
+        String[] fields = FIELD_PATHS.computeIfAbsent(fieldName, name -> name.split("\\."));
         if (fields.length == 1) {
             return root.get(fieldName);
         } else {
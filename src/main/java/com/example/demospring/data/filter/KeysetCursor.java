@@ -0,0 +1,87 @@
+package com.example.demospring.data.filter;
+
+import jakarta.persistence.criteria.Path;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Encodes and decodes the opaque cursors used by keyset pagination. A cursor holds the values of the keyset fields
+ * of the last row of a page, each one Base64 encoded and separated by '.', with '~' for a null value. The values
+ * are converted back to the Java type of the matching path when the cursor is decoded, so the cursor never carries
+ * type information.
+ */
+public final class KeysetCursor {
+    private static final String SEPARATOR = ".";
+    private static final String NULL = "~";
+
+    private KeysetCursor() {
+    }
+
+    /**
+     * Build the cursor for the given keyset values
+     * @param values The values of the keyset fields of the last row, in keyset order. Can contain nulls
+     * @return The opaque cursor
+     */
+    public static String encode(Object... values) {
+        StringBuilder cursor = new StringBuilder();
+        for (int index = 0; index < values.length; index++) {
+            Object value = values[index];
+            if (index > 0) {
+                cursor.append(SEPARATOR);
+            }
+            if (value == null) {
+                cursor.append(NULL);
+                continue;
+            }
+            String raw = value instanceof Enum ? ((Enum<?>) value).name() : value.toString();
+            cursor.append(Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8)));
+        }
+        return cursor.toString();
+    }
+
+    /**
+     * Decode a cursor into the keyset values
+     * @param cursor The cursor returned with the previous page
+     * @param paths The keyset paths, used for converting the values to the right type
+     * @return The keyset values, in keyset order, null for the null values
+     */
+    public static Object[] decode(String cursor, List<Path> paths) {
+        String[] parts = cursor.split("\\" + SEPARATOR, -1);
+        if (parts.length != paths.size()) {
+            throw new IllegalArgumentException("Invalid cursor: expected " + paths.size() + " values, got " + parts.length);
+        }
+        Object[] values = new Object[parts.length];
+        try {
+            for (int index = 0; index < parts.length; index++) {
+                if (NULL.equals(parts[index])) continue;
+                String raw = new String(Base64.getUrlDecoder().decode(parts[index]), StandardCharsets.UTF_8);
+                values[index] = convert(raw, paths.get(index).getJavaType());
+            }
+        } catch (IllegalArgumentException | DateTimeException exception) {
+            throw new IllegalArgumentException("Invalid cursor", exception);
+        }
+        return values;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object convert(String raw, Class<?> type) {
+        if (type == String.class) return raw;
+        if (type == UUID.class) return UUID.fromString(raw);
+        if (type == Integer.class || type == int.class) return Integer.valueOf(raw);
+        if (type == Long.class || type == long.class) return Long.valueOf(raw);
+        if (type == Double.class || type == double.class) return Double.valueOf(raw);
+        if (type == Boolean.class || type == boolean.class) return Boolean.valueOf(raw);
+        if (type == BigDecimal.class) return new BigDecimal(raw);
+        if (type == LocalDateTime.class) return LocalDateTime.parse(raw);
+        if (type == LocalDate.class) return LocalDate.parse(raw);
+        if (type.isEnum()) return Enum.valueOf((Class<Enum>) type, raw);
+        throw new IllegalArgumentException("Keyset pagination is not supported for fields of type " + type.getName());
+    }
+}
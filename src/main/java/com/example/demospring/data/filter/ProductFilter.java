@@ -0,0 +1,34 @@
+package com.example.demospring.data.filter;
+
+import com.example.demospring.data.entities.ProductEntity;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+public class ProductFilter extends JPAFilter<ProductEntity> {
+    @Setter
+    private String name;
+
+    @Setter
+    private BigDecimal minPrice;
+
+    @Setter
+    private BigDecimal maxPrice;
+
+    @Override
+    public boolean isPlanCacheable() {
+        return true;
+    }
+
+    @Override
+    public Predicate getPredicate(CriteriaBuilder criteriaBuilder, Root root) {
+        Predicate predicateName = likeIgnoreCase(criteriaBuilder, root, "name", name);
+        Predicate predicateMinPrice = greaterThan(criteriaBuilder, root, "price", minPrice);
+        Predicate predicateMaxPrice = lessThan(criteriaBuilder, root, "price", maxPrice);
+
+        return andPredicateBuilder(criteriaBuilder, predicateName, predicateMinPrice, predicateMaxPrice);
+    }
+}
@@ -7,16 +7,18 @@ import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
 import lombok.Setter;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-
 public class UserFilter extends JPAFilter<UserEntity> {
     @Setter
     private String email;
 
     @Setter
     private UserRole role = null;
+
+    @Override
+    public boolean isPlanCacheable() {
+        return true;
+    }
+
     @Override
     public Predicate getPredicate(CriteriaBuilder criteriaBuilder, Root root) {
       Predicate predicateEmail = equals(criteriaBuilder, root, "email", email);
@@ -26,14 +28,6 @@ public class UserFilter extends JPAFilter<UserEntity> {
           predicateRole = equals(criteriaBuilder, root, "role", role);
       }
 
-        List<Predicate> predicates = Arrays.asList(predicateEmail,predicateRole);
-        List<Predicate> notNull = new ArrayList<>();
-        for (Predicate p : predicates){
-            if (p != null){
-                notNull.add(p);
-            }
-        }
-
-         return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
+        return andPredicateBuilder(criteriaBuilder, predicateEmail, predicateRole);
     }
 }
@@ -0,0 +1,104 @@
+package com.example.demospring.data.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the latency, row and entity load counts of the DAO operations, per entity class, operation and filter
+ * shape, and logs the calls slower than dao.slow-query-ms together with the SQL they ran. The number of tracked
+ * shapes is bounded; once full, calls of new shapes are counted under the shape "other".
+ */
+@Slf4j
+@Component
+public class DaoMetrics {
+    public static final String OTHER_SHAPE = "other";
+
+    private static final int MAX_SERIES = 1_000;
+    private static final int SLOW_QUERY_LOG_SIZE = 100;
+
+    private final Map<String, OperationStats> stats = new ConcurrentHashMap<>();
+    private final Deque<SlowQuery> slowQueries = new ArrayDeque<>();
+    private final long slowQueryNanos;
+
+    @Autowired
+    public DaoMetrics(@Value("${dao.slow-query-ms:200}") long slowQueryMillis) {
+        this.slowQueryNanos = slowQueryMillis * 1_000_000;
+    }
+
+    /**
+     * Record a DAO call
+     * @param entity The entity class
+     * @param operation The DAO operation, e.g. get or persist
+     * @param shape The filter shape, without the bind values
+     * @param nanos The duration of the call
+     * @param rows The number of rows returned or written
+     * @param entityLoads The number of entities that were added to the persistence context during the call
+     * @param failed Whether the call threw an exception
+     */
+    public void record(Class<?> entity, String operation, String shape, long nanos, long rows, long entityLoads, boolean failed) {
+        series(entity.getSimpleName(), operation, shape).record(nanos, rows, entityLoads, failed);
+        if (nanos >= slowQueryNanos) {
+            SlowQuery slowQuery = new SlowQuery(Instant.now(), entity.getSimpleName(), operation, shape,
+                    nanos / 1_000_000.0, SqlCapture.lastStatement());
+            log.warn("Slow " + operation + " of " + slowQuery.getEntity() + " took " + slowQuery.getMillis()
+                    + " ms, shape " + shape + ", sql: " + slowQuery.getSql());
+            synchronized (slowQueries) {
+                slowQueries.addFirst(slowQuery);
+                if (slowQueries.size() > SLOW_QUERY_LOG_SIZE) {
+                    slowQueries.removeLast();
+                }
+            }
+        }
+    }
+
+    /**
+     * The statistics of every entity class, operation and filter shape seen so far
+     * @return The statistics
+     */
+    public Collection<OperationStats> getStats() {
+        return stats.values();
+    }
+
+    /**
+     * The most recent slow calls
+     * @return The slow calls, most recent first
+     */
+    public List<SlowQuery> getSlowQueries() {
+        synchronized (slowQueries) {
+            return new ArrayList<>(slowQueries);
+        }
+    }
+
+    /**
+     * Drop all statistics and the slow query log
+     */
+    public void reset() {
+        stats.clear();
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
+    }
+
+    private OperationStats series(String entity, String operation, String shape) {
+        String key = entity + "|" + operation + "|" + shape;
+        OperationStats series = stats.get(key);
+        if (series != null) return series;
+        if (stats.size() >= MAX_SERIES) {
+            shape = OTHER_SHAPE;
+            key = entity + "|" + operation + "|" + shape;
+        }
+        String seriesShape = shape;
+        return stats.computeIfAbsent(key, ignored -> new OperationStats(entity, operation, seriesShape));
+    }
+}
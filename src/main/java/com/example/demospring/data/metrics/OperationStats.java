@@ -0,0 +1,73 @@
+package com.example.demospring.data.metrics;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The statistics of one DAO operation for one entity class and filter shape
+ */
+public class OperationStats {
+    @Getter
+    private final String entity;
+    @Getter
+    private final String operation;
+    @Getter
+    private final String shape;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder entityLoads = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    OperationStats(String entity, String operation, String shape) {
+        this.entity = entity;
+        this.operation = operation;
+        this.shape = shape;
+    }
+
+    void record(long nanos, long rowCount, long loadCount, boolean failed) {
+        latency.record(nanos);
+        rows.add(rowCount);
+        entityLoads.add(loadCount);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    public long getCalls() {
+        return latency.getCount();
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+
+    public long getEntityLoads() {
+        return entityLoads.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public double getMeanMillis() {
+        return latency.getMeanMillis();
+    }
+
+    public double getP50Millis() {
+        return latency.getPercentileMillis(0.5);
+    }
+
+    public double getP95Millis() {
+        return latency.getPercentileMillis(0.95);
+    }
+
+    public double getP99Millis() {
+        return latency.getPercentileMillis(0.99);
+    }
+
+    public double getMaxMillis() {
+        return latency.getMaxMillis();
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.demospring.data.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * A DAO call that took longer than the slow query threshold. The bind values are not kept, only the filter shape.
+ */
+@Getter
+@AllArgsConstructor
+public class SlowQuery {
+    private final Instant time;
+    private final String entity;
+    private final String operation;
+    private final String shape;
+    private final double millis;
+    private final String sql;
+}
@@ -0,0 +1,44 @@
+package com.example.demospring.data.metrics;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Remembers the last SQL statement Hibernate prepared on the current thread, so the slow query log can show the
+ * SQL generated for a DAO call. The statement is passed on unchanged.
+ */
+@Component
+public class SqlCapture implements StatementInspector, HibernatePropertiesCustomizer {
+    private static final long serialVersionUID = 1L;
+    private static final ThreadLocal<String> LAST_STATEMENT = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        LAST_STATEMENT.set(sql);
+        return sql;
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, this);
+    }
+
+    /**
+     * Forget the last statement of the current thread
+     */
+    public static void clear() {
+        LAST_STATEMENT.remove();
+    }
+
+    /**
+     * The last statement prepared on the current thread
+     * @return The SQL, or null if no statement was prepared since the last {@link #clear()}
+     */
+    public static String lastStatement() {
+        return LAST_STATEMENT.get();
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.demospring.data.projection;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * A product with one of its categories, as read for the catalog export. A product with several categories comes
+ * in several rows, one after the other; a product without categories in one row with a null category id.
+ */
+@Getter
+@AllArgsConstructor
+public class ProductExportRow {
+    private final UUID id;
+    private final String name;
+    private final String description;
+    private final BigDecimal price;
+    private final Integer inventory;
+    private final UUID categoryId;
+}
@@ -0,0 +1,20 @@
+package com.example.demospring.data.projection;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * The fields of a product shown in product lists, without the description and categories
+ */
+@Getter
+@AllArgsConstructor
+public class ProductSummary {
+    public static final String[] FIELDS = {"id", "name", "price"};
+
+    private final UUID id;
+    private final String name;
+    private final BigDecimal price;
+}
@@ -0,0 +1,20 @@
+package com.example.demospring.data.projection;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * One sold item with the order it belongs to, as read for the sales rollups
+ */
+@Getter
+@AllArgsConstructor
+public class SaleLine {
+    private final UUID orderId;
+    private final LocalDateTime orderDate;
+    private final UUID productId;
+    private final BigDecimal price;
+}
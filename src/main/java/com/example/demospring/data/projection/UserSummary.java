@@ -0,0 +1,21 @@
+package com.example.demospring.data.projection;
+
+import com.example.demospring.data.UserRole;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.UUID;
+
+/**
+ * The fields of a user shown in user lists, without the password hash and salt
+ */
+@Getter
+@AllArgsConstructor
+public class UserSummary {
+    public static final String[] FIELDS = {"id", "email", "name", "role"};
+
+    private final UUID id;
+    private final String email;
+    private final String name;
+    private final UserRole role;
+}
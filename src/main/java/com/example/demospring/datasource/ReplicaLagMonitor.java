@@ -0,0 +1,140 @@
+package com.example.demospring.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures the replication lag of every replica with a heartbeat row: the primary writes the current time to
+ * replication_heartbeat, the replicas receive it through replication, and the lag is how old the time read from a
+ * replica is. A replica that lags more than the allowed maximum, or cannot be queried, gets no reads until it
+ * catches up.
+ *
+ * Without replication (datasource.replicas.replicated=false, e.g. two embedded databases in a test) nothing reaches
+ * the replicas: the heartbeat table is created on them too, and a replica without a heartbeat row counts as caught
+ * up. A row written to it directly is still measured, which is how a lagging replica is simulated.
+ */
+@Slf4j
+public class ReplicaLagMonitor implements Closeable {
+    private static final int HEARTBEAT_ID = 1;
+
+    private final JdbcTemplate primary;
+    private final Map<String, DataSource> replicaDataSources;
+    private final Map<String, JdbcTemplate> replicas = new LinkedHashMap<>();
+    private final long maxLagMillis;
+    private final boolean replicated;
+    private final Map<String, Long> lags = new ConcurrentHashMap<>();
+    private volatile List<String> healthy = Collections.emptyList();
+
+    /**
+     * @param primary The primary datasource
+     * @param replicas The replica datasources by key
+     * @param maxLagMillis The largest lag a replica may have and still take reads
+     * @param replicated False if the replicas are independent databases that receive nothing from the primary
+     */
+    public ReplicaLagMonitor(DataSource primary, Map<String, DataSource> replicas, long maxLagMillis, boolean replicated) {
+        this.primary = new JdbcTemplate(primary);
+        this.replicaDataSources = replicas;
+        for (Map.Entry<String, DataSource> replica : replicas.entrySet()) {
+            this.replicas.put(replica.getKey(), new JdbcTemplate(replica.getValue()));
+        }
+        this.maxLagMillis = maxLagMillis;
+        this.replicated = replicated;
+        createHeartbeatTable(this.primary);
+        if (!replicated) {
+            for (JdbcTemplate replica : this.replicas.values()) {
+                createHeartbeatTable(replica);
+            }
+        }
+    }
+
+    /**
+     * Write the heartbeat to the primary and read it back from every replica
+     */
+    @Scheduled(fixedDelayString = "${datasource.replicas.check-interval-ms:1000}")
+    public void check() {
+        long now = System.currentTimeMillis();
+        try {
+            if (primary.update("UPDATE replication_heartbeat SET beat_at = ? WHERE id = ?", now, HEARTBEAT_ID) == 0) {
+                primary.update("INSERT INTO replication_heartbeat (id, beat_at) VALUES (?, ?)", HEARTBEAT_ID, now);
+            }
+        } catch (RuntimeException exception) {
+            log.warn("Could not write the replication heartbeat", exception);
+        }
+
+        List<String> caughtUp = new ArrayList<>();
+        for (Map.Entry<String, JdbcTemplate> replica : replicas.entrySet()) {
+            long lag;
+            try {
+                List<Long> beats = replica.getValue().queryForList("SELECT beat_at FROM replication_heartbeat WHERE id = ?", Long.class, HEARTBEAT_ID);
+                if (beats.isEmpty()) {
+                    lag = replicated ? Long.MAX_VALUE : 0;
+                } else {
+                    lag = Math.max(System.currentTimeMillis() - beats.get(0), 0);
+                }
+            } catch (RuntimeException exception) {
+                lag = Long.MAX_VALUE;
+            }
+            Long previous = lags.put(replica.getKey(), lag);
+            boolean isHealthy = lag <= maxLagMillis;
+            boolean wasHealthy = previous != null && previous <= maxLagMillis;
+            if (isHealthy != wasHealthy && (previous != null || !isHealthy)) {
+                log.warn("Replica " + replica.getKey() + (isHealthy ? " caught up" : " lags behind, reading from the primary") + ", lag " + (lag == Long.MAX_VALUE ? "unknown" : lag + " ms"));
+            }
+            if (isHealthy) {
+                caughtUp.add(replica.getKey());
+            }
+        }
+        healthy = Collections.unmodifiableList(caughtUp);
+    }
+
+    /**
+     * The replicas that can take reads
+     * @return The keys of the replicas within the allowed lag
+     */
+    public List<String> getHealthyReplicas() {
+        return healthy;
+    }
+
+    /**
+     * The replica datasources
+     * @return The datasources by replica key
+     */
+    public Map<String, DataSource> getReplicas() {
+        return Collections.unmodifiableMap(replicaDataSources);
+    }
+
+    /**
+     * The last measured lag of every replica
+     * @return The lag in milliseconds by replica key, Long.MAX_VALUE if unknown
+     */
+    public Map<String, Long> getLags() {
+        return Collections.unmodifiableMap(lags);
+    }
+
+    private static void createHeartbeatTable(JdbcTemplate target) {
+        target.execute("CREATE TABLE IF NOT EXISTS replication_heartbeat (id INT PRIMARY KEY, beat_at BIGINT NOT NULL)");
+    }
+
+    /**
+     * Close the connection pools of the replicas
+     */
+    @Override
+    public void close() throws IOException {
+        for (DataSource replica : replicaDataSources.values()) {
+            if (replica instanceof Closeable) {
+                ((Closeable) replica).close();
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.demospring.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes reads to read replicas when datasource.replicas.urls is set, a comma separated list of JDBC urls. The
+ * replicas use the driver of the primary and, unless datasource.replicas.username and password are set, its
+ * credentials too. After a read-write transaction, the reads of the same request, or of the same thread within
+ * datasource.replicas.sticky-primary-ms, stay on the primary. Without replica urls the single datasource configured by Spring Boot is used as before.
+ * For a local test two embedded databases are enough, e.g. jdbc:h2:mem:primary and jdbc:h2:mem:replica, with
+ * datasource.replicas.replicated=false since nothing replicates between them.
+ */
+@Configuration
+@ConditionalOnProperty(name = "datasource.replicas.urls")
+public class ReplicaRoutingConfig {
+    @Bean(destroyMethod = "close")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReplicaLagMonitor replicaLagMonitor(HikariDataSource primaryDataSource, DataSourceProperties properties,
+                                               @Value("${datasource.replicas.urls}") List<String> urls,
+                                               @Value("${datasource.replicas.username:}") String username,
+                                               @Value("${datasource.replicas.password:}") String password,
+                                               @Value("${datasource.replicas.max-lag-ms:5000}") long maxLagMillis,
+                                               @Value("${datasource.replicas.replicated:true}") boolean replicated) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int index = 0; index < urls.size(); index++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + index);
+            replica.setJdbcUrl(urls.get(index).trim());
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setUsername(username.isEmpty() ? properties.determineUsername() : username);
+            replica.setPassword(username.isEmpty() ? properties.determinePassword() : password);
+            replica.setReadOnly(true);
+            replicas.put(replica.getPoolName(), replica);
+        }
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(primaryDataSource, replicas, maxLagMillis, replicated);
+        monitor.check();
+        return monitor;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaLagMonitor replicaLagMonitor,
+                                 @Value("${datasource.replicas.sticky-primary-ms:5000}") long stickyMillis) {
+        Map<Object, Object> targets = new HashMap<>(replicaLagMonitor.getReplicas());
+        targets.put(RoutingDataSource.PRIMARY, primaryDataSource);
+        RoutingDataSource routing = new RoutingDataSource(replicaLagMonitor, stickyMillis);
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(primaryDataSource);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @Bean
+    public StickyPrimaryFilter stickyPrimaryFilter() {
+        return new StickyPrimaryFilter();
+    }
+}
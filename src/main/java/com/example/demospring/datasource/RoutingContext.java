@@ -0,0 +1,83 @@
+package com.example.demospring.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * Per-thread routing state. After a read-write transaction, the reads of the same thread go to the primary as
+ * well, so a request reads its own writes even if the replicas have not caught up yet. The stickiness ends with
+ * the request, or after a time window for threads that do not serve requests.
+ *
+ * Work handed to another thread on behalf of a request, e.g. a DAO call through the DatabaseLimiter, is wrapped
+ * with {@link #propagate(Supplier)}: it shares the state of the submitting thread, so it reads the writes of the
+ * request and the request reads the writes it made.
+ */
+public final class RoutingContext {
+    private static final ThreadLocal<Writes> WRITES = new ThreadLocal<>();
+
+    /**
+     * The time of the last write, shared by the threads working for the same request
+     */
+    private static final class Writes {
+        private volatile long lastWriteMillis;
+    }
+
+    private RoutingContext() {
+    }
+
+    /**
+     * Record that the current thread used the primary for writing
+     */
+    public static void markWrite() {
+        current().lastWriteMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Check whether the reads of the current thread must go to the primary
+     * @param windowMillis How long reads stick to the primary after a write
+     * @return True if the thread, or a thread working for the same request, wrote within the window
+     */
+    public static boolean isPrimaryForced(long windowMillis) {
+        Writes writes = WRITES.get();
+        return writes != null && writes.lastWriteMillis != 0
+                && System.currentTimeMillis() - writes.lastWriteMillis <= windowMillis;
+    }
+
+    /**
+     * Wrap a task that runs on another thread for the current one. The task routes as the current thread does, and
+     * its writes make the reads of the current thread stick to the primary as well.
+     * @param task The task
+     * @return The task running with the routing state of the current thread
+     */
+    public static <R> Supplier<R> propagate(Supplier<R> task) {
+        Writes writes = current();
+        return () -> {
+            Writes previous = WRITES.get();
+            WRITES.set(writes);
+            try {
+                return task.get();
+            } finally {
+                if (previous == null) {
+                    WRITES.remove();
+                } else {
+                    WRITES.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Forget the routing state of the current thread. Called when a request ends
+     */
+    public static void clear() {
+        WRITES.remove();
+    }
+
+    private static Writes current() {
+        Writes writes = WRITES.get();
+        if (writes == null) {
+            writes = new Writes();
+            WRITES.set(writes);
+        }
+        return writes;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.demospring.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends read-only transactions to a read replica, round robin over the replicas within the allowed lag, and
+ * everything else to the primary. If no replica is caught up, reads fall back to the primary.
+ * Must be wrapped in a LazyConnectionDataSourceProxy: the transaction manager asks for the connection before the
+ * transaction is marked read-only, the proxy delays that until the first statement.
+ */
+public class RoutingDataSource extends AbstractRoutingDataSource {
+    public static final String PRIMARY = "primary";
+
+    private final ReplicaLagMonitor lagMonitor;
+    private final long stickyMillis;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param lagMonitor Tells which replicas are caught up
+     * @param stickyMillis How long the reads of a thread go to the primary after it wrote
+     */
+    public RoutingDataSource(ReplicaLagMonitor lagMonitor, long stickyMillis) {
+        this.lagMonitor = lagMonitor;
+        this.stickyMillis = stickyMillis;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        boolean readOnly = TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        if (!readOnly) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                RoutingContext.markWrite();
+            }
+            return PRIMARY;
+        }
+        if (RoutingContext.isPrimaryForced(stickyMillis)) return PRIMARY;
+
+        List<String> replicas = lagMonitor.getHealthyReplicas();
+        if (replicas.isEmpty()) return PRIMARY;
+        return replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.demospring.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * An immutable node of the category tree, with its ancestors and descendants precomputed
+ */
+@Getter
+@AllArgsConstructor
+public class CategoryNode {
+    private final UUID id;
+
+    private final String name;
+
+    /**
+     * The id of the parent, or null for a root category
+     */
+    private final UUID parentId;
+
+    private final List<UUID> childIds;
+
+    /**
+     * The ids of the ancestors, starting from the root and ending with the parent. Can be used as breadcrumb
+     */
+    private final List<UUID> ancestorIds;
+
+    /**
+     * The ids of all categories below this one, on any level
+     */
+    private final Set<UUID> descendantIds;
+}
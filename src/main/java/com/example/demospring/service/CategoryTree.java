@@ -0,0 +1,195 @@
+package com.example.demospring.service;
+
+import com.example.demospring.data.entities.CategoryEntity;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * An immutable snapshot of the whole category hierarchy. Every lookup is answered from precomputed maps, so
+ * navigation and breadcrumbs never need a query.
+ */
+public class CategoryTree {
+    public static final CategoryTree EMPTY = new CategoryTree(Collections.emptyMap(), Collections.emptyList());
+
+    private final Map<UUID, CategoryNode> nodes;
+
+    private final List<CategoryNode> roots;
+
+    private CategoryTree(Map<UUID, CategoryNode> nodes, List<CategoryNode> roots) {
+        this.nodes = nodes;
+        this.roots = roots;
+    }
+
+    /**
+     * Build the snapshot from all categories. Only the id of the parent is read, so lazy parents are not loaded.
+     * @param categories All categories
+     * @return The category tree
+     */
+    public static CategoryTree of(List<CategoryEntity> categories) {
+        Map<UUID, String> names = new HashMap<>();
+        Map<UUID, UUID> parents = new HashMap<>();
+        for (CategoryEntity category : categories) {
+            names.put(category.getId(), category.getName());
+            if (category.getParent() != null) {
+                parents.put(category.getId(), category.getParent().getId());
+            }
+        }
+
+        Map<UUID, List<UUID>> children = new HashMap<>();
+        List<UUID> rootIds = new ArrayList<>();
+        for (UUID id : names.keySet()) {
+            UUID parentId = parents.get(id);
+            if (parentId == null || !names.containsKey(parentId)) {
+                rootIds.add(id);
+            } else {
+                children.computeIfAbsent(parentId, key -> new ArrayList<>()).add(id);
+            }
+        }
+
+        Map<UUID, List<UUID>> ancestors = new HashMap<>();
+        Map<UUID, Set<UUID>> descendants = new HashMap<>();
+        for (UUID rootId : rootIds) {
+            walk(rootId, children, ancestors, descendants);
+        }
+
+        Map<UUID, CategoryNode> nodes = new HashMap<>();
+        for (UUID id : ancestors.keySet()) {
+            nodes.put(id, new CategoryNode(id, names.get(id), parents.get(id),
+                    Collections.unmodifiableList(children.getOrDefault(id, Collections.emptyList())),
+                    ancestors.get(id), descendants.get(id)));
+        }
+        List<CategoryNode> roots = new ArrayList<>();
+        for (UUID rootId : rootIds) {
+            roots.add(nodes.get(rootId));
+        }
+        return new CategoryTree(Collections.unmodifiableMap(nodes), Collections.unmodifiableList(roots));
+    }
+
+    /**
+     * Depth-first walk from a root, computing the ancestor path on the way down and the descendant sets on the way
+     * up. Categories that are part of a parent cycle are never reached from a root and are left out of the tree.
+     */
+    private static void walk(UUID rootId, Map<UUID, List<UUID>> children,
+                             Map<UUID, List<UUID>> ancestors, Map<UUID, Set<UUID>> descendants) {
+        Deque<UUID> stack = new ArrayDeque<>();
+        List<UUID> postOrder = new ArrayList<>();
+        ancestors.put(rootId, Collections.emptyList());
+        stack.push(rootId);
+        while (!stack.isEmpty()) {
+            UUID id = stack.pop();
+            postOrder.add(id);
+            List<UUID> path = new ArrayList<>(ancestors.get(id));
+            path.add(id);
+            List<UUID> childPath = Collections.unmodifiableList(path);
+            for (UUID childId : children.getOrDefault(id, Collections.emptyList())) {
+                ancestors.put(childId, childPath);
+                stack.push(childId);
+            }
+        }
+        // Children are always added to postOrder after their parent, so the reverse visits children first
+        for (int index = postOrder.size() - 1; index >= 0; index--) {
+            UUID id = postOrder.get(index);
+            Set<UUID> below = new LinkedHashSet<>();
+            for (UUID childId : children.getOrDefault(id, Collections.emptyList())) {
+                below.add(childId);
+                below.addAll(descendants.get(childId));
+            }
+            descendants.put(id, Collections.unmodifiableSet(below));
+        }
+    }
+
+    /**
+     * Return the node with the given id
+     * @param id The id of the category
+     * @return The node, or null if no such category exists
+     */
+    public CategoryNode getNode(UUID id) {
+        return nodes.get(id);
+    }
+
+    /**
+     * The root categories, which have no parent
+     * @return The root nodes
+     */
+    public List<CategoryNode> getRoots() {
+        return roots;
+    }
+
+    /**
+     * Return the children of the given category
+     * @param id The id of the category
+     * @return The child nodes, empty if the category does not exist or has no children
+     */
+    public List<CategoryNode> getChildren(UUID id) {
+        CategoryNode node = nodeOrNull(id);
+        if (node == null) return Collections.emptyList();
+        return toNodes(node.getChildIds());
+    }
+
+    /**
+     * Return the path from the root down to the given category, including it. Can be used as breadcrumb
+     * @param id The id of the category
+     * @return The nodes on the path, empty if the category does not exist
+     */
+    public List<CategoryNode> getPath(UUID id) {
+        CategoryNode node = nodeOrNull(id);
+        if (node == null) return Collections.emptyList();
+        List<CategoryNode> path = toNodes(node.getAncestorIds());
+        path.add(node);
+        return path;
+    }
+
+    /**
+     * Return the ids of the category and all categories below it. Useful for filtering products of a subtree
+     * @param id The id of the category
+     * @return The ids of the subtree, empty if the category does not exist
+     */
+    public Set<UUID> getSubtreeIds(UUID id) {
+        CategoryNode node = nodeOrNull(id);
+        if (node == null) return Collections.emptySet();
+        Set<UUID> subtree = new HashSet<>(node.getDescendantIds());
+        subtree.add(id);
+        return subtree;
+    }
+
+    /**
+     * Check whether a category is below another one
+     * @param id The id of the category that is checked
+     * @param ancestorId The id of the possible ancestor
+     * @return True if ancestorId is an ancestor of id
+     */
+    public boolean isDescendantOf(UUID id, UUID ancestorId) {
+        CategoryNode ancestor = nodeOrNull(ancestorId);
+        return ancestor != null && ancestor.getDescendantIds().contains(id);
+    }
+
+    /**
+     * The number of categories in the tree
+     * @return The number of categories
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    private CategoryNode nodeOrNull(UUID id) {
+        return id == null ? null : nodes.get(id);
+    }
+
+    private List<CategoryNode> toNodes(List<UUID> ids) {
+        List<CategoryNode> result = new ArrayList<>(ids.size() + 1);
+        for (UUID id : ids) {
+            result.add(nodes.get(id));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.demospring.service;
+
+import com.example.demospring.data.dao.CategoryDao;
+import com.example.demospring.data.entities.CategoryEntity;
+import com.example.demospring.data.event.EntityChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the whole category hierarchy in memory as an immutable {@link CategoryTree}. The snapshot is loaded with a
+ * single query on startup and rebuilt after every committed category write, then swapped atomically, so readers
+ * never see a half-built tree and never wait for a rebuild. Rebuilds after concurrent writes can overlap; each one
+ * takes a generation number before it reads, and a rebuild only replaces a snapshot read by an earlier one, so a
+ * slow rebuild never puts back an older tree.
+ */
+@Slf4j
+@Service
+public class CategoryTreeService {
+    private final CategoryDao categoryDao;
+
+    private final AtomicLong loads = new AtomicLong();
+
+    private volatile CategoryTree snapshot = CategoryTree.EMPTY;
+    private long snapshotGeneration;
+
+    @Autowired
+    public CategoryTreeService(CategoryDao categoryDao) {
+        this.categoryDao = categoryDao;
+    }
+
+    /**
+     * The current snapshot of the category tree
+     * @return The category tree
+     */
+    public CategoryTree getTree() {
+        return snapshot;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void load() {
+        reload();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public void onEntityChanged(EntityChangedEvent event) {
+        if (CategoryEntity.class.equals(event.getEntityType())) {
+            reload();
+        }
+    }
+
+    private void reload() {
+        long generation = loads.incrementAndGet();
+        long start = System.nanoTime();
+        CategoryTree tree = CategoryTree.of(categoryDao.findAll());
+        synchronized (this) {
+            if (generation < snapshotGeneration) {
+                log.debug("Discarding category tree " + generation + ", tree " + snapshotGeneration + " is newer");
+                return;
+            }
+            snapshot = tree;
+            snapshotGeneration = generation;
+        }
+        log.info("Category tree loaded with " + tree.size() + " categories in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.demospring.service;
+
+import com.example.demospring.data.entities.ProductEntity;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * An in-memory inverted index over the name and description of the products. Every term maps to a postings list
+ * with the weight of the term in each product; the terms are kept sorted, so the last word of a query can be
+ * matched as a prefix (search as you type). Results are ranked by a TF-IDF score where name matches weigh more.
+ * Reads run in parallel, writes are serialized.
+ */
+public class ProductSearchIndex {
+    private static final float NAME_WEIGHT = 3f;
+    private static final float DESCRIPTION_WEIGHT = 1f;
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final NavigableMap<String, Map<UUID, Float>> postings = new TreeMap<>();
+    private final Map<UUID, Map<String, Float>> documents = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Split a text into lower case terms without diacritics
+     * @param text The text
+     * @return The terms, in the order they appear in the text
+     */
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) return Collections.emptyList();
+        String folded = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        List<String> terms = new ArrayList<>();
+        for (String term : SEPARATORS.split(folded)) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Add the product to the index, replacing the previous version of it
+     * @param product The product
+     */
+    public void put(ProductEntity product) {
+        Map<String, Float> terms = new HashMap<>();
+        for (String term : tokenize(product.getName())) {
+            terms.merge(term, NAME_WEIGHT, Float::sum);
+        }
+        for (String term : tokenize(product.getDescription())) {
+            terms.merge(term, DESCRIPTION_WEIGHT, Float::sum);
+        }
+
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(product.getId());
+            for (Map.Entry<String, Float> term : terms.entrySet()) {
+                postings.computeIfAbsent(term.getKey(), key -> new HashMap<>()).put(product.getId(), term.getValue());
+            }
+            documents.put(product.getId(), terms);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the product from the index
+     * @param id The id of the product
+     */
+    public void remove(UUID id) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeUnlocked(UUID id) {
+        Map<String, Float> terms = documents.remove(id);
+        if (terms == null) return;
+        for (String term : terms.keySet()) {
+            Map<UUID, Float> list = postings.get(term);
+            if (list != null) {
+                list.remove(id);
+                if (list.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    /**
+     * Search the products that contain every word of the query. The last word also matches as a prefix.
+     * @param query The text typed by the user
+     * @param limit The maximum number of results
+     * @return The ids of the matching products, best match first
+     */
+    public List<UUID> search(String query, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || limit <= 0) return Collections.emptyList();
+
+        lock.readLock().lock();
+        try {
+            Map<UUID, Float> scores = null;
+            for (int index = 0; index < terms.size(); index++) {
+                boolean prefix = index == terms.size() - 1;
+                Map<UUID, Float> termScores = score(terms.get(index), prefix);
+                scores = scores == null ? termScores : intersect(scores, termScores);
+                if (scores.isEmpty()) return Collections.emptyList();
+            }
+            return top(scores, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The number of products in the index
+     * @return The number of products
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<UUID, Float> score(String term, boolean prefix) {
+        Map<String, Map<UUID, Float>> matching = prefix
+                ? postings.subMap(term, true, term + Character.MAX_VALUE, false)
+                : postings.containsKey(term) ? Collections.singletonMap(term, postings.get(term)) : Collections.emptyMap();
+
+        Map<UUID, Float> scores = new HashMap<>();
+        for (Map.Entry<String, Map<UUID, Float>> entry : matching.entrySet()) {
+            Map<UUID, Float> list = entry.getValue();
+            float idf = (float) Math.log(1 + (double) documents.size() / list.size());
+            // An exact match ranks above a longer word that only shares the prefix
+            float boost = entry.getKey().length() == term.length() ? 1f : 0.5f;
+            for (Map.Entry<UUID, Float> posting : list.entrySet()) {
+                scores.merge(posting.getKey(), posting.getValue() * idf * boost, Float::sum);
+            }
+        }
+        return scores;
+    }
+
+    private Map<UUID, Float> intersect(Map<UUID, Float> left, Map<UUID, Float> right) {
+        Map<UUID, Float> smaller = left.size() <= right.size() ? left : right;
+        Map<UUID, Float> larger = smaller == left ? right : left;
+        Map<UUID, Float> result = new HashMap<>();
+        for (Map.Entry<UUID, Float> entry : smaller.entrySet()) {
+            Float other = larger.get(entry.getKey());
+            if (other != null) {
+                result.put(entry.getKey(), entry.getValue() + other);
+            }
+        }
+        return result;
+    }
+
+    private List<UUID> top(Map<UUID, Float> scores, int limit) {
+        PriorityQueue<Map.Entry<UUID, Float>> best = new PriorityQueue<>(limit + 1, Map.Entry.comparingByValue());
+        for (Map.Entry<UUID, Float> entry : scores.entrySet()) {
+            best.add(entry);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<UUID> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            result.add(best.poll().getKey());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+}
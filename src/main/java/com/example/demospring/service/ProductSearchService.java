@@ -0,0 +1,197 @@
+package com.example.demospring.service;
+
+import com.example.demospring.data.dao.GenericDao;
+import com.example.demospring.data.dao.ProductDao;
+import com.example.demospring.data.entities.ProductEntity;
+import com.example.demospring.data.event.ChangeType;
+import com.example.demospring.data.event.EntityChangedEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Full text search over the products, answered from an in-memory {@link ProductSearchIndex} instead of
+ * LIKE '%term%' scans. The index is built on startup and kept up to date after every committed product write.
+ *
+ * A rebuild reads a snapshot while the current index keeps answering and taking changes. The changes applied while
+ * it runs are replayed onto the new index before it replaces the current one, since the snapshot may predate them.
+ * Rebuilds run on a background thread, on startup and after bulk changes; the bulk changes that arrive while one
+ * runs mark the index dirty and are covered by a single rebuild after it.
+ */
+@Slf4j
+@Service
+public class ProductSearchService {
+    public static final int DEFAULT_LIMIT = 50;
+
+    private final ProductDao productDao;
+    private final TransactionTemplate readTransaction;
+    private final boolean enabled;
+
+    private final AtomicReference<ProductSearchIndex> index = new AtomicReference<>(new ProductSearchIndex());
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private final Object applyLock = new Object();
+
+    /**
+     * The products changed while a rebuild runs, by id, with their state after the change or null if they are gone.
+     * Null when no rebuild runs.
+     */
+    private Map<UUID, ProductEntity> changedDuringRebuild;
+
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "product-search-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Whether a change arrived that the running rebuild, if any, may not cover. Guarded by this
+     */
+    private boolean dirty;
+
+    /**
+     * The rebuilds running until the index is no longer dirty, or null. Guarded by this
+     */
+    private CompletableFuture<Void> runningRebuild;
+
+    @Autowired
+    public ProductSearchService(ProductDao productDao, PlatformTransactionManager transactionManager,
+                                @Value("${search.index.enabled:true}") boolean enabled) {
+        this.productDao = productDao;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.enabled = enabled;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    /**
+     * Search the products matching every word of the query, the last word being matched as a prefix
+     * @param query The text typed by the user
+     * @param limit The maximum number of results
+     * @return The ids of the matching products, best match first
+     */
+    public List<UUID> search(String query, int limit) {
+        return index.get().search(query, limit);
+    }
+
+    /**
+     * Start building the index in the background. A disabled index is never built nor updated and finds nothing
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) return;
+        rebuildAsync();
+    }
+
+    /**
+     * Mark the index dirty and rebuild it in the background. A request while a rebuild runs is served by one more
+     * rebuild after it, shared by every request made meanwhile
+     * @return Completes once the index is no longer dirty
+     */
+    public synchronized CompletableFuture<Void> rebuildAsync() {
+        dirty = true;
+        if (runningRebuild == null) {
+            runningRebuild = CompletableFuture.runAsync(this::rebuildWhileDirty, rebuildExecutor);
+        }
+        return runningRebuild;
+    }
+
+    private void rebuildWhileDirty() {
+        while (true) {
+            synchronized (this) {
+                if (!dirty) {
+                    runningRebuild = null;
+                    return;
+                }
+                dirty = false;
+            }
+            try {
+                rebuild();
+            } catch (RuntimeException exception) {
+                log.error("Rebuilding the product search index failed, the current index stays", exception);
+            }
+        }
+    }
+
+    /**
+     * Replace the index with one built from all products, on the calling thread
+     */
+    public void rebuild() {
+        rebuildLock.lock();
+        try {
+            long start = System.nanoTime();
+            synchronized (applyLock) {
+                changedDuringRebuild = new LinkedHashMap<>();
+            }
+            ProductSearchIndex rebuilt = new ProductSearchIndex();
+            try {
+                readTransaction.executeWithoutResult(status ->
+                        productDao.forEach(null, GenericDao.DEFAULT_FETCH_SIZE, rebuilt::put));
+                synchronized (applyLock) {
+                    for (Map.Entry<UUID, ProductEntity> change : changedDuringRebuild.entrySet()) {
+                        apply(rebuilt, change.getKey(), change.getValue());
+                    }
+                    index.set(rebuilt);
+                }
+            } finally {
+                synchronized (applyLock) {
+                    changedDuringRebuild = null;
+                }
+            }
+            log.info("Product search index built with " + rebuilt.size() + " products in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public void onEntityChanged(EntityChangedEvent event) {
+        if (!enabled || !ProductEntity.class.equals(event.getEntityType())) return;
+
+        if (event.getId() == null) {
+            rebuildAsync();
+            return;
+        }
+        UUID id = (UUID) event.getId();
+        ProductEntity product = event.getChangeType() == ChangeType.DELETE ? null : productDao.find(id);
+        synchronized (applyLock) {
+            apply(index.get(), id, product);
+            if (changedDuringRebuild != null) {
+                // Replaces an earlier change of the product, the last state wins
+                changedDuringRebuild.remove(id);
+                changedDuringRebuild.put(id, product);
+            }
+        }
+    }
+
+    private void apply(ProductSearchIndex target, UUID id, ProductEntity product) {
+        if (product == null) {
+            target.remove(id);
+        } else {
+            target.put(product);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.demospring.service.auth;
+
+/**
+ * Checks passwords against stored hashes written before the PBKDF2 format, by another system or an earlier version.
+ * When a bean implementing it is present, {@link PasswordService} asks it about every stored hash it does not
+ * recognize; a match logs the user in and replaces the hash with a PBKDF2 one of the configured cost, so the legacy
+ * hashes disappear as users log in. Without such a bean those users cannot log in until their password is reset.
+ */
+public interface LegacyPasswordVerifier {
+    /**
+     * Check a password against a legacy hash
+     * @param password The password
+     * @param salt The stored salt, can be null
+     * @param storedHash The stored hash, can be null
+     * @return True if the password matches
+     */
+    boolean matches(String password, String salt, String storedHash);
+}
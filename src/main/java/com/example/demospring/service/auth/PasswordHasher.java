@@ -0,0 +1,80 @@
+package com.example.demospring.service.auth;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * PBKDF2 with HMAC-SHA256. The stored hash carries its iteration count ("pbkdf2-sha256$iterations$hash"), so the
+ * cost can be raised without invalidating the existing hashes: they still verify with their own count and are
+ * replaced on the next login.
+ */
+class PasswordHasher {
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final SecureRandom random = new SecureRandom();
+
+    String newSalt() {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        return Base64.getEncoder().encodeToString(salt);
+    }
+
+    /**
+     * Hash a password
+     * @param password The password
+     * @param salt The salt, as returned by {@link #newSalt()}
+     * @param iterations The cost
+     * @return The hash to store, with its iteration count
+     */
+    String hash(String password, String salt, int iterations) {
+        return PREFIX + "$" + iterations + "$" + Base64.getEncoder().encodeToString(derive(password, salt, iterations));
+    }
+
+    /**
+     * Check a password against a stored hash, in time independent of where they differ
+     * @param password The password
+     * @param salt The stored salt
+     * @param storedHash The stored hash
+     * @return False if the password does not match or the stored hash has an unknown format
+     */
+    boolean matches(String password, String salt, String storedHash) {
+        int iterations = iterationsOf(storedHash);
+        if (iterations <= 0 || salt == null) return false;
+        byte[] expected = Base64.getDecoder().decode(storedHash.substring(storedHash.lastIndexOf('$') + 1));
+        return MessageDigest.isEqual(expected, derive(password, salt, iterations));
+    }
+
+    /**
+     * The iteration count of a stored hash
+     * @param storedHash The stored hash
+     * @return The iteration count, or 0 if the hash has an unknown format
+     */
+    int iterationsOf(String storedHash) {
+        if (storedHash == null) return 0;
+        String[] parts = storedHash.split("\\$");
+        if (parts.length != 3 || !PREFIX.equals(parts[0])) return 0;
+        try {
+            return Integer.parseInt(parts[1]);
+        } catch (NumberFormatException exception) {
+            return 0;
+        }
+    }
+
+    private byte[] derive(String password, String salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), Base64.getDecoder().decode(salt), iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException exception) {
+            throw new IllegalStateException("Could not hash the password", exception);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
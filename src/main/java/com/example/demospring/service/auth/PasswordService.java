@@ -0,0 +1,200 @@
+package com.example.demospring.service.auth;
+
+import com.example.demospring.data.dao.UserDao;
+import com.example.demospring.data.entities.UserEntity;
+import com.example.demospring.data.metrics.LatencyHistogram;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Hashes and verifies passwords on a dedicated pool of passwords.threads threads, so a burst of logins cannot take
+ * the CPU away from the other requests. At most passwords.queue-size hashes wait for a thread; beyond that a call
+ * fails at once with a {@link RejectedExecutionException} instead of queueing up behind the burst.
+ *
+ * The cost is passwords.hash-iterations. A successful login with a hash of another cost stores a new hash of the
+ * configured cost, so changing it takes effect as users log in. Hashes in another format are checked by the
+ * {@link LegacyPasswordVerifier} bean, if there is one, and replaced the same way.
+ */
+@Slf4j
+@Service
+public class PasswordService {
+    private final UserDao userDao;
+    private final TransactionTemplate transactionTemplate;
+    private final PasswordHasher hasher = new PasswordHasher();
+    private final LegacyPasswordVerifier legacyVerifier;
+    private final ThreadPoolExecutor executor;
+    private final int iterations;
+    private final String dummySalt = hasher.newSalt();
+    private volatile String dummyHash;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder rehashed = new LongAdder();
+
+    @Autowired
+    public PasswordService(UserDao userDao, PlatformTransactionManager transactionManager,
+                           ObjectProvider<LegacyPasswordVerifier> legacyVerifier,
+                           @Value("${passwords.hash-iterations:600000}") int iterations,
+                           @Value("${passwords.threads:0}") int threads,
+                           @Value("${passwords.queue-size:100}") int queueSize) {
+        this.userDao = userDao;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.legacyVerifier = legacyVerifier.getIfAvailable();
+        this.iterations = iterations;
+        // By default half of the cores, the other half stays free for the rest of the application
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Compute the dummy hash in the background, so the first unknown email is not slower than the others
+     */
+    @PostConstruct
+    public void start() {
+        executor.execute(this::dummyHash);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Check the password of a user. An unknown email is checked against a dummy hash of the configured cost, on the
+     * same threads and queue, so its answer takes as long as a wrong password and does not tell which emails exist.
+     * A stored hash in another format is checked against the dummy hash too, for the same time, and then by the
+     * {@link LegacyPasswordVerifier} if there is one.
+     * @param email The email of the user
+     * @param password The password
+     * @return The future user, or null if the email is unknown or the password does not match
+     * @throws RejectedExecutionException If too many hashes are waiting already
+     */
+    public CompletableFuture<UserEntity> verify(String email, String password) {
+        if (password == null) return CompletableFuture.completedFuture(null);
+        UserEntity user = userDao.findByEmail(email);
+        if (user == null) {
+            return submit(() -> {
+                timed(() -> hasher.matches(password, dummySalt, dummyHash()));
+                return null;
+            });
+        }
+        if (hasher.iterationsOf(user.getPasswordHash()) <= 0 || user.getPasswordSalt() == null) {
+            return submit(() -> {
+                timed(() -> hasher.matches(password, dummySalt, dummyHash()));
+                if (legacyVerifier == null
+                        || !legacyVerifier.matches(password, user.getPasswordSalt(), user.getPasswordHash())) return null;
+                rehash(user, password);
+                return user;
+            });
+        }
+        return submit(() -> {
+            if (!timed(() -> hasher.matches(password, user.getPasswordSalt(), user.getPasswordHash()))) return null;
+            if (hasher.iterationsOf(user.getPasswordHash()) != iterations) {
+                rehash(user, password);
+            }
+            return user;
+        });
+    }
+
+    /**
+     * Set a new salt and the hash of the password on the user. The user still has to be stored.
+     * @param user The user
+     * @param password The new password
+     * @return The future user, with the new hash
+     * @throws RejectedExecutionException If too many hashes are waiting already
+     */
+    public CompletableFuture<UserEntity> setPassword(UserEntity user, String password) {
+        if (password == null || password.isEmpty()) {
+            throw new IllegalArgumentException("The password must not be empty");
+        }
+        return submit(() -> {
+            String salt = hasher.newSalt();
+            String hash = timed(() -> hasher.hash(password, salt, iterations));
+            user.setPasswordSalt(salt);
+            user.setPasswordHash(hash);
+            return user;
+        });
+    }
+
+    /**
+     * The load of the hashing threads and the latency of the hashes
+     * @return The statistics
+     */
+    public PasswordStats getStats() {
+        return new PasswordStats(iterations, executor.getMaximumPoolSize(), executor.getQueue().size(),
+                latency.getCount(), rejected.sum(), rehashed.sum(), latency.getMeanMillis(),
+                latency.getPercentileMillis(0.95), latency.getPercentileMillis(0.99), latency.getMaxMillis());
+    }
+
+    private <R> CompletableFuture<R> submit(Supplier<R> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException exception) {
+            rejected.increment();
+            throw new RejectedExecutionException("Too many password checks are waiting", exception);
+        }
+    }
+
+    private <R> R timed(Supplier<R> hash) {
+        long start = System.nanoTime();
+        try {
+            return hash.get();
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * The hash unknown emails are checked against
+     */
+    private String dummyHash() {
+        String hash = dummyHash;
+        if (hash == null) {
+            hash = hasher.hash(hasher.newSalt(), dummySalt, iterations);
+            dummyHash = hash;
+        }
+        return hash;
+    }
+
+    private void rehash(UserEntity user, String password) {
+        String salt = hasher.newSalt();
+        String hash = timed(() -> hasher.hash(password, salt, iterations));
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                UserEntity stored = userDao.find(user.getId());
+                if (stored == null) return;
+                stored.setPasswordSalt(salt);
+                stored.setPasswordHash(hash);
+                userDao.merge(stored);
+            });
+            user.setPasswordSalt(salt);
+            user.setPasswordHash(hash);
+            rehashed.increment();
+        } catch (RuntimeException exception) {
+            // The old hash still works, the next login tries again
+            log.warn("Could not store the new password hash of user " + user.getId(), exception);
+        }
+    }
+}
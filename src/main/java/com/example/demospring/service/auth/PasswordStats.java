@@ -0,0 +1,22 @@
+package com.example.demospring.service.auth;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The load of the password hashing executor and the latency of the hashes
+ */
+@Getter
+@AllArgsConstructor
+public class PasswordStats {
+    private final int iterations;
+    private final int threads;
+    private final int queued;
+    private final long hashes;
+    private final long rejected;
+    private final long rehashed;
+    private final double meanMillis;
+    private final double p95Millis;
+    private final double p99Millis;
+    private final double maxMillis;
+}
@@ -0,0 +1,156 @@
+package com.example.demospring.service.catalog;
+
+import com.example.demospring.data.dao.DatabaseLimiter;
+import com.example.demospring.data.dao.DatabasePriority;
+import com.example.demospring.data.dao.ProductDao;
+import com.example.demospring.data.projection.ProductExportRow;
+import com.example.demospring.service.CategoryNode;
+import com.example.demospring.service.CategoryTree;
+import com.example.demospring.service.CategoryTreeService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes the whole product catalog as JSON while it is read from a database cursor. Rows are written as they
+ * arrive and the output is flushed every {@link #FLUSH_INTERVAL} products, so the first bytes leave right after
+ * the first rows and the heap used stays the same for any number of products. The category names come from the
+ * in-memory {@link CategoryTree}, not from the database.
+ *
+ * The cursor holds a connection for the whole export, so the export takes a sheddable slot of the
+ * {@link DatabaseLimiter} and is rejected when the database is overloaded. The output is only opened once the slot
+ * is taken, so a rejected export has not written anything yet and can still be answered with an error.
+ */
+@Slf4j
+@Service
+public class CatalogExportService {
+    static final int FLUSH_INTERVAL = 500;
+
+    private final ProductDao productDao;
+    private final CategoryTreeService categoryTreeService;
+    private final ObjectMapper objectMapper;
+    private final DatabaseLimiter databaseLimiter;
+
+    /**
+     * Opens the output of an export
+     */
+    public interface ExportOutput {
+        OutputStream open() throws IOException;
+    }
+
+    /**
+     * The rows read for the product being written
+     */
+    private static class ExportState {
+        private final List<ProductExportRow> rows = new ArrayList<>();
+        private long products;
+    }
+
+    @Autowired
+    public CatalogExportService(ProductDao productDao, CategoryTreeService categoryTreeService,
+                                ObjectMapper objectMapper, DatabaseLimiter databaseLimiter) {
+        this.productDao = productDao;
+        this.categoryTreeService = categoryTreeService;
+        this.objectMapper = objectMapper;
+        this.databaseLimiter = databaseLimiter;
+    }
+
+    /**
+     * Write every product to the output, once the database limiter lets the export run. The output is closed at
+     * the end.
+     * @param output Opens the output, not called if the export is rejected
+     * @param ndjson True for one JSON object per line, false for a single JSON array
+     * @return The number of products written
+     * @throws com.example.demospring.data.dao.DatabaseOverloadedException If the export was shed
+     */
+    public long export(ExportOutput output, boolean ndjson) throws IOException {
+        long start = System.nanoTime();
+        CategoryTree categories = categoryTreeService.getTree();
+        ExportState state = new ExportState();
+        try {
+            databaseLimiter.stream(DatabasePriority.SHEDDABLE, () -> {
+                try (OutputStream out = output.open()) {
+                    JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+                    // NDJSON needs the line breaks between the root values
+                    generator.setRootValueSeparator(null);
+                    if (!ndjson) {
+                        generator.writeStartArray();
+                    }
+                    productDao.forEachExportRow(row -> {
+                        if (!state.rows.isEmpty() && !state.rows.get(0).getId().equals(row.getId())) {
+                            writeProduct(generator, state, categories, ndjson);
+                        }
+                        state.rows.add(row);
+                    });
+                    if (!state.rows.isEmpty()) {
+                        writeProduct(generator, state, categories, ndjson);
+                    }
+                    if (!ndjson) {
+                        generator.writeEndArray();
+                    }
+                    generator.close();
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+                return null;
+            });
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+        log.info("Exported " + state.products + " products in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return state.products;
+    }
+
+    private void writeProduct(JsonGenerator generator, ExportState state, CategoryTree categories, boolean ndjson) {
+        ProductExportRow product = state.rows.get(0);
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("id", product.getId().toString());
+            generator.writeStringField("name", product.getName());
+            generator.writeStringField("description", product.getDescription());
+            if (product.getPrice() == null) {
+                generator.writeNullField("price");
+            } else {
+                generator.writeNumberField("price", product.getPrice());
+            }
+            if (product.getInventory() == null) {
+                generator.writeNullField("inventory");
+            } else {
+                generator.writeNumberField("inventory", product.getInventory());
+            }
+            generator.writeArrayFieldStart("categories");
+            for (ProductExportRow row : state.rows) {
+                UUID categoryId = row.getCategoryId();
+                if (categoryId == null) continue;
+                CategoryNode category = categories.getNode(categoryId);
+                generator.writeStartObject();
+                generator.writeStringField("id", categoryId.toString());
+                generator.writeStringField("name", category == null ? null : category.getName());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            if (ndjson) {
+                generator.writeRaw('\n');
+            }
+            state.products++;
+            if (state.products % FLUSH_INTERVAL == 1) {
+                // The first product is flushed at once, for a short time to first byte
+                generator.flush();
+            }
+        } catch (IOException exception) {
+            // The client went away, stop reading from the cursor
+            throw new UncheckedIOException(exception);
+        }
+        state.rows.clear();
+    }
+}
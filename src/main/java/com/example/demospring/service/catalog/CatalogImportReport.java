@@ -0,0 +1,33 @@
+package com.example.demospring.service.catalog;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * The outcome of a catalog import. In a dry run nothing is written: the products and categories are those that
+ * would have been created.
+ */
+@Getter
+@AllArgsConstructor
+public class CatalogImportReport {
+    private final String importId;
+    private final boolean dryRun;
+
+    /**
+     * The records skipped because a previous run of the import committed them
+     */
+    private final long resumedRecords;
+    private final long records;
+    private final long products;
+    private final long invalidRecords;
+    private final List<String> createdCategories;
+
+    /**
+     * The first invalid records, at most {@link CatalogImportService#MAX_REPORTED_ERRORS}
+     */
+    private final List<ImportError> errors;
+    private final List<StageStats> stages;
+    private final long elapsedMillis;
+}
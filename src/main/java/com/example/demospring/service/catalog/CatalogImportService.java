@@ -0,0 +1,312 @@
+package com.example.demospring.service.catalog;
+
+import com.example.demospring.data.dao.CatalogImportCheckpointDao;
+import com.example.demospring.data.dao.CategoryDao;
+import com.example.demospring.data.dao.ProductDao;
+import com.example.demospring.data.entities.CatalogImportCheckpointEntity;
+import com.example.demospring.data.entities.CategoryEntity;
+import com.example.demospring.data.entities.ProductEntity;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Imports supplier catalogs (CSV or NDJSON) from the directory catalog.import.directory into the products and
+ * categories. The file is streamed in three stages: the calling thread reads raw records and cuts them into
+ * chunks, a pool of parser threads parses and validates the chunks, and the calling thread writes the parsed
+ * chunks in file order, one transaction per chunk with batched inserts. At most two chunks per parser thread are
+ * in flight, so memory use does not depend on the size of the file.
+ *
+ * Category names are resolved against a map of all categories loaded once per import; unknown names are created.
+ * Every chunk transaction also stores the number of records committed, so a failed import can be resumed after
+ * the last committed chunk. Invalid records are skipped and reported.
+ */
+@Slf4j
+@Service
+public class CatalogImportService {
+    public static final int MAX_REPORTED_ERRORS = 100;
+
+    private final ProductDao productDao;
+    private final CategoryDao categoryDao;
+    private final CatalogImportCheckpointDao checkpointDao;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final int chunkSize;
+    private final int parserThreads;
+
+    private final ReentrantLock importLock = new ReentrantLock();
+
+    /**
+     * The parsed records of one chunk
+     */
+    private static class ParsedChunk {
+        private final int records;
+        private final List<CatalogRow> rows = new ArrayList<>();
+        private final List<ImportError> errors = new ArrayList<>();
+        private long parseNanos;
+
+        private ParsedChunk(int records) {
+            this.records = records;
+        }
+    }
+
+    /**
+     * The state of one import run
+     */
+    private static class ImportRun {
+        private final String importId;
+        private final long fileSize;
+        private final boolean dryRun;
+        private final Map<String, CategoryEntity> categories;
+        private final Map<String, String> createdCategories = new LinkedHashMap<>();
+        private final List<ImportError> errors = new ArrayList<>();
+        private long committedRecords;
+        private long records;
+        private long products;
+        private long invalidRecords;
+        private long readNanos;
+        private long parseNanos;
+        private long writeNanos;
+
+        private ImportRun(String importId, long fileSize, boolean dryRun, Map<String, CategoryEntity> categories) {
+            this.importId = importId;
+            this.fileSize = fileSize;
+            this.dryRun = dryRun;
+            this.categories = categories;
+        }
+    }
+
+    @Autowired
+    public CatalogImportService(ProductDao productDao, CategoryDao categoryDao, CatalogImportCheckpointDao checkpointDao,
+                                PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+                                @Value("${catalog.import.directory:catalog-import}") String directory,
+                                @Value("${catalog.import.chunk-size:1000}") int chunkSize,
+                                @Value("${catalog.import.parser-threads:0}") int parserThreads) {
+        this.productDao = productDao;
+        this.categoryDao = categoryDao;
+        this.checkpointDao = checkpointDao;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.chunkSize = chunkSize;
+        this.parserThreads = parserThreads > 0 ? parserThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Import a catalog file. Only one import runs at a time.
+     * @param fileName The name of a .csv, .ndjson or .jsonl file in the import directory
+     * @param dryRun True to parse and validate the file without writing anything
+     * @param resume True to continue after the records committed by a previous run of the same file
+     * @return The report of the import
+     * @throws IllegalArgumentException If the file does not exist or has an unknown format
+     * @throws IllegalStateException If another import runs, or the file changed since the run to resume
+     */
+    public CatalogImportReport importFile(String fileName, boolean dryRun, boolean resume) throws IOException {
+        Path file = directory.resolve(fileName).normalize();
+        if (!file.getParent().equals(directory) || !Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("No catalog file " + fileName + " in the import directory");
+        }
+        boolean csv = fileName.endsWith(".csv");
+        if (!csv && !fileName.endsWith(".ndjson") && !fileName.endsWith(".jsonl")) {
+            throw new IllegalArgumentException("The catalog file must be .csv, .ndjson or .jsonl");
+        }
+        if (!importLock.tryLock()) {
+            throw new IllegalStateException("Another catalog import is running");
+        }
+        try {
+            return run(file, csv, dryRun, resume);
+        } finally {
+            importLock.unlock();
+        }
+    }
+
+    private CatalogImportReport run(Path file, boolean csv, boolean dryRun, boolean resume) throws IOException {
+        long start = System.nanoTime();
+        String importId = file.getFileName().toString();
+        long fileSize = Files.size(file);
+        long skip = resume ? resumeFrom(importId, fileSize) : 0;
+        ImportRun run = new ImportRun(importId, fileSize, dryRun, loadCategories());
+        run.committedRecords = skip;
+
+        ExecutorService parsers = Executors.newFixedThreadPool(parserThreads);
+        try (CatalogRecordReader reader = new CatalogRecordReader(Files.newBufferedReader(file, StandardCharsets.UTF_8), csv)) {
+            CatalogRecordParser parser;
+            if (csv) {
+                CatalogRecordReader.RawRecord header = reader.next();
+                if (header == null) {
+                    throw new IllegalArgumentException("The catalog file is empty");
+                }
+                parser = CatalogRecordParser.csv(header.getText());
+            } else {
+                parser = CatalogRecordParser.ndjson(objectMapper);
+            }
+            for (long skipped = 0; skipped < skip; skipped++) {
+                if (reader.next() == null) break;
+            }
+
+            Deque<Future<ParsedChunk>> inFlight = new ArrayDeque<>();
+            List<CatalogRecordReader.RawRecord> chunk = new ArrayList<>(chunkSize);
+            while (true) {
+                long readStart = System.nanoTime();
+                CatalogRecordReader.RawRecord record = reader.next();
+                run.readNanos += System.nanoTime() - readStart;
+                if (record != null) {
+                    chunk.add(record);
+                    run.records++;
+                }
+                if (chunk.size() == chunkSize || (record == null && !chunk.isEmpty())) {
+                    List<CatalogRecordReader.RawRecord> records = chunk;
+                    inFlight.add(parsers.submit(() -> parse(parser, records)));
+                    chunk = new ArrayList<>(chunkSize);
+                }
+                while (inFlight.size() > 2 * parserThreads || (record == null && !inFlight.isEmpty())) {
+                    write(run, await(inFlight.poll()));
+                }
+                if (record == null) break;
+            }
+            if (!dryRun) {
+                transactionTemplate.executeWithoutResult(status ->
+                        checkpointDao.save(importId, fileSize, run.committedRecords, true));
+            }
+        } finally {
+            parsers.shutdownNow();
+        }
+
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        log.info((dryRun ? "Dry run of catalog import " : "Catalog import ") + importId + ": " + run.records
+                + " records, " + run.products + " products, " + run.invalidRecords + " invalid, in " + elapsedMillis + " ms");
+        List<StageStats> stages = List.of(
+                new StageStats("read", run.records, run.readNanos / 1_000_000.0),
+                new StageStats("parse", run.records, run.parseNanos / 1_000_000.0),
+                new StageStats("write", run.products, run.writeNanos / 1_000_000.0));
+        return new CatalogImportReport(importId, dryRun, skip, run.records, run.products, run.invalidRecords,
+                new ArrayList<>(run.createdCategories.values()), run.errors, stages, elapsedMillis);
+    }
+
+    private long resumeFrom(String importId, long fileSize) {
+        CatalogImportCheckpointEntity checkpoint = transactionTemplate.execute(status -> checkpointDao.find(importId));
+        if (checkpoint == null || checkpoint.getRecords() == null) return 0;
+        if (checkpoint.getFileSize() == null || checkpoint.getFileSize() != fileSize) {
+            throw new IllegalStateException("The catalog file " + importId + " changed since it was imported, it has to be imported without resuming");
+        }
+        return checkpoint.getRecords();
+    }
+
+    private Map<String, CategoryEntity> loadCategories() {
+        Map<String, CategoryEntity> categories = new HashMap<>();
+        List<CategoryEntity> all = transactionTemplate.execute(status -> categoryDao.findAll());
+        for (CategoryEntity category : all) {
+            if (category.getName() != null) {
+                categories.putIfAbsent(key(category.getName()), category);
+            }
+        }
+        return categories;
+    }
+
+    private ParsedChunk parse(CatalogRecordParser parser, List<CatalogRecordReader.RawRecord> records) {
+        long start = System.nanoTime();
+        ParsedChunk chunk = new ParsedChunk(records.size());
+        for (CatalogRecordReader.RawRecord record : records) {
+            try {
+                chunk.rows.add(parser.parse(record));
+            } catch (IllegalArgumentException exception) {
+                chunk.errors.add(new ImportError(record.getLineNumber(), exception.getMessage()));
+            }
+        }
+        chunk.parseNanos = System.nanoTime() - start;
+        return chunk;
+    }
+
+    private ParsedChunk await(Future<ParsedChunk> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The catalog import was interrupted", exception);
+        } catch (ExecutionException exception) {
+            throw new IllegalStateException("Parsing the catalog failed", exception.getCause());
+        }
+    }
+
+    private void write(ImportRun run, ParsedChunk chunk) {
+        long start = System.nanoTime();
+        run.parseNanos += chunk.parseNanos;
+        run.invalidRecords += chunk.errors.size();
+        for (ImportError error : chunk.errors) {
+            if (run.errors.size() < MAX_REPORTED_ERRORS) {
+                run.errors.add(error);
+            }
+        }
+
+        Map<String, CategoryEntity> newCategories = new LinkedHashMap<>();
+        List<ProductEntity> products = new ArrayList<>(chunk.rows.size());
+        for (CatalogRow row : chunk.rows) {
+            ProductEntity product = new ProductEntity();
+            product.setName(row.getName());
+            product.setDescription(row.getDescription());
+            product.setPrice(row.getPrice());
+            product.setInventory(row.getInventory());
+            List<CategoryEntity> categories = new ArrayList<>(row.getCategories().size());
+            for (String name : row.getCategories()) {
+                String key = key(name);
+                CategoryEntity category = run.categories.get(key);
+                if (category == null) {
+                    category = newCategories.computeIfAbsent(key, ignored -> {
+                        CategoryEntity created = new CategoryEntity();
+                        created.setName(name);
+                        return created;
+                    });
+                }
+                if (!categories.contains(category)) {
+                    categories.add(category);
+                }
+            }
+            product.setCategories(categories.isEmpty() ? null : categories);
+            products.add(product);
+        }
+
+        long committed = run.committedRecords + chunk.records;
+        if (!run.dryRun) {
+            transactionTemplate.executeWithoutResult(status -> {
+                categoryDao.addCategories(newCategories.values());
+                productDao.persistAll(products);
+                checkpointDao.save(run.importId, run.fileSize, committed, false);
+            });
+        }
+        run.committedRecords = committed;
+        run.categories.putAll(newCategories);
+        for (CategoryEntity category : newCategories.values()) {
+            run.createdCategories.put(key(category.getName()), category.getName());
+        }
+        run.products += products.size();
+        run.writeNanos += System.nanoTime() - start;
+    }
+
+    private static String key(String categoryName) {
+        return categoryName.trim().toLowerCase(Locale.ROOT);
+    }
+}
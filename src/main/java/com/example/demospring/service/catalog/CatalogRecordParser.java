@@ -0,0 +1,187 @@
+package com.example.demospring.service.catalog;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Turns the records of a catalog file into {@link CatalogRow}s. A record has a name, a price and optionally a
+ * description, an inventory and categories: in CSV the columns are found by the header and the categories are
+ * separated by "|", in NDJSON they are the fields of the object and the categories can also be an array.
+ * Parsers hold no state besides the header, so one instance is shared by the parser threads.
+ */
+class CatalogRecordParser {
+    private static final int MAX_TEXT_LENGTH = 255;
+    private static final String CATEGORY_SEPARATOR = "\\|";
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, Integer> columns;
+
+    private CatalogRecordParser(ObjectMapper objectMapper, Map<String, Integer> columns) {
+        this.objectMapper = objectMapper;
+        this.columns = columns;
+    }
+
+    /**
+     * Create a parser of CSV records
+     * @param header The header record
+     * @return The parser
+     */
+    static CatalogRecordParser csv(String header) {
+        Map<String, Integer> columns = new HashMap<>();
+        List<String> names = splitCsv(header);
+        for (int index = 0; index < names.size(); index++) {
+            columns.put(names.get(index).trim().toLowerCase(Locale.ROOT), index);
+        }
+        if (!columns.containsKey("name") || !columns.containsKey("price")) {
+            throw new IllegalArgumentException("The CSV header must have the columns name and price");
+        }
+        return new CatalogRecordParser(null, columns);
+    }
+
+    /**
+     * Create a parser of NDJSON records
+     * @param objectMapper The JSON mapper
+     * @return The parser
+     */
+    static CatalogRecordParser ndjson(ObjectMapper objectMapper) {
+        return new CatalogRecordParser(objectMapper, null);
+    }
+
+    /**
+     * Parse and validate a record
+     * @param record The record
+     * @return The row
+     * @throws IllegalArgumentException If the record is not valid
+     */
+    CatalogRow parse(CatalogRecordReader.RawRecord record) {
+        return columns != null ? parseCsv(record) : parseJson(record);
+    }
+
+    private CatalogRow parseCsv(CatalogRecordReader.RawRecord record) {
+        List<String> fields = splitCsv(record.getText());
+        String categories = column(fields, "categories");
+        return row(record.getLineNumber(), column(fields, "name"), column(fields, "description"),
+                column(fields, "price"), column(fields, "inventory"),
+                categories == null ? Collections.emptyList() : List.of(categories.split(CATEGORY_SEPARATOR)));
+    }
+
+    private CatalogRow parseJson(CatalogRecordReader.RawRecord record) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(record.getText());
+        } catch (JsonProcessingException exception) {
+            throw new IllegalArgumentException("Not valid JSON: " + exception.getOriginalMessage());
+        }
+        if (!node.isObject()) {
+            throw new IllegalArgumentException("Not a JSON object");
+        }
+        List<String> categories = new ArrayList<>();
+        JsonNode categoryNode = node.get("categories");
+        if (categoryNode != null && categoryNode.isArray()) {
+            for (JsonNode category : categoryNode) {
+                categories.add(category.asText());
+            }
+        } else if (categoryNode != null && !categoryNode.isNull()) {
+            categories.addAll(List.of(categoryNode.asText().split(CATEGORY_SEPARATOR)));
+        }
+        return row(record.getLineNumber(), text(node, "name"), text(node, "description"), text(node, "price"),
+                text(node, "inventory"), categories);
+    }
+
+    private CatalogRow row(long lineNumber, String name, String description, String price, String inventory,
+                           List<String> categoryNames) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("The name is missing");
+        }
+        if (name.length() > MAX_TEXT_LENGTH || (description != null && description.length() > MAX_TEXT_LENGTH)) {
+            throw new IllegalArgumentException("The name and description can have at most " + MAX_TEXT_LENGTH + " characters");
+        }
+        if (price == null || price.isBlank()) {
+            throw new IllegalArgumentException("The price is missing");
+        }
+        BigDecimal parsedPrice;
+        try {
+            parsedPrice = new BigDecimal(price.trim());
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("The price " + price + " is not a number");
+        }
+        if (parsedPrice.signum() < 0) {
+            throw new IllegalArgumentException("The price is negative");
+        }
+        Integer parsedInventory = null;
+        if (inventory != null && !inventory.isBlank()) {
+            try {
+                parsedInventory = Integer.valueOf(inventory.trim());
+            } catch (NumberFormatException exception) {
+                throw new IllegalArgumentException("The inventory " + inventory + " is not a whole number");
+            }
+            if (parsedInventory < 0) {
+                throw new IllegalArgumentException("The inventory is negative");
+            }
+        }
+        List<String> categories = new ArrayList<>(categoryNames.size());
+        for (String category : categoryNames) {
+            String trimmed = category.trim();
+            if (trimmed.length() > MAX_TEXT_LENGTH) {
+                throw new IllegalArgumentException("The category " + trimmed + " is too long");
+            }
+            if (!trimmed.isEmpty()) {
+                categories.add(trimmed);
+            }
+        }
+        return new CatalogRow(lineNumber, name.trim(), description == null || description.isEmpty() ? null : description, parsedPrice, parsedInventory, categories);
+    }
+
+    private String column(List<String> fields, String column) {
+        Integer index = columns.get(column);
+        return index == null || index >= fields.size() ? null : fields.get(index);
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    /**
+     * Split a CSV record in its fields. Fields can be quoted, with "" for a quote inside a quoted field.
+     */
+    static List<String> splitCsv(String record) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int index = 0; index < record.length(); index++) {
+            char character = record.charAt(index);
+            if (quoted) {
+                if (character != '"') {
+                    field.append(character);
+                } else if (index + 1 < record.length() && record.charAt(index + 1) == '"') {
+                    field.append('"');
+                    index++;
+                } else {
+                    quoted = false;
+                }
+            } else if (character == '"') {
+                quoted = true;
+            } else if (character == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(character);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("A quoted field is not closed");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.demospring.service.catalog;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads a catalog file one record at a time, without parsing it. A CSV record continues on the next lines while
+ * a quoted field is open; an NDJSON record is one line. Blank lines are skipped.
+ */
+class CatalogRecordReader implements Closeable {
+    private final BufferedReader reader;
+    private final boolean csv;
+    private long lineNumber;
+
+    @Getter
+    @AllArgsConstructor
+    static class RawRecord {
+        private final long lineNumber;
+        private final String text;
+    }
+
+    CatalogRecordReader(BufferedReader reader, boolean csv) {
+        this.reader = reader;
+        this.csv = csv;
+    }
+
+    /**
+     * Read the next record
+     * @return The record, or null at the end of the file
+     */
+    RawRecord next() throws IOException {
+        String line;
+        do {
+            line = readLine();
+            if (line == null) return null;
+        } while (line.isBlank());
+        long firstLine = lineNumber;
+        if (!csv || quotes(line) % 2 == 0) return new RawRecord(firstLine, line);
+
+        StringBuilder text = new StringBuilder(line);
+        int quotes = quotes(line);
+        while (quotes % 2 != 0) {
+            String more = readLine();
+            // An unterminated quote, the parser reports the record
+            if (more == null) break;
+            text.append('\n').append(more);
+            quotes += quotes(more);
+        }
+        return new RawRecord(firstLine, text.toString());
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private String readLine() throws IOException {
+        String line = reader.readLine();
+        if (line == null) return null;
+        lineNumber++;
+        if (lineNumber == 1 && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+            line = line.substring(1);
+        }
+        return line;
+    }
+
+    private static int quotes(String line) {
+        int quotes = 0;
+        for (int index = 0; index < line.length(); index++) {
+            if (line.charAt(index) == '"') {
+                quotes++;
+            }
+        }
+        return quotes;
+    }
+}
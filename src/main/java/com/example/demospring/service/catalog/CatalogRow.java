@@ -0,0 +1,21 @@
+package com.example.demospring.service.catalog;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * A parsed and validated catalog record
+ */
+@Getter
+@AllArgsConstructor
+class CatalogRow {
+    private final long lineNumber;
+    private final String name;
+    private final String description;
+    private final BigDecimal price;
+    private final Integer inventory;
+    private final List<String> categories;
+}
@@ -0,0 +1,14 @@
+package com.example.demospring.service.catalog;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A record of the catalog file that was skipped because it is not valid
+ */
+@Getter
+@AllArgsConstructor
+public class ImportError {
+    private final long lineNumber;
+    private final String message;
+}
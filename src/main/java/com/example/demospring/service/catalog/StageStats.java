@@ -0,0 +1,20 @@
+package com.example.demospring.service.catalog;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The records handled by one stage of a catalog import and the time spent in it. The parse time is summed over
+ * the parser threads, so it can be longer than the import.
+ */
+@Getter
+@AllArgsConstructor
+public class StageStats {
+    private final String stage;
+    private final long records;
+    private final double millis;
+
+    public double getRecordsPerSecond() {
+        return millis == 0 ? 0 : records * 1_000 / millis;
+    }
+}
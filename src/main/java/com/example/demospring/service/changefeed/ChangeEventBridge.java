@@ -0,0 +1,54 @@
+package com.example.demospring.service.changefeed;
+
+import com.example.demospring.data.dao.EntityVersions;
+import com.example.demospring.data.event.ChangeRecord;
+import com.example.demospring.data.event.ChangeType;
+import com.example.demospring.data.event.EntityChangedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Republishes the changes written by other nodes as {@link EntityChangedEvent}s and bumps their entity versions,
+ * so the caches, indexes and ETags of this node follow writes made elsewhere. Changes of this node are skipped:
+ * the DAOs published them when they were written, and so are inventory changes, which no cache or index of a
+ * node holds. Repeated changes of the same entity in a batch are published
+ * once, and a bulk change replaces the changes of its type.
+ */
+@Component
+public class ChangeEventBridge implements ChangeSubscriber {
+    private final ApplicationEventPublisher eventPublisher;
+    private final EntityVersions entityVersions;
+
+    @Autowired
+    public ChangeEventBridge(ApplicationEventPublisher eventPublisher, EntityVersions entityVersions) {
+        this.eventPublisher = eventPublisher;
+        this.entityVersions = entityVersions;
+    }
+
+    @Override
+    public void onChanges(List<ChangeRecord> changes) {
+        Map<Class<?>, Map<Object, ChangeType>> byType = new LinkedHashMap<>();
+        for (ChangeRecord change : changes) {
+            if (change.isLocal() || change.getChangeType() == ChangeType.INVENTORY) continue;
+            Map<Object, ChangeType> ids = byType.computeIfAbsent(change.getEntityType(), type -> new LinkedHashMap<>());
+            // The bulk change is kept under the null key, the last change of an id wins
+            ids.remove(change.getEntityId());
+            ids.put(change.getEntityId(), change.getChangeType());
+        }
+        for (Map.Entry<Class<?>, Map<Object, ChangeType>> type : byType.entrySet()) {
+            entityVersions.bump(type.getKey());
+            if (type.getValue().containsKey(null)) {
+                eventPublisher.publishEvent(new EntityChangedEvent(type.getKey(), null, type.getValue().get(null)));
+                continue;
+            }
+            for (Map.Entry<Object, ChangeType> id : type.getValue().entrySet()) {
+                eventPublisher.publishEvent(new EntityChangedEvent(type.getKey(), id.getKey(), id.getValue()));
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.demospring.service.changefeed;
+
+import com.example.demospring.data.dao.ChangeFeedOffsetDao;
+import com.example.demospring.data.dao.ChangeOutbox;
+import com.example.demospring.data.event.ChangeRecord;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tails the {@link ChangeOutbox} in batches of outbox.batch-size records and delivers them, in id order, to the
+ * {@link ChangeSubscriber}s. After every delivered batch the id of its last record is stored as the offset of this
+ * node (outbox.node-id), so a restarted node continues where it stopped. A node without an offset starts at the end
+ * of the outbox. Every node needs its own node id.
+ *
+ * The ids are assigned when a record is inserted, but the records become visible when their transaction commits,
+ * so a record can appear after records with higher ids. The feed therefore stops at a missing id and waits up to
+ * outbox.gap-timeout-ms for it, then moves on. A transaction can run for longer than that (a catalog import chunk, a
+ * chunked bulk update), so the skipped ids are looked up again on every poll for outbox.late-timeout-ms, and the
+ * records that turn up are delivered late, out of id order. An id still missing after that belonged to a rolled
+ * back transaction. The skipped ids are only kept in memory: a restart in between loses their late records.
+ * Records older than outbox.retention-ms are deleted; a node stopped for longer misses them.
+ */
+@Slf4j
+@Service
+public class ChangeFeed {
+    /**
+     * At most this many skipped ids are looked up in one query
+     */
+    private static final int LATE_BATCH_SIZE = 500;
+    private static final int MAX_SKIPPED_IDS = 100_000;
+
+    private final ChangeOutbox changeOutbox;
+    private final ChangeFeedOffsetDao offsetDao;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readTransaction;
+    private final ObjectProvider<ChangeSubscriber> subscriberBeans;
+    private final int batchSize;
+    private final long gapTimeoutMillis;
+    private final long lateTimeoutMillis;
+    private final long retentionMillis;
+
+    private final List<ChangeSubscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    private long offset;
+    private long gapAfter = -1;
+    private long gapSinceMillis;
+
+    /**
+     * The ids skipped after the gap timeout, with the time they were skipped at
+     */
+    private final TreeMap<Long, Long> skipped = new TreeMap<>();
+
+    @Autowired
+    public ChangeFeed(ChangeOutbox changeOutbox, ChangeFeedOffsetDao offsetDao,
+                      PlatformTransactionManager transactionManager, ObjectProvider<ChangeSubscriber> subscriberBeans,
+                      @Value("${outbox.batch-size:500}") int batchSize,
+                      @Value("${outbox.gap-timeout-ms:10000}") long gapTimeoutMillis,
+                      @Value("${outbox.late-timeout-ms:600000}") long lateTimeoutMillis,
+                      @Value("${outbox.retention-ms:86400000}") long retentionMillis) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive");
+        }
+        this.changeOutbox = changeOutbox;
+        this.offsetDao = offsetDao;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.subscriberBeans = subscriberBeans;
+        this.batchSize = batchSize;
+        this.gapTimeoutMillis = gapTimeoutMillis;
+        this.lateTimeoutMillis = Math.max(lateTimeoutMillis, gapTimeoutMillis);
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * Load the offset of this node, or start at the end of the outbox if there is none
+     */
+    @PostConstruct
+    public void start() {
+        subscriberBeans.orderedStream().forEach(subscribers::add);
+        String nodeId = changeOutbox.getNodeId();
+        offset = transactionTemplate.execute(status -> {
+            Long stored = offsetDao.getLastId(nodeId);
+            if (stored != null) return stored;
+            long last = changeOutbox.getLastId();
+            offsetDao.setLastId(nodeId, last);
+            return last;
+        });
+        log.info("Change feed of node " + nodeId + " starts after record " + offset);
+    }
+
+    /**
+     * Add a subscriber. It receives the records delivered from the next poll on
+     * @param subscriber The subscriber
+     */
+    public void subscribe(ChangeSubscriber subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Remove a subscriber
+     * @param subscriber The subscriber
+     */
+    public void unsubscribe(ChangeSubscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * The id of the last record delivered by this node
+     * @return The offset
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Deliver the skipped records that were committed since, then the records appended since the last poll, one
+     * batch at a time, until the feed is caught up or waits for a missing id
+     * @return The number of records delivered
+     */
+    @Scheduled(fixedDelayString = "${outbox.poll-interval-ms:500}")
+    public synchronized int poll() {
+        int delivered = pollSkipped();
+        while (true) {
+            long from = offset;
+            List<ChangeRecord> batch = readTransaction.execute(status -> changeOutbox.findAfter(from, batchSize));
+            int deliverable = deliverable(batch);
+            if (deliverable == 0) return delivered;
+
+            List<ChangeRecord> changes = batch.subList(0, deliverable);
+            // The offset stays, the batch is delivered again on the next poll
+            if (!deliver(changes)) return delivered;
+            long last = changes.get(changes.size() - 1).getId();
+            transactionTemplate.executeWithoutResult(status -> offsetDao.setLastId(changeOutbox.getNodeId(), last));
+            offset = last;
+            delivered += deliverable;
+            if (batch.size() < batchSize) return delivered;
+        }
+    }
+
+    /**
+     * The number of skipped ids whose records may still be committed
+     * @return The skipped ids looked for
+     */
+    public synchronized int getSkippedCount() {
+        return skipped.size();
+    }
+
+    /**
+     * Delete the records that are past the retention
+     */
+    @Scheduled(fixedDelayString = "${outbox.purge-interval-ms:600000}")
+    public void purge() {
+        LocalDateTime before = LocalDateTime.now().minusNanos(retentionMillis * 1_000_000);
+        Integer deleted = transactionTemplate.execute(status -> changeOutbox.deleteBefore(before));
+        if (deleted != null && deleted > 0) {
+            log.info("Deleted " + deleted + " change records older than " + before);
+        }
+    }
+
+    /**
+     * The number of records at the start of the batch that can be delivered: the ones before the first missing id,
+     * unless that id has been missing for longer than the gap timeout
+     */
+    private int deliverable(List<ChangeRecord> batch) {
+        long expected = offset + 1;
+        for (int index = 0; index < batch.size(); index++) {
+            long id = batch.get(index).getId();
+            if (id != expected) {
+                long now = System.currentTimeMillis();
+                if (gapAfter != expected - 1) {
+                    gapAfter = expected - 1;
+                    gapSinceMillis = now;
+                }
+                if (now - gapSinceMillis < gapTimeoutMillis) return index;
+                log.warn("Skipping change records " + expected + " to " + (id - 1) + ", missing for "
+                        + (now - gapSinceMillis) + " ms; they are delivered if they appear within "
+                        + lateTimeoutMillis + " ms");
+                for (long missing = expected; missing < id && skipped.size() < MAX_SKIPPED_IDS; missing++) {
+                    skipped.put(missing, now);
+                }
+            }
+            expected = id + 1;
+        }
+        return batch.size();
+    }
+
+    /**
+     * Deliver the skipped records that appeared since the last poll, and forget the ids skipped for longer than the
+     * late timeout
+     * @return The number of records delivered
+     */
+    private int pollSkipped() {
+        if (skipped.isEmpty()) return 0;
+        long expiredBefore = System.currentTimeMillis() - lateTimeoutMillis;
+        int expired = 0;
+        for (Iterator<Map.Entry<Long, Long>> entries = skipped.entrySet().iterator(); entries.hasNext(); ) {
+            if (entries.next().getValue() < expiredBefore) {
+                entries.remove();
+                expired++;
+            }
+        }
+        if (expired > 0) {
+            log.info(expired + " skipped change records never appeared, their transactions were rolled back");
+        }
+
+        int delivered = 0;
+        List<Long> ids = new ArrayList<>(skipped.keySet());
+        for (int from = 0; from < ids.size(); from += LATE_BATCH_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + LATE_BATCH_SIZE, ids.size()));
+            List<ChangeRecord> late = readTransaction.execute(status -> changeOutbox.findByIds(chunk));
+            if (late.isEmpty()) continue;
+            if (!deliver(late)) return delivered;
+            for (ChangeRecord record : late) {
+                skipped.remove(record.getId());
+            }
+            delivered += late.size();
+            log.info("Delivered " + late.size() + " change records late, up to record " + late.get(late.size() - 1).getId());
+        }
+        return delivered;
+    }
+
+    /**
+     * Hand the changes to every subscriber
+     * @return False if a subscriber failed, in which case the changes must be delivered again
+     */
+    private boolean deliver(List<ChangeRecord> changes) {
+        for (ChangeSubscriber subscriber : subscribers) {
+            try {
+                subscriber.onChanges(changes);
+            } catch (RuntimeException exception) {
+                log.error("Change subscriber " + subscriber + " failed, retrying after record " + offset, exception);
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.demospring.service.changefeed;
+
+import com.example.demospring.data.event.ChangeRecord;
+
+import java.util.List;
+
+/**
+ * Receives the committed changes from the {@link ChangeFeed}. Beans implementing it are subscribed on startup,
+ * others with {@link ChangeFeed#subscribe(ChangeSubscriber)}.
+ *
+ * Delivery is at least once: when a subscriber throws, the batch is delivered again to every subscriber on the next
+ * poll, and a node that stops between a delivery and storing its offset delivers the batch again after the restart.
+ * Subscribers must therefore tolerate records they have already seen.
+ */
+public interface ChangeSubscriber {
+    /**
+     * Handle a batch of changes
+     * @param changes The changes, in the order they were appended to the outbox. Records of a transaction that
+     *                committed after the gap timeout come in a later batch, after records with higher ids
+     */
+    void onChanges(List<ChangeRecord> changes);
+}
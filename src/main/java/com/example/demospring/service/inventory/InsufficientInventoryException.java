@@ -0,0 +1,14 @@
+package com.example.demospring.service.inventory;
+
+import java.util.UUID;
+
+/**
+ * Thrown when a reservation or a restock takes more units than are available
+ */
+public class InsufficientInventoryException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public InsufficientInventoryException(UUID productId, int requested, long available) {
+        super("Cannot take " + requested + " units of product " + productId + ", only " + available + " available");
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.demospring.service.inventory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The in-memory inventory of one product. Reservations only touch these atomics, so concurrent checkouts of the
+ * same product never wait on a row lock.
+ */
+class InventoryCounter {
+    /**
+     * Units that can still be reserved: the stock minus the outstanding reservations
+     */
+    final AtomicLong available;
+
+    /**
+     * Committed changes that were not written to the product table yet
+     */
+    final AtomicLong pendingDelta = new AtomicLong();
+
+    InventoryCounter(long available) {
+        this.available = new AtomicLong(available);
+    }
+
+    boolean tryTake(int quantity) {
+        long current;
+        do {
+            current = available.get();
+            if (current < quantity) {
+                return false;
+            }
+        } while (!available.compareAndSet(current, current - quantity));
+        return true;
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.demospring.service.inventory;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Append-only log of the committed inventory deltas, used to recover the deltas that were not written to the
+ * product table yet when the node stopped. Every record gets an increasing sequence. The log is split in segments:
+ * a flush rolls to a new segment and the closed ones are deleted once their deltas are in the database.
+ * Syncing to disk is group committed: one fsync covers every record appended before it.
+ */
+@Slf4j
+class InventoryDeltaLog implements Closeable {
+    private static final String PREFIX = "inventory-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final Object syncLock = new Object();
+
+    private FileChannel channel;
+    private Path segment;
+    private long lastSequence;
+    private volatile long durableSequence;
+
+    @Getter
+    @AllArgsConstructor
+    static class Delta {
+        private final long sequence;
+        private final UUID productId;
+        private final long delta;
+    }
+
+    InventoryDeltaLog(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Read the existing segments and open a new one for appending
+     * @param checkpoint The last sequence already written to the database
+     * @return The deltas after the checkpoint, which still have to be written to the database
+     */
+    synchronized List<Delta> open(long checkpoint) throws IOException {
+        Files.createDirectories(directory);
+        List<Delta> pending = new ArrayList<>();
+        lastSequence = checkpoint;
+        for (Path existing : segments()) {
+            try (BufferedReader reader = Files.newBufferedReader(existing, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Delta delta = parse(line);
+                    if (delta == null) {
+                        // A torn write at the end of the segment, the commit was never acknowledged
+                        log.warn("Ignoring incomplete inventory log record in " + existing);
+                        continue;
+                    }
+                    lastSequence = Math.max(lastSequence, delta.getSequence());
+                    if (delta.getSequence() > checkpoint) {
+                        pending.add(delta);
+                    }
+                }
+            }
+        }
+        durableSequence = lastSequence;
+        openSegment();
+        return pending;
+    }
+
+    /**
+     * Append a delta. The record is not durable until {@link #sync(long)} returns for its sequence.
+     * @param productId The id of the product
+     * @param delta The change of the inventory
+     * @return The sequence of the record
+     */
+    synchronized long append(UUID productId, long delta) throws IOException {
+        long sequence = ++lastSequence;
+        ByteBuffer record = ByteBuffer.wrap((sequence + "," + productId + "," + delta + "\n").getBytes(StandardCharsets.UTF_8));
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        return sequence;
+    }
+
+    /**
+     * Wait until the record with the given sequence is on disk. Callers that arrive while another one is syncing
+     * usually find their record already covered and return without an fsync of their own.
+     * @param sequence The sequence returned by {@link #append(UUID, long)}
+     */
+    void sync(long sequence) throws IOException {
+        if (durableSequence >= sequence) return;
+        synchronized (syncLock) {
+            if (durableSequence >= sequence) return;
+            long target;
+            FileChannel current;
+            synchronized (this) {
+                target = lastSequence;
+                current = channel;
+            }
+            current.force(false);
+            durableSequence = target;
+        }
+    }
+
+    /**
+     * The sequence of the last record appended
+     * @return The last sequence
+     */
+    synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Close the current segment and start a new one
+     * @return The closed segment, to be deleted once its deltas are in the database, or null if nothing was
+     *      appended since the segment was opened
+     */
+    Path roll() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                Path closed = segment;
+                if (segmentPath(lastSequence + 1).equals(closed)) return null;
+                channel.force(false);
+                channel.close();
+                durableSequence = lastSequence;
+                openSegment();
+                return closed;
+            }
+        }
+    }
+
+    /**
+     * Delete segments whose deltas are all written to the database
+     * @param closed The segments returned by {@link #roll()} and {@link #open(long)}
+     */
+    void delete(List<Path> closed) throws IOException {
+        for (Path path : closed) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * The segments that existed before the current one
+     * @return The closed segments, oldest first
+     */
+    synchronized List<Path> closedSegments() throws IOException {
+        List<Path> closed = segments();
+        closed.remove(segment);
+        return closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (channel != null && channel.isOpen()) {
+                    channel.force(false);
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    private void openSegment() throws IOException {
+        segment = segmentPath(lastSequence + 1);
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private Path segmentPath(long firstSequence) {
+        // Zero padded, so the lexical order of the file names is the order of the segments
+        return directory.resolve(String.format("%s%019d%s", PREFIX, firstSequence, SUFFIX));
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    private Delta parse(String line) {
+        String[] parts = line.split(",");
+        if (parts.length != 3) return null;
+        try {
+            return new Delta(Long.parseLong(parts[0]), UUID.fromString(parts[1]), Long.parseLong(parts[2]));
+        } catch (IllegalArgumentException exception) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package com.example.demospring.service.inventory;
+
+import com.example.demospring.NodeIds;
+import com.example.demospring.data.dao.DatabaseLimiter;
+import com.example.demospring.data.dao.DatabasePriority;
+import com.example.demospring.data.dao.InventoryCheckpointDao;
+import com.example.demospring.data.dao.InventoryLease;
+import com.example.demospring.data.dao.ProductDao;
+import com.example.demospring.data.entities.ProductEntity;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inventory reservations for checkouts. Every product has an in-memory {@link InventoryCounter}: reserving and
+ * releasing units is a compare-and-set on it, and committing a reservation appends the delta to a durable
+ * {@link InventoryDeltaLog}. The net deltas are written behind to the product table in batches, one UPDATE per
+ * changed product per flush, together with the log checkpoint. After a crash the deltas past the checkpoint are
+ * replayed from the log on startup. The product loads and the flushes are checkout traffic and go through the
+ * {@link DatabaseLimiter} with the critical priority; a product loaded inside the transaction of the caller is read
+ * in that transaction instead, its connection is already taken.
+ *
+ * The product inventory column is owned by this service: changes must go through {@link #restock(UUID, int)},
+ * merging a product leaves it untouched.
+ *
+ * The counters are never reconciled between nodes, so the inventory is served by a single node. The node holds a
+ * lease in the checkpoint table, tried on startup and renewed every inventory.lease-renew-interval-ms. A node that
+ * finds the lease held by another node starts without it and keeps trying, rejecting reservations and restocks until
+ * it gets the lease; a node that cannot renew its lease within inventory.lease-ms stops taking reservations, since
+ * another node may have taken over. The lease is owned by the node id (inventory.node-id, the host name by default),
+ * so a restarted node takes its own lease back at once; two processes must never run under the same node id.
+ */
+@Slf4j
+@Service
+public class InventoryService {
+    private final ProductDao productDao;
+    private final InventoryCheckpointDao checkpointDao;
+    private final TransactionTemplate transactionTemplate;
+    private final DatabaseLimiter databaseLimiter;
+    private final InventoryDeltaLog deltaLog;
+    private final String nodeId;
+    private final long reservationTtlMillis;
+    private final long leaseMillis;
+
+    private final Map<UUID, InventoryCounter> counters = new ConcurrentHashMap<>();
+    private final Map<Long, Reservation> reservations = new ConcurrentHashMap<>();
+    private final AtomicLong reservationIds = new AtomicLong();
+
+    /**
+     * Held shared while a delta is logged and added to its counter, and exclusively while a flush takes the pending
+     * deltas, so the checkpoint of a flush covers exactly the deltas it writes
+     */
+    private final ReentrantReadWriteLock deltaLock = new ReentrantReadWriteLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final List<Path> closedSegments = new ArrayList<>();
+
+    private volatile long leaseValidUntilMillis;
+    /**
+     * Set when the lease was taken over but the state of the last lease could not be dropped yet
+     */
+    private volatile boolean takeOverPending;
+
+    @Autowired
+    public InventoryService(ProductDao productDao, InventoryCheckpointDao checkpointDao,
+                            PlatformTransactionManager transactionManager, DatabaseLimiter databaseLimiter,
+                            @Value("${inventory.log.directory:inventory-log}") String logDirectory,
+                            @Value("${inventory.node-id:}") String nodeId,
+                            @Value("${inventory.reservation-ttl-ms:600000}") long reservationTtlMillis,
+                            @Value("${inventory.lease-ms:30000}") long leaseMillis) {
+        this.productDao = productDao;
+        this.checkpointDao = checkpointDao;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.databaseLimiter = databaseLimiter;
+        this.deltaLog = new InventoryDeltaLog(Paths.get(logDirectory));
+        this.nodeId = NodeIds.resolve(nodeId);
+        this.reservationTtlMillis = reservationTtlMillis;
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * Replay the deltas that were committed but not written to the database before the last stop, then try to take
+     * the inventory lease. The deltas are sales this node already made, they are written whether or not it gets the
+     * lease.
+     */
+    @PostConstruct
+    public void recover() throws IOException {
+        long checkpoint = transactionTemplate.execute(status -> checkpointDao.getLastSequence(nodeId));
+        List<InventoryDeltaLog.Delta> pending = deltaLog.open(checkpoint);
+        closedSegments.addAll(deltaLog.closedSegments());
+        if (!pending.isEmpty()) {
+            Map<UUID, Long> deltas = new HashMap<>();
+            long lastSequence = checkpoint;
+            for (InventoryDeltaLog.Delta delta : pending) {
+                deltas.merge(delta.getProductId(), delta.getDelta(), Long::sum);
+                lastSequence = Math.max(lastSequence, delta.getSequence());
+            }
+            write(deltas, lastSequence);
+            log.info("Recovered " + pending.size() + " inventory deltas for " + deltas.size() + " products");
+        }
+        deltaLog.delete(closedSegments);
+        closedSegments.clear();
+
+        if (!renewLease()) {
+            log.warn("Node " + nodeId + " starts without the inventory lease, it rejects reservations until it gets it");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        flush();
+        deltaLog.close();
+        leaseValidUntilMillis = 0;
+        try {
+            transactionTemplate.executeWithoutResult(status -> checkpointDao.releaseLease(nodeId, nodeId));
+        } catch (RuntimeException exception) {
+            log.warn("Could not release the inventory lease, it expires in " + leaseMillis + " ms", exception);
+        }
+    }
+
+    /**
+     * Take or renew the inventory lease of this node. A node that takes the lease over, because another node held it
+     * since this one last did, first drops its counters and reservations: the other node may have sold units of the
+     * products in the meantime. A lease that lapsed without anybody else taking it is renewed with the state kept.
+     * @return False if another node holds it, or the lease could not be taken over yet
+     */
+    @Scheduled(fixedDelayString = "${inventory.lease-renew-interval-ms:10000}", initialDelayString = "${inventory.lease-renew-interval-ms:10000}")
+    public boolean renewLease() {
+        long start = System.currentTimeMillis();
+        boolean held = start < leaseValidUntilMillis;
+        InventoryLease lease;
+        try {
+            lease = transactionTemplate.execute(status -> checkpointDao.acquireLease(nodeId, nodeId, leaseMillis));
+        } catch (RuntimeException exception) {
+            log.error("Renewing the inventory lease failed, it lasts until " + leaseValidUntilMillis, exception);
+            return false;
+        }
+        if (!lease.isAcquired()) {
+            leaseValidUntilMillis = 0;
+            if (held) {
+                log.error("The inventory lease was taken by node " + lease.getHolder().getNodeId() + " until "
+                        + lease.getHolder().getLeaseUntil());
+            } else {
+                log.debug("The inventory lease is held by node " + lease.getHolder().getNodeId() + " until "
+                        + lease.getHolder().getLeaseUntil());
+            }
+            return false;
+        }
+        if (lease.isTakenOver()) {
+            takeOverPending = true;
+        } else if (!held && leaseValidUntilMillis != 0) {
+            log.warn("The inventory lease of node " + nodeId + " had lapsed, nobody took it meanwhile");
+        }
+        if (takeOverPending) {
+            if (!takeOver()) return false;
+            takeOverPending = false;
+        }
+        leaseValidUntilMillis = start + leaseMillis;
+        return true;
+    }
+
+    /**
+     * Hold units of a product for a checkout. The reservation is not part of a surrounding transaction: it stays
+     * held if that transaction rolls back, and must be released by the caller
+     * @param productId The id of the product
+     * @param quantity The number of units
+     * @return The reservation, to be committed or released
+     * @throws InsufficientInventoryException If fewer units are available
+     */
+    public Reservation reserve(UUID productId, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("The quantity must be positive");
+        }
+        checkLease();
+        InventoryCounter counter = counter(productId);
+        if (!counter.tryTake(quantity)) {
+            throw new InsufficientInventoryException(productId, quantity, counter.available.get());
+        }
+        Reservation reservation = new Reservation(reservationIds.incrementAndGet(), productId, quantity, System.currentTimeMillis());
+        reservations.put(reservation.getId(), reservation);
+        return reservation;
+    }
+
+    /**
+     * Turn the reservation into a sale. Returns once the delta is durable in the log; the product table is updated
+     * by the next flush. If the log cannot be synced the sale still stands, since its delta is already pending, and
+     * the reservation is gone; the exception only reports that the delta may not survive a crash before that flush.
+     * @param reservationId The id of the reservation
+     */
+    public void commit(long reservationId) {
+        checkLease();
+        Reservation reservation = reservations.remove(reservationId);
+        if (reservation == null) {
+            throw new IllegalArgumentException("Unknown or expired reservation " + reservationId);
+        }
+        long sequence;
+        try {
+            sequence = appendDelta(reservation.getProductId(), -reservation.getQuantity(), false);
+        } catch (UncheckedIOException exception) {
+            // Nothing was applied, the reservation can still be committed or released
+            reservations.put(reservationId, reservation);
+            throw exception;
+        }
+        sync(sequence);
+    }
+
+    /**
+     * Give the reserved units back
+     * @param reservationId The id of the reservation
+     * @return False if the reservation was already committed, released or expired
+     */
+    public boolean release(long reservationId) {
+        Reservation reservation = reservations.remove(reservationId);
+        if (reservation == null) return false;
+        // Gone if the lease was taken over meanwhile, the reloaded counter does not hold the units
+        InventoryCounter counter = counters.get(reservation.getProductId());
+        if (counter != null) {
+            counter.available.addAndGet(reservation.getQuantity());
+        }
+        return true;
+    }
+
+    /**
+     * Add units to the stock of a product, or remove them with a negative quantity. Removed units are taken from the
+     * available ones like a reservation, so the stock never drops below the units held for checkouts
+     * @param productId The id of the product
+     * @param quantity The number of units added
+     * @throws InsufficientInventoryException If more units are removed than are available
+     */
+    public void restock(UUID productId, int quantity) {
+        checkLease();
+        if (quantity >= 0) {
+            sync(appendDelta(productId, quantity, true));
+            return;
+        }
+        int removed = Math.negateExact(quantity);
+        InventoryCounter counter = counter(productId);
+        if (!counter.tryTake(removed)) {
+            throw new InsufficientInventoryException(productId, removed, counter.available.get());
+        }
+        long sequence;
+        try {
+            sequence = appendDelta(productId, quantity, false);
+        } catch (UncheckedIOException exception) {
+            counter.available.addAndGet(removed);
+            throw exception;
+        }
+        sync(sequence);
+    }
+
+    /**
+     * The number of units that can still be reserved
+     * @param productId The id of the product
+     * @return The available units
+     */
+    public long getAvailable(UUID productId) {
+        return counter(productId).available.get();
+    }
+
+    /**
+     * Write the net deltas committed since the last flush to the product table, in one transaction
+     */
+    @Scheduled(fixedDelayString = "${inventory.flush-interval-ms:200}")
+    public void flush() throws IOException {
+        flushLock.lock();
+        try {
+            Map<UUID, Long> deltas = new HashMap<>();
+            long lastSequence;
+            deltaLock.writeLock().lock();
+            try {
+                for (Map.Entry<UUID, InventoryCounter> entry : counters.entrySet()) {
+                    long delta = entry.getValue().pendingDelta.getAndSet(0);
+                    if (delta != 0) {
+                        deltas.put(entry.getKey(), delta);
+                    }
+                }
+                if (deltas.isEmpty()) return;
+                lastSequence = deltaLog.getLastSequence();
+                Path closed = deltaLog.roll();
+                if (closed != null) {
+                    closedSegments.add(closed);
+                }
+            } finally {
+                deltaLock.writeLock().unlock();
+            }
+
+            long start = System.nanoTime();
+            try {
+                write(deltas, lastSequence);
+            } catch (RuntimeException exception) {
+                // Keep the deltas pending, the next flush retries them. The segments stay for recovery.
+                for (Map.Entry<UUID, Long> entry : deltas.entrySet()) {
+                    counters.get(entry.getKey()).pendingDelta.addAndGet(entry.getValue());
+                }
+                log.error("Writing the inventory deltas failed, retrying on the next flush", exception);
+                return;
+            }
+            deltaLog.delete(closedSegments);
+            closedSegments.clear();
+            log.debug("Wrote inventory deltas of " + deltas.size() + " products in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Release the reservations that were neither committed nor released in time
+     */
+    @Scheduled(fixedDelayString = "${inventory.expiry-interval-ms:1000}")
+    public void expireReservations() {
+        long expiredBefore = System.currentTimeMillis() - reservationTtlMillis;
+        for (Reservation reservation : reservations.values()) {
+            if (reservation.getCreatedAtMillis() < expiredBefore && release(reservation.getId())) {
+                log.info("Reservation " + reservation.getId() + " of product " + reservation.getProductId() + " expired");
+            }
+        }
+    }
+
+    /**
+     * Append the delta to the log and to the pending delta of the product, both or neither
+     * @return The sequence of the log record, to be synced
+     */
+    private long appendDelta(UUID productId, long delta, boolean changesAvailable) {
+        InventoryCounter counter = counter(productId);
+        deltaLock.readLock().lock();
+        try {
+            long sequence = deltaLog.append(productId, delta);
+            counter.pendingDelta.addAndGet(delta);
+            if (changesAvailable) {
+                counter.available.addAndGet(delta);
+            }
+            return sequence;
+        } catch (IOException exception) {
+            throw new UncheckedIOException("Could not log the inventory delta of product " + productId, exception);
+        } finally {
+            deltaLock.readLock().unlock();
+        }
+    }
+
+    private void sync(long sequence) {
+        try {
+            deltaLog.sync(sequence);
+        } catch (IOException exception) {
+            throw new UncheckedIOException("Could not sync the inventory log, the delta is written with the next flush", exception);
+        }
+    }
+
+    /**
+     * Forget the state of the last lease before serving again. Reservations are rejected while this runs, so nothing
+     * changes the counters but a concurrent {@link #getAvailable(UUID)} load, which reads the current stock anyway.
+     * @return False if the pending deltas could not be written, the next renewal tries again
+     */
+    private boolean takeOver() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException exception) {
+            log.error("Could not flush the inventory deltas before taking over the lease", exception);
+            return false;
+        }
+        for (InventoryCounter counter : counters.values()) {
+            if (counter.pendingDelta.get() != 0) {
+                log.error("Inventory deltas are still pending, not taking over the lease yet");
+                return false;
+            }
+        }
+        reservations.clear();
+        counters.clear();
+        log.info("Node " + nodeId + " took over the inventory lease");
+        return true;
+    }
+
+    private void checkLease() {
+        if (System.currentTimeMillis() >= leaseValidUntilMillis) {
+            throw new IllegalStateException("This node does not hold the inventory lease");
+        }
+    }
+
+    private void write(Map<UUID, Long> deltas, long lastSequence) {
+        databaseLimiter.execute(DatabasePriority.CRITICAL, false, () -> {
+            for (Map.Entry<UUID, Long> entry : deltas.entrySet()) {
+                productDao.addInventory(entry.getKey(), entry.getValue());
+            }
+            checkpointDao.setLastSequence(nodeId, lastSequence);
+            return null;
+        });
+    }
+
+    private InventoryCounter counter(UUID productId) {
+        InventoryCounter counter = counters.get(productId);
+        if (counter != null) return counter;
+
+        // Loaded outside of computeIfAbsent so the query does not block other products of the same map bin. Inside
+        // a transaction the connection is already held, waiting for a limiter slot could only starve the pool
+        ProductEntity product = TransactionSynchronizationManager.isActualTransactionActive()
+                ? productDao.find(productId)
+                : databaseLimiter.execute(DatabasePriority.CRITICAL, false, () -> productDao.find(productId));
+        if (product == null) {
+            throw new IllegalArgumentException("Unknown product " + productId);
+        }
+        long inventory = product.getInventory() == null ? 0 : product.getInventory();
+        InventoryCounter loaded = new InventoryCounter(inventory);
+        counter = counters.putIfAbsent(productId, loaded);
+        return counter == null ? loaded : counter;
+    }
+}
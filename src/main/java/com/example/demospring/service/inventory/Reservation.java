@@ -0,0 +1,21 @@
+package com.example.demospring.service.inventory;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.UUID;
+
+/**
+ * Units of a product held for a checkout until they are committed or released
+ */
+@Getter
+@AllArgsConstructor
+public class Reservation {
+    private final long id;
+
+    private final UUID productId;
+
+    private final int quantity;
+
+    private final long createdAtMillis;
+}
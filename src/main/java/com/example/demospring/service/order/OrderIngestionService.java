@@ -0,0 +1,214 @@
+package com.example.demospring.service.order;
+
+import com.example.demospring.data.OrderStatus;
+import com.example.demospring.data.dao.DatabaseLimiter;
+import com.example.demospring.data.dao.DatabaseOverloadedException;
+import com.example.demospring.data.dao.DatabasePriority;
+import com.example.demospring.data.dao.OrderDao;
+import com.example.demospring.data.entities.OrderEntity;
+import com.example.demospring.data.entities.OrderItemEntity;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Places orders through a bounded queue drained by a single writer thread. The writer takes every order waiting
+ * in the queue, up to the maximum batch size, and persists them with their items in one transaction with batched
+ * inserts, so many orders share one commit. The future returned to the caller completes only after that commit.
+ * If a group fails, its orders are retried one by one so a single bad order does not fail the others.
+ * The writes go through the {@link DatabaseLimiter} with the critical priority, ahead of catalog reads.
+ */
+@Slf4j
+@Service
+public class OrderIngestionService {
+    private final OrderDao orderDao;
+    private final DatabaseLimiter databaseLimiter;
+    private final BlockingQueue<PendingOrder> queue;
+    private final int maxBatch;
+    private final long offerTimeoutMillis;
+
+    /**
+     * Held shared while an order is offered and exclusively while stopping, so no order is queued once the writer
+     * may have seen the queue empty for the last time
+     */
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private volatile boolean running;
+    private Thread writer;
+
+    private static class PendingOrder {
+        private final OrderEntity order;
+        private final CompletableFuture<OrderEntity> future = new CompletableFuture<>();
+
+        private PendingOrder(OrderEntity order) {
+            this.order = order;
+        }
+    }
+
+    @Autowired
+    public OrderIngestionService(OrderDao orderDao, DatabaseLimiter databaseLimiter,
+                                 @Value("${orders.ingest.queue-capacity:10000}") int queueCapacity,
+                                 @Value("${orders.ingest.max-batch:500}") int maxBatch,
+                                 @Value("${orders.ingest.offer-timeout-ms:50}") long offerTimeoutMillis) {
+        this.orderDao = orderDao;
+        this.databaseLimiter = databaseLimiter;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatch = maxBatch;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::run, "order-ingestion-writer");
+        writer.start();
+    }
+
+    /**
+     * Stop accepting orders and wait until the orders already queued are written
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        stateLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        writer.join();
+        // Only left behind if the writer died, their callers must not wait forever
+        List<PendingOrder> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (PendingOrder pending : remaining) {
+            pending.future.completeExceptionally(new RejectedExecutionException("The order ingestion is stopped"));
+        }
+    }
+
+    /**
+     * Queue an order for writing. When the queue stays full for longer than the offer timeout the order is
+     * rejected, so callers get backpressure instead of an ever growing backlog.
+     * @param order The order, with its items
+     * @return The future completed with the stored order once it is committed, or completed exceptionally with a
+     *      {@link RejectedExecutionException} if the queue is full or with the error that made the write fail
+     */
+    public CompletableFuture<OrderEntity> submit(OrderEntity order) {
+        prepare(order);
+        PendingOrder pending = new PendingOrder(order);
+        stateLock.readLock().lock();
+        try {
+            if (!running) {
+                pending.future.completeExceptionally(new RejectedExecutionException("The order ingestion is stopped"));
+            } else if (!queue.offer(pending, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                pending.future.completeExceptionally(new RejectedExecutionException("The order queue is full"));
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            pending.future.completeExceptionally(exception);
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        return pending.future;
+    }
+
+    /**
+     * The number of orders waiting to be written
+     * @return The queue depth
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void prepare(OrderEntity order) {
+        if (order.getOrderDate() == null) {
+            order.setOrderDate(LocalDateTime.now());
+        }
+        if (order.getStatus() == null) {
+            order.setStatus(OrderStatus.ORDER_PLACED);
+        }
+        if (order.getItems() != null) {
+            for (OrderItemEntity item : order.getItems()) {
+                item.setOrder(order);
+            }
+        }
+    }
+
+    private void run() {
+        List<PendingOrder> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingOrder first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                write(batch);
+            } catch (InterruptedException exception) {
+                log.warn("Order ingestion writer interrupted, writing the queued orders and stopping");
+                running = false;
+            } catch (RuntimeException exception) {
+                log.error("Unexpected error in the order ingestion writer", exception);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingOrder> batch) {
+        long start = System.nanoTime();
+        List<OrderEntity> orders = new ArrayList<>(batch.size());
+        for (PendingOrder pending : batch) {
+            orders.add(pending.order);
+        }
+        try {
+            databaseLimiter.execute(DatabasePriority.CRITICAL, false, () -> orderDao.persistAll(orders));
+        } catch (DatabaseOverloadedException exception) {
+            // Nothing was written; retrying the orders one by one would only add load
+            for (PendingOrder pending : batch) {
+                pending.future.completeExceptionally(exception);
+            }
+            return;
+        } catch (RuntimeException exception) {
+            for (OrderEntity order : orders) {
+                resetIds(order);
+            }
+            if (batch.size() == 1) {
+                batch.get(0).future.completeExceptionally(exception);
+                return;
+            }
+            log.warn("Group commit of " + batch.size() + " orders failed, retrying them one by one", exception);
+            for (PendingOrder pending : batch) {
+                write(Collections.singletonList(pending));
+            }
+            return;
+        }
+        for (PendingOrder pending : batch) {
+            pending.future.complete(pending.order);
+        }
+        log.debug("Committed " + batch.size() + " orders in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Persist assigns the generated ids before the insert; a rolled back entity keeps them and would be taken for
+     * a detached one when it is retried
+     */
+    private void resetIds(OrderEntity order) {
+        order.setId(null);
+        if (order.getItems() != null) {
+            for (OrderItemEntity item : order.getItems()) {
+                item.setId(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.demospring.service.sales;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The running sales of one rollup bucket. Adding is three long additions, without allocations. Converting a price
+ * with {@link #toCents(BigDecimal)} allocates the BigInteger of its unscaled value, unless the price is whole.
+ */
+class SalesCounter {
+    static final int MONEY_SCALE = 2;
+    private static final long[] CENTS_PER_UNIT = {100, 10, 1};
+
+    private final LongAdder orders = new LongAdder();
+    private final LongAdder units = new LongAdder();
+    private final LongAdder revenueCents = new LongAdder();
+
+    /**
+     * Convert a price to hundredths, rounding half up any further digits. Prices with at most two decimals, which is
+     * every price read from the database, are converted from their unscaled value without rescaling
+     * @param price The price
+     * @return The price in hundredths
+     */
+    static long toCents(BigDecimal price) {
+        if (price == null) return 0;
+        int scale = price.scale();
+        if (scale == 0) return Math.multiplyExact(price.longValueExact(), CENTS_PER_UNIT[0]);
+        if (scale > 0 && scale <= MONEY_SCALE) {
+            return Math.multiplyExact(price.unscaledValue().longValueExact(), CENTS_PER_UNIT[scale]);
+        }
+        return price.setScale(MONEY_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    void add(long orderCount, long unitCount, long cents) {
+        orders.add(orderCount);
+        units.add(unitCount);
+        revenueCents.add(cents);
+    }
+
+    SalesTotals snapshot() {
+        return new SalesTotals(orders.sum(), units.sum(), revenueCents.sum());
+    }
+}
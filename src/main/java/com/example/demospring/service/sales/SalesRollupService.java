@@ -0,0 +1,410 @@
+package com.example.demospring.service.sales;
+
+import com.example.demospring.data.dao.DatabaseLimiter;
+import com.example.demospring.data.dao.DatabasePriority;
+import com.example.demospring.data.dao.OrderDao;
+import com.example.demospring.data.dao.ProductDao;
+import com.example.demospring.data.entities.OrderEntity;
+import com.example.demospring.data.entities.OrderItemEntity;
+import com.example.demospring.data.entities.ProductEntity;
+import com.example.demospring.data.event.ChangeRecord;
+import com.example.demospring.data.event.ChangeType;
+import com.example.demospring.data.event.EntityChangedEvent;
+import com.example.demospring.data.event.OrdersPlacedEvent;
+import com.example.demospring.data.projection.SaleLine;
+import com.example.demospring.service.changefeed.ChangeSubscriber;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Revenue and units sold per product, category, day and hour, kept in memory as {@link SalesRollups} and updated
+ * from every committed {@link OrdersPlacedEvent}, so reports never scan the order items. The rollups are rebuilt
+ * from the order history on startup, and on demand with {@link #rebuildAsync()}. A rebuild runs on a background
+ * thread while the current rollups keep answering. The history is read through the {@link DatabaseLimiter}; an
+ * on-demand rebuild is sheddable, so it is refused while the database is overloaded.
+ *
+ * The orders placed on other nodes arrive through the change feed: their items are loaded by id, and a bulk record,
+ * written for a large group of orders, rebuilds the rollups instead. Order updates and deletes are not followed, the
+ * rollups count every order ever placed until the next rebuild.
+ *
+ * An item counts for the categories its product had when the item was added; a rebuild uses the current ones.
+ */
+@Slf4j
+@Service
+public class SalesRollupService implements ChangeSubscriber {
+    private static final int MAX_DAYS = 3_660;
+    /**
+     * The number of remote orders remembered, to recognize the records the change feed delivers again
+     */
+    private static final int MAX_REMOTE_ORDERS = 100_000;
+
+    private final OrderDao orderDao;
+    private final ProductDao productDao;
+    private final DatabaseLimiter databaseLimiter;
+    private final long rebuildGraceMillis;
+    private final boolean enabled;
+
+    private final Map<UUID, List<UUID>> productCategories = new ConcurrentHashMap<>();
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private final Object applyLock = new Object();
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sales-rollup-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The rebuilds running until no rebuild is requested, or null. Guarded by this
+     */
+    private CompletableFuture<Void> runningRebuild;
+    /**
+     * The highest priority of the rebuild requested while one runs, or null if none is. Guarded by this
+     */
+    private DatabasePriority requestedRebuild;
+
+    /**
+     * The ids of the last remote orders added, oldest first. Guarded by applyLock
+     */
+    private final Map<UUID, Boolean> remoteOrders = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+            return size() > MAX_REMOTE_ORDERS;
+        }
+    };
+
+    private volatile SalesRollups rollups = new SalesRollups();
+
+    /**
+     * The orders placed while a rebuild runs, which the rebuild may or may not read. Null when no rebuild runs.
+     */
+    private List<List<SaleLine>> placedDuringRebuild;
+
+    @Autowired
+    public SalesRollupService(OrderDao orderDao, ProductDao productDao, DatabaseLimiter databaseLimiter,
+                              @Value("${sales.rollups.rebuild-grace-ms:600000}") long rebuildGraceMillis,
+                              @Value("${sales.rollups.enabled:true}") boolean enabled) {
+        this.orderDao = orderDao;
+        this.productDao = productDao;
+        this.databaseLimiter = databaseLimiter;
+        this.rebuildGraceMillis = rebuildGraceMillis;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Start building the rollups from the order history, without holding up the startup. Reports are empty until
+     * the build completes, apart from the orders placed meanwhile. Disabled rollups are never built nor updated.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) return;
+        rebuildAsync(DatabasePriority.NORMAL);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    /**
+     * Start a sheddable {@link #rebuild()} in the background. A rebuild requested while another one runs is served by
+     * one more rebuild after it, shared by every request made meanwhile, since the running one may have read the
+     * orders before the ones that prompted the request.
+     * @return The rebuilds, completed exceptionally if the last one failed or was shed
+     */
+    public CompletableFuture<Void> rebuildAsync() {
+        return rebuildAsync(DatabasePriority.SHEDDABLE);
+    }
+
+    private synchronized CompletableFuture<Void> rebuildAsync(DatabasePriority priority) {
+        if (requestedRebuild == null || priority.ordinal() < requestedRebuild.ordinal()) {
+            requestedRebuild = priority;
+        }
+        if (runningRebuild == null) {
+            runningRebuild = CompletableFuture.runAsync(this::rebuildWhileRequested, rebuildExecutor);
+        }
+        return runningRebuild;
+    }
+
+    private void rebuildWhileRequested() {
+        RuntimeException failure = null;
+        while (true) {
+            DatabasePriority priority;
+            synchronized (this) {
+                if (requestedRebuild == null) {
+                    runningRebuild = null;
+                    break;
+                }
+                priority = requestedRebuild;
+                requestedRebuild = null;
+            }
+            try {
+                rebuild(priority);
+                failure = null;
+            } catch (RuntimeException exception) {
+                log.error("Rebuilding the sales rollups failed, the current rollups stay", exception);
+                failure = exception;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Replace the rollups with new ones computed from the whole order history. The current rollups keep answering
+     * until the new ones are complete. The orders placed during the rebuild are added to the new rollups unless
+     * the rebuild read them already; this relies on orders being committed within sales.rollups.rebuild-grace-ms
+     * of their order date.
+     * Runs on the calling thread, with the sheddable priority.
+     * @throws com.example.demospring.data.dao.DatabaseOverloadedException If the database is overloaded
+     */
+    public void rebuild() {
+        rebuild(DatabasePriority.SHEDDABLE);
+    }
+
+    private void rebuild(DatabasePriority priority) {
+        rebuildLock.lock();
+        try {
+            long start = System.nanoTime();
+            LocalDateTime recentSince = LocalDateTime.now().minusNanos(rebuildGraceMillis * 1_000_000);
+            synchronized (applyLock) {
+                placedDuringRebuild = new ArrayList<>();
+            }
+            SalesRollups rebuilt = new SalesRollups();
+            Set<UUID> recentlyRead = new HashSet<>();
+            try {
+                Map<UUID, List<UUID>> categories = databaseLimiter.stream(priority, () -> {
+                    Map<UUID, List<UUID>> categoryIds = productDao.getCategoryIds(null);
+                    List<SaleLine> order = new ArrayList<>();
+                    orderDao.forEachSaleLine(line -> {
+                        if (!order.isEmpty() && !order.get(0).getOrderId().equals(line.getOrderId())) {
+                            read(rebuilt, order, categoryIds, recentSince, recentlyRead);
+                        }
+                        order.add(line);
+                    });
+                    if (!order.isEmpty()) {
+                        read(rebuilt, order, categoryIds, recentSince, recentlyRead);
+                    }
+                    return categoryIds;
+                });
+                productCategories.putAll(categories);
+                synchronized (applyLock) {
+                    for (List<SaleLine> order : placedDuringRebuild) {
+                        if (!recentlyRead.contains(order.get(0).getOrderId())) {
+                            rebuilt.apply(order, this::categoriesOf);
+                        }
+                    }
+                    rollups = rebuilt;
+                }
+            } finally {
+                synchronized (applyLock) {
+                    placedDuringRebuild = null;
+                }
+            }
+            log.info("Sales rollups rebuilt from " + rebuilt.getTotal().getOrders() + " orders in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public void onOrdersPlaced(OrdersPlacedEvent event) {
+        if (!enabled) return;
+        List<List<SaleLine>> orders = new ArrayList<>(event.getOrders().size());
+        Set<UUID> unknownProducts = new HashSet<>();
+        for (OrderEntity order : event.getOrders()) {
+            List<SaleLine> lines = linesOf(order);
+            if (lines.isEmpty()) continue;
+            for (SaleLine line : lines) {
+                if (line.getProductId() != null && !productCategories.containsKey(line.getProductId())) {
+                    unknownProducts.add(line.getProductId());
+                }
+            }
+            orders.add(lines);
+        }
+        loadCategories(unknownProducts);
+        synchronized (applyLock) {
+            for (List<SaleLine> order : orders) {
+                rollups.apply(order, this::categoriesOf);
+                if (placedDuringRebuild != null) {
+                    placedDuringRebuild.add(order);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the orders placed on other nodes. A record delivered again is skipped if its order is one of the last
+     * remote orders added.
+     */
+    @Override
+    public void onChanges(List<ChangeRecord> changes) {
+        if (!enabled) return;
+        Set<UUID> orderIds = new LinkedHashSet<>();
+        for (ChangeRecord change : changes) {
+            if (change.isLocal() || !OrderEntity.class.equals(change.getEntityType())
+                    || change.getChangeType() != ChangeType.INSERT) continue;
+            if (change.getEntityId() == null) {
+                // The rebuild reads the orders of the bulk record, and of the rest of the batch
+                rebuildAsync(DatabasePriority.NORMAL);
+                return;
+            }
+            orderIds.add((UUID) change.getEntityId());
+        }
+        synchronized (applyLock) {
+            orderIds.removeIf(remoteOrders::containsKey);
+        }
+        if (orderIds.isEmpty()) return;
+
+        List<SaleLine> lines = databaseLimiter.execute(DatabasePriority.NORMAL, true, () -> {
+            List<SaleLine> loaded = orderDao.getSaleLines(orderIds);
+            Set<UUID> unknownProducts = new HashSet<>();
+            for (SaleLine line : loaded) {
+                if (line.getProductId() != null && !productCategories.containsKey(line.getProductId())) {
+                    unknownProducts.add(line.getProductId());
+                }
+            }
+            loadCategories(unknownProducts);
+            return loaded;
+        });
+        List<List<SaleLine>> orders = new ArrayList<>();
+        for (SaleLine line : lines) {
+            if (orders.isEmpty() || !orders.get(orders.size() - 1).get(0).getOrderId().equals(line.getOrderId())) {
+                orders.add(new ArrayList<>());
+            }
+            orders.get(orders.size() - 1).add(line);
+        }
+        synchronized (applyLock) {
+            for (List<SaleLine> order : orders) {
+                if (remoteOrders.put(order.get(0).getOrderId(), Boolean.TRUE) != null) continue;
+                rollups.apply(order, this::categoriesOf);
+                if (placedDuringRebuild != null) {
+                    placedDuringRebuild.add(order);
+                }
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEntityChanged(EntityChangedEvent event) {
+        if (!ProductEntity.class.equals(event.getEntityType())) return;
+        if (event.getId() == null) {
+            productCategories.clear();
+        } else {
+            productCategories.remove(event.getId());
+        }
+    }
+
+    public SalesTotals getTotal() {
+        return rollups.getTotal();
+    }
+
+    public SalesTotals getProduct(UUID productId) {
+        return rollups.getProduct(productId);
+    }
+
+    public SalesTotals getCategory(UUID categoryId) {
+        return rollups.getCategory(categoryId);
+    }
+
+    public SalesTotals getDay(LocalDate date) {
+        return rollups.getDay(date);
+    }
+
+    public SalesTotals getHour(LocalDateTime dateTime) {
+        return rollups.getHour(dateTime);
+    }
+
+    /**
+     * The sales of every day in a range
+     * @param from The first day
+     * @param to The last day, included
+     * @return The sales by day, in order
+     */
+    public Map<LocalDate, SalesTotals> getDays(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("The range ends before it starts");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_DAYS) {
+            throw new IllegalArgumentException("The range can be at most " + MAX_DAYS + " days");
+        }
+        SalesRollups current = rollups;
+        Map<LocalDate, SalesTotals> days = new LinkedHashMap<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            days.put(day, current.getDay(day));
+        }
+        return days;
+    }
+
+    /**
+     * The sales of every hour of a day
+     * @param date The day
+     * @return The sales by hour of the day, 0 to 23
+     */
+    public Map<Integer, SalesTotals> getHours(LocalDate date) {
+        SalesRollups current = rollups;
+        Map<Integer, SalesTotals> hours = new LinkedHashMap<>();
+        for (int hour = 0; hour < 24; hour++) {
+            hours.put(hour, current.getHour(date.atTime(hour, 0)));
+        }
+        return hours;
+    }
+
+    private void read(SalesRollups rebuilt, List<SaleLine> order, Map<UUID, List<UUID>> categoryIds,
+                      LocalDateTime recentSince, Set<UUID> recentlyRead) {
+        SaleLine first = order.get(0);
+        if (first.getOrderDate() == null || !first.getOrderDate().isBefore(recentSince)) {
+            recentlyRead.add(first.getOrderId());
+        }
+        rebuilt.apply(order, productId -> categoryIds.getOrDefault(productId, Collections.emptyList()));
+        order.clear();
+    }
+
+    private List<SaleLine> linesOf(OrderEntity order) {
+        if (order.getItems() == null) return Collections.emptyList();
+        List<SaleLine> lines = new ArrayList<>(order.getItems().size());
+        for (OrderItemEntity item : order.getItems()) {
+            UUID productId = item.getProduct() == null ? null : item.getProduct().getId();
+            lines.add(new SaleLine(order.getId(), order.getOrderDate(), productId, item.getPrice()));
+        }
+        return lines;
+    }
+
+    private void loadCategories(Set<UUID> productIds) {
+        if (productIds.isEmpty()) return;
+        Map<UUID, List<UUID>> loaded = productDao.getCategoryIds(productIds);
+        for (UUID productId : productIds) {
+            productCategories.put(productId, loaded.getOrDefault(productId, Collections.emptyList()));
+        }
+    }
+
+    private List<UUID> categoriesOf(UUID productId) {
+        return productCategories.getOrDefault(productId, Collections.emptyList());
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.demospring.service.sales;
+
+import com.example.demospring.data.projection.SaleLine;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The sales per product, per category, per day and per hour, and in total. Every query is a single map lookup.
+ * Days and hours are those of the order date as stored, without time zone conversion.
+ */
+class SalesRollups {
+    private final Map<UUID, SalesCounter> products = new ConcurrentHashMap<>();
+    private final Map<UUID, SalesCounter> categories = new ConcurrentHashMap<>();
+    private final Map<Long, SalesCounter> days = new ConcurrentHashMap<>();
+    private final Map<Long, SalesCounter> hours = new ConcurrentHashMap<>();
+    private final SalesCounter total = new SalesCounter();
+
+    static long dayKey(LocalDate date) {
+        return date.toEpochDay();
+    }
+
+    static long hourKey(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) / 3600;
+    }
+
+    /**
+     * Add the items of one order
+     * @param lines The items of the order, not empty
+     * @param categoriesOf Returns the category ids of a product, never null
+     */
+    void apply(List<SaleLine> lines, Function<UUID, List<UUID>> categoriesOf) {
+        long orderCents = 0;
+        for (int index = 0; index < lines.size(); index++) {
+            SaleLine line = lines.get(index);
+            long cents = SalesCounter.toCents(line.getPrice());
+            orderCents += cents;
+            UUID productId = line.getProductId();
+            if (productId == null) continue;
+            // An order counts once for a product or category, however many of its items they have
+            boolean firstOfProduct = true;
+            for (int previous = 0; previous < index && firstOfProduct; previous++) {
+                firstOfProduct = !productId.equals(lines.get(previous).getProductId());
+            }
+            counter(products, productId).add(firstOfProduct ? 1 : 0, 1, cents);
+            for (UUID categoryId : categoriesOf.apply(productId)) {
+                boolean firstOfCategory = true;
+                for (int previous = 0; previous < index && firstOfCategory; previous++) {
+                    UUID previousProduct = lines.get(previous).getProductId();
+                    firstOfCategory = previousProduct == null || !categoriesOf.apply(previousProduct).contains(categoryId);
+                }
+                counter(categories, categoryId).add(firstOfCategory ? 1 : 0, 1, cents);
+            }
+        }
+        LocalDateTime orderDate = lines.get(0).getOrderDate();
+        if (orderDate != null) {
+            counter(days, dayKey(orderDate.toLocalDate())).add(1, lines.size(), orderCents);
+            counter(hours, hourKey(orderDate)).add(1, lines.size(), orderCents);
+        }
+        total.add(1, lines.size(), orderCents);
+    }
+
+    SalesTotals getProduct(UUID productId) {
+        return snapshot(products.get(productId));
+    }
+
+    SalesTotals getCategory(UUID categoryId) {
+        return snapshot(categories.get(categoryId));
+    }
+
+    SalesTotals getDay(LocalDate date) {
+        return snapshot(days.get(dayKey(date)));
+    }
+
+    SalesTotals getHour(LocalDateTime dateTime) {
+        return snapshot(hours.get(hourKey(dateTime)));
+    }
+
+    SalesTotals getTotal() {
+        return total.snapshot();
+    }
+
+    private static <K> SalesCounter counter(Map<K, SalesCounter> counters, K key) {
+        SalesCounter counter = counters.get(key);
+        return counter != null ? counter : counters.computeIfAbsent(key, ignored -> new SalesCounter());
+    }
+
+    private static SalesTotals snapshot(SalesCounter counter) {
+        return counter == null ? SalesTotals.EMPTY : counter.snapshot();
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.demospring.service.sales;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * The sales of a product, category or time bucket. The revenue is kept in hundredths as a long; it only becomes a
+ * {@link BigDecimal} when it is read.
+ */
+@Getter
+@AllArgsConstructor
+public class SalesTotals {
+    public static final SalesTotals EMPTY = new SalesTotals(0, 0, 0);
+
+    /**
+     * The number of orders with at least one sold item in the bucket
+     */
+    private final long orders;
+
+    /**
+     * The number of sold items
+     */
+    private final long units;
+
+    private final long revenueCents;
+
+    public BigDecimal getRevenue() {
+        return BigDecimal.valueOf(revenueCents, SalesCounter.MONEY_SCALE);
+    }
+}
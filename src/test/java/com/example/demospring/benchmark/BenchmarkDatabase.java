@@ -0,0 +1,176 @@
+package com.example.demospring.benchmark;
+
+import com.example.demospring.DemoSpringApplication;
+import com.example.demospring.data.OrderStatus;
+import com.example.demospring.data.UserRole;
+import com.example.demospring.data.dao.CategoryDao;
+import com.example.demospring.data.dao.OrderDao;
+import com.example.demospring.data.dao.ProductDao;
+import com.example.demospring.data.dao.UserDao;
+import com.example.demospring.data.entities.CategoryEntity;
+import com.example.demospring.data.entities.OrderEntity;
+import com.example.demospring.data.entities.OrderItemEntity;
+import com.example.demospring.data.entities.ProductEntity;
+import com.example.demospring.data.entities.UserEntity;
+import lombok.Getter;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * The application running on an in-memory H2 database, seeded with a catalog and order history. The volumes can be
+ * changed with the system properties benchmark.users, benchmark.categories, benchmark.products and
+ * benchmark.orders. The data is generated with a fixed seed, so every run measures the same rows. The background
+ * tasks of the application are switched off so they do not run next to the measured calls.
+ */
+@Getter
+public class BenchmarkDatabase implements Closeable {
+    public static final int USERS = Integer.getInteger("benchmark.users", 10_000);
+    public static final int CATEGORIES = Integer.getInteger("benchmark.categories", 200);
+    public static final int PRODUCTS = Integer.getInteger("benchmark.products", 50_000);
+    public static final int ORDERS = Integer.getInteger("benchmark.orders", 20_000);
+
+    private static final int ITEMS_PER_ORDER = 3;
+    private static final int CHUNK_SIZE = 5_000;
+    private static final String[] WORDS = {"red", "blue", "green", "wooden", "steel", "compact", "large", "wireless",
+            "organic", "cotton", "leather", "portable", "classic", "modern", "premium", "lamp", "chair", "table",
+            "speaker", "jacket", "kettle", "backpack", "watch", "bottle", "charger"};
+
+    private final ConfigurableApplicationContext context;
+    private final TransactionTemplate transactionTemplate;
+    private final UserDao userDao;
+    private final CategoryDao categoryDao;
+    private final ProductDao productDao;
+    private final OrderDao orderDao;
+    private final List<UUID> productIds = new ArrayList<>();
+    private final List<UUID> userIds = new ArrayList<>();
+
+    /**
+     * Start the application and seed the database
+     * @param seed False to start with empty tables, for benchmarks that only need the metamodel
+     */
+    public BenchmarkDatabase(boolean seed) throws IOException {
+        this.context = SpringApplication.run(DemoSpringApplication.class,
+                "--spring.profiles.active=test",
+                "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                "--inventory.log.directory=" + Files.createTempDirectory("benchmark-inventory"),
+                // No background work while measuring: the scheduled tasks only run once on startup, and the
+                // in-memory search index and sales rollups are not rebuilt after the bulk writes
+                "--outbox.purge-interval-ms=3600000",
+                "--inventory.flush-interval-ms=3600000",
+                "--inventory.expiry-interval-ms=3600000",
+                "--search.index.enabled=false",
+                "--sales.rollups.enabled=false",
+                "--logging.level.root=WARN");
+        this.transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        this.userDao = context.getBean(UserDao.class);
+        this.categoryDao = context.getBean(CategoryDao.class);
+        this.productDao = context.getBean(ProductDao.class);
+        this.orderDao = context.getBean(OrderDao.class);
+        if (seed) {
+            seed(new Random(42));
+        }
+    }
+
+    private void seed(Random random) {
+        List<UserEntity> users = new ArrayList<>();
+        for (int index = 0; index < USERS; index++) {
+            UserEntity user = new UserEntity();
+            user.setEmail("user" + index + "@example.com");
+            user.setName("User " + index);
+            user.setRole(index % 100 == 0 ? UserRole.ADMINISTRATOR : UserRole.SHOPPER);
+            user.setPasswordHash(UUID.randomUUID().toString());
+            user.setPasswordSalt(UUID.randomUUID().toString());
+            users.add(user);
+        }
+        persistInChunks(users, chunk -> userDao.persistAll(chunk));
+        for (UserEntity user : users) {
+            userIds.add(user.getId());
+        }
+
+        List<CategoryEntity> categories = new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int index = 0; index < CATEGORIES; index++) {
+                CategoryEntity category = new CategoryEntity();
+                category.setName("Category " + index);
+                // A tree of about three levels: the first tenth are roots, the others hang below an earlier one
+                if (index >= CATEGORIES / 10) {
+                    category.setParent(categories.get(random.nextInt(index)));
+                }
+                categoryDao.addCategory(category);
+                categories.add(category);
+            }
+        });
+
+        List<ProductEntity> products = new ArrayList<>();
+        for (int index = 0; index < PRODUCTS; index++) {
+            ProductEntity product = new ProductEntity();
+            product.setName("Product " + index + " " + WORDS[random.nextInt(WORDS.length)]);
+            product.setDescription(description(random));
+            product.setPrice(BigDecimal.valueOf(100 + random.nextInt(100_000), 2));
+            product.setInventory(random.nextInt(1_000));
+            product.setCategories(categories.isEmpty() ? null
+                    : new ArrayList<>(Collections.singletonList(categories.get(random.nextInt(categories.size())))));
+            products.add(product);
+        }
+        persistInChunks(products, chunk -> productDao.persistAll(chunk));
+        for (ProductEntity product : products) {
+            productIds.add(product.getId());
+        }
+
+        List<OrderEntity> orders = new ArrayList<>();
+        for (int index = 0; index < ORDERS; index++) {
+            OrderEntity order = new OrderEntity();
+            order.setUser(users.get(random.nextInt(users.size())));
+            order.setOrderDate(LocalDateTime.now().minusMinutes(random.nextInt(525_600)));
+            order.setStatus(OrderStatus.values()[random.nextInt(OrderStatus.values().length)]);
+            List<OrderItemEntity> items = new ArrayList<>();
+            for (int item = 0; item < ITEMS_PER_ORDER; item++) {
+                OrderItemEntity orderItem = new OrderItemEntity();
+                ProductEntity product = products.get(random.nextInt(products.size()));
+                orderItem.setOrder(order);
+                orderItem.setProduct(product);
+                orderItem.setPrice(product.getPrice());
+                items.add(orderItem);
+            }
+            order.setItems(items);
+            orders.add(order);
+        }
+        persistInChunks(orders, chunk -> orderDao.persistAll(chunk));
+    }
+
+    private <E> void persistInChunks(List<E> entities, Consumer<List<E>> persist) {
+        for (int from = 0; from < entities.size(); from += CHUNK_SIZE) {
+            List<E> chunk = entities.subList(from, Math.min(from + CHUNK_SIZE, entities.size()));
+            transactionTemplate.executeWithoutResult(status -> persist.accept(chunk));
+        }
+    }
+
+    private static String description(Random random) {
+        // The description column holds 255 characters
+        StringBuilder description = new StringBuilder();
+        int length = 100 + random.nextInt(140);
+        while (description.length() < length) {
+            description.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return description.toString().trim();
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.demospring.benchmark;
+
+import com.example.demospring.data.UserRole;
+import com.example.demospring.data.dao.KeysetPage;
+import com.example.demospring.data.entities.ProductEntity;
+import com.example.demospring.data.entities.UserEntity;
+import com.example.demospring.data.filter.ProductFilter;
+import com.example.demospring.data.filter.UserFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The DAO operations against the seeded database, each in its own transaction like a request would run them
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoBenchmark {
+    private static final int PAGE_SIZE = 50;
+    private static final int PERSIST_SIZE = 100;
+
+    private BenchmarkDatabase database;
+    private int deepOffset;
+    private String deepCursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = new BenchmarkDatabase(true);
+        deepOffset = Math.max(BenchmarkDatabase.PRODUCTS - 2 * PAGE_SIZE, 0);
+        // One large page ends at the deep offset, its cursor starts the keyset page at the same depth
+        deepCursor = database.getTransactionTemplate().execute(status -> {
+            ProductFilter filter = new ProductFilter();
+            filter.orderBy("name");
+            filter.setLimit(deepOffset);
+            return database.getProductDao().getPage(filter).getNextCursor();
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<ProductEntity> getAll() {
+        return database.getTransactionTemplate().execute(status -> database.getProductDao().getAll());
+    }
+
+    @Benchmark
+    public List<ProductEntity> getFiltered() {
+        return database.getTransactionTemplate().execute(status -> {
+            ProductFilter filter = new ProductFilter();
+            filter.setName("lamp");
+            filter.setMaxPrice(BigDecimal.valueOf(500));
+            filter.setLimit(PAGE_SIZE);
+            return database.getProductDao().get(filter);
+        });
+    }
+
+    @Benchmark
+    public List<UserEntity> getUsersByRole() {
+        return database.getTransactionTemplate().execute(status -> {
+            UserFilter filter = new UserFilter();
+            filter.setRole(UserRole.ADMINISTRATOR);
+            filter.setLimit(PAGE_SIZE);
+            return database.getUserDao().get(filter);
+        });
+    }
+
+    @Benchmark
+    public long count() {
+        return database.getTransactionTemplate().execute(status -> database.getProductDao().count(null));
+    }
+
+    @Benchmark
+    public long countFiltered() {
+        return database.getTransactionTemplate().execute(status -> {
+            ProductFilter filter = new ProductFilter();
+            filter.setName("chair");
+            return database.getProductDao().count(filter);
+        });
+    }
+
+    @Benchmark
+    public List<ProductEntity> getDeepOffset() {
+        return database.getTransactionTemplate().execute(status -> {
+            ProductFilter filter = new ProductFilter();
+            filter.orderBy("name");
+            filter.setOffset(deepOffset);
+            filter.setLimit(PAGE_SIZE);
+            return database.getProductDao().get(filter);
+        });
+    }
+
+    @Benchmark
+    public KeysetPage<ProductEntity> getDeepKeysetPage() {
+        return database.getTransactionTemplate().execute(status -> {
+            ProductFilter filter = new ProductFilter();
+            filter.orderBy("name");
+            filter.setAfter(deepCursor);
+            filter.setLimit(PAGE_SIZE);
+            return database.getProductDao().getPage(filter);
+        });
+    }
+
+    @Benchmark
+    public ProductEntity find() {
+        int index = ThreadLocalRandom.current().nextInt(database.getProductIds().size());
+        return database.getTransactionTemplate().execute(status -> database.getProductDao().find(database.getProductIds().get(index)));
+    }
+
+    @Benchmark
+    public int persistAll() {
+        return database.getTransactionTemplate().execute(status -> {
+            List<ProductEntity> products = new ArrayList<>();
+            for (int index = 0; index < PERSIST_SIZE; index++) {
+                ProductEntity product = new ProductEntity();
+                product.setName("Benchmark product " + index);
+                product.setPrice(BigDecimal.TEN);
+                products.add(product);
+            }
+            int count = database.getProductDao().persistAll(products).getCount();
+            // Rolled back, so every invocation inserts into a table of the same size
+            status.setRollbackOnly();
+            return count;
+        });
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.demospring.benchmark;
+
+import com.example.demospring.data.UserRole;
+import com.example.demospring.data.entities.ProductEntity;
+import com.example.demospring.data.entities.UserEntity;
+import com.example.demospring.data.filter.FilterBindings;
+import com.example.demospring.data.filter.ProductFilter;
+import com.example.demospring.data.filter.UserFilter;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the criteria of a filter, without running it. Only the metamodel is needed, so the tables stay empty.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+    private BenchmarkDatabase database;
+    private CriteriaBuilder criteriaBuilder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = new BenchmarkDatabase(false);
+        criteriaBuilder = database.getContext().getBean(EntityManagerFactory.class).getCriteriaBuilder();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Predicate userPredicate() {
+        CriteriaQuery<UserEntity> criteriaQuery = criteriaBuilder.createQuery(UserEntity.class);
+        Root<UserEntity> root = criteriaQuery.from(UserEntity.class);
+        return userFilter().getPredicate(criteriaBuilder, root);
+    }
+
+    @Benchmark
+    public Predicate productPredicate() {
+        CriteriaQuery<ProductEntity> criteriaQuery = criteriaBuilder.createQuery(ProductEntity.class);
+        Root<ProductEntity> root = criteriaQuery.from(ProductEntity.class);
+        return productFilter().getPredicate(criteriaBuilder, root);
+    }
+
+    @Benchmark
+    public FilterBindings productBindings() {
+        return productFilter().bind(criteriaBuilder);
+    }
+
+    private UserFilter userFilter() {
+        UserFilter filter = new UserFilter();
+        filter.setEmail("user42@example.com");
+        filter.setRole(UserRole.SHOPPER);
+        return filter;
+    }
+
+    private ProductFilter productFilter() {
+        ProductFilter filter = new ProductFilter();
+        filter.setName("lamp");
+        filter.setMinPrice(BigDecimal.ONE);
+        filter.setMaxPrice(BigDecimal.valueOf(500));
+        filter.orderBy("name");
+        return filter;
+    }
+}
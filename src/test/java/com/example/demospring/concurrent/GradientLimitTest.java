@@ -0,0 +1,75 @@
+package com.example.demospring.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GradientLimitTest {
+    private static final int WINDOW_SAMPLES = 20;
+    private static final long FAST_NANOS = 1_000_000;
+    private static final long SLOW_NANOS = 10_000_000;
+
+    @Test
+    void keepsTheLimitWhileTheLatencyIsSteady() {
+        GradientLimit limit = new GradientLimit(20, 1, 20, 1.5);
+        for (int window = 0; window < 10; window++) {
+            fullWindow(limit, FAST_NANOS);
+        }
+        assertEquals(20, limit.getLimit());
+        assertEquals(FAST_NANOS, limit.getShortRttNanos());
+    }
+
+    @Test
+    void shrinksUnderRisingLatencyAndRecoversAfterwards() {
+        GradientLimit limit = new GradientLimit(20, 1, 20, 1.5);
+        for (int window = 0; window < 10; window++) {
+            fullWindow(limit, FAST_NANOS);
+        }
+
+        int previous = limit.getLimit();
+        for (int window = 0; window < 10; window++) {
+            fullWindow(limit, SLOW_NANOS);
+            assertTrue(limit.getLimit() <= previous);
+            previous = limit.getLimit();
+        }
+        assertTrue(limit.getLimit() <= 12, "The limit is " + limit.getLimit());
+        assertTrue(limit.getLimit() >= 1);
+
+        for (int window = 0; window < 40; window++) {
+            fullWindow(limit, FAST_NANOS);
+        }
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    void neverShrinksBelowTheMinimum() {
+        GradientLimit limit = new GradientLimit(20, 6, 20, 1.0);
+        fullWindow(limit, 1);
+        // The latency doubles every window, so the long average never catches up and every window shrinks the limit
+        for (int window = 1; window <= 55; window++) {
+            fullWindow(limit, 1L << window);
+        }
+        assertEquals(6, limit.getLimit());
+    }
+
+    @Test
+    void doesNotGrowWhileMostOfTheLimitIsUnused() {
+        GradientLimit limit = new GradientLimit(5, 1, 20, 1.5);
+        for (int window = 0; window < 20; window++) {
+            for (int sample = 0; sample < WINDOW_SAMPLES; sample++) {
+                limit.onSample(FAST_NANOS, 1);
+            }
+        }
+        assertEquals(5, limit.getLimit());
+    }
+
+    /**
+     * One window of samples taken with the whole limit in flight
+     */
+    private void fullWindow(GradientLimit limit, long rttNanos) {
+        for (int sample = 0; sample < WINDOW_SAMPLES; sample++) {
+            limit.onSample(rttNanos, limit.getLimit());
+        }
+    }
+}
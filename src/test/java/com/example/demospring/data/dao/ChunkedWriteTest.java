@@ -0,0 +1,145 @@
+package com.example.demospring.data.dao;
+
+import com.example.demospring.data.entities.ProductEntity;
+import com.example.demospring.data.filter.ProductFilter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Updates and deletes tagged products in chunks of three on an embedded database and checks that every matching
+ * product is written exactly once, that the other products are left alone and that every chunk is reported
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:chunked-writes;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+        "inventory.log.directory=${java.io.tmpdir}/chunked-writes-test-inventory"})
+@ActiveProfiles("test")
+class ChunkedWriteTest {
+    private static final int CHUNK_SIZE = 3;
+
+    @Autowired
+    private ProductDao productDao;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void everyMatchingRowIsUpdatedOnce() {
+        String tag = tag();
+        String other = tag();
+        Set<UUID> matching = seed(tag, 7);
+        seed(other, 4);
+        List<BulkProgress> progress = new ArrayList<>();
+
+        // The new name still matches the filter, rows already updated must not be visited again
+        String updatedName = "Updated " + tag;
+        BulkProgress result = productDao.updateInChunks(filter(tag), Map.of("name", updatedName), CHUNK_SIZE, progress::add);
+
+        assertEquals(7, result.getRows());
+        assertReported(progress, result, matching, List.of(3L, 6L, 7L));
+        assertEquals(7, productDao.count(filter(updatedName)));
+        assertEquals(4, productDao.count(filter(other)));
+        for (ProductEntity product : productDao.get(filter(other))) {
+            assertTrue(product.getName().startsWith("Product"));
+        }
+    }
+
+    @Test
+    void everyMatchingRowIsDeletedOnce() {
+        String tag = tag();
+        String other = tag();
+        Set<UUID> matching = seed(tag, 6);
+        seed(other, 2);
+        List<BulkProgress> progress = new ArrayList<>();
+
+        // A multiple of the chunk size: the last, empty chunk is not reported
+        BulkProgress result = productDao.deleteInChunks(filter(tag), CHUNK_SIZE, progress::add);
+
+        assertEquals(6, result.getRows());
+        assertReported(progress, result, matching, List.of(3L, 6L));
+        assertEquals(0, productDao.count(filter(tag)));
+        assertEquals(2, productDao.count(filter(other)));
+    }
+
+    @Test
+    void nothingMatchingReportsNothing() {
+        List<BulkProgress> progress = new ArrayList<>();
+
+        BulkProgress result = productDao.deleteInChunks(filter(tag()), CHUNK_SIZE, progress::add);
+
+        assertEquals(0, result.getChunks());
+        assertEquals(0, result.getRows());
+        assertTrue(progress.isEmpty());
+    }
+
+    @Test
+    void chunkedWritesNeedCriteriaAndAPositiveChunkSize() {
+        assertThrows(IllegalArgumentException.class,
+                () -> productDao.deleteInChunks(new ProductFilter(), CHUNK_SIZE, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> productDao.updateInChunks(filter(tag()), Map.of("inventory", 1), 0, null));
+    }
+
+    /**
+     * The chunks are numbered from one, the rows add up and every chunk ends on a distinct matching id. The final
+     * progress is the last one reported
+     */
+    private static void assertReported(List<BulkProgress> progress, BulkProgress result, Set<UUID> matching, List<Long> rows) {
+        assertEquals(rows.size(), progress.size());
+        Set<Object> lastIds = new HashSet<>();
+        for (int index = 0; index < progress.size(); index++) {
+            BulkProgress chunk = progress.get(index);
+            assertEquals(index + 1, chunk.getChunks());
+            assertEquals(rows.get(index), chunk.getRows());
+            assertTrue(matching.contains(chunk.getLastId()));
+            assertTrue(lastIds.add(chunk.getLastId()));
+        }
+        assertSame(progress.get(progress.size() - 1), result);
+    }
+
+    private Set<UUID> seed(String tag, int count) {
+        List<ProductEntity> products = new ArrayList<>();
+        for (int index = 0; index < count; index++) {
+            ProductEntity product = new ProductEntity();
+            product.setName("Product " + index + " " + tag);
+            product.setPrice(BigDecimal.ONE);
+            product.setInventory(index);
+            products.add(product);
+        }
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> productDao.persistAll(products));
+        Set<UUID> ids = new HashSet<>();
+        for (ProductEntity product : products) {
+            ids.add(product.getId());
+        }
+        return ids;
+    }
+
+    private static ProductFilter filter(String name) {
+        ProductFilter filter = new ProductFilter();
+        filter.setName(name);
+        return filter;
+    }
+
+    /**
+     * The database is shared by the tests, every test writes products of its own
+     */
+    private static String tag() {
+        return UUID.randomUUID().toString().substring(0, 8);
+    }
+}
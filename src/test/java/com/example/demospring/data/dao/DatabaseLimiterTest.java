@@ -0,0 +1,208 @@
+package com.example.demospring.data.dao;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the limiter without a database: the calls block on latches or sleep, and the transactions do nothing
+ */
+class DatabaseLimiterTest {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private final List<CountDownLatch> blockers = new ArrayList<>();
+    private DatabaseLimiter limiter;
+
+    /**
+     * A transaction manager whose transactions do nothing
+     */
+    private static class NoTransactionManager implements PlatformTransactionManager {
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+
+    @AfterEach
+    void shutdown() {
+        blockers.forEach(CountDownLatch::countDown);
+        if (limiter != null) {
+            limiter.shutdown();
+        }
+    }
+
+    @Test
+    void freedSlotGoesToTheHighestClassWaiting() throws Exception {
+        limiter = new DatabaseLimiter(new NoTransactionManager(), 2, 60_000, 1, 1.5);
+        CountDownLatch first = block(DatabasePriority.CRITICAL);
+        CountDownLatch second = block(DatabasePriority.CRITICAL);
+        awaitActive(2);
+
+        List<DatabasePriority> order = new ArrayList<>();
+        CompletableFuture<Void> normal = limiter.submit(DatabasePriority.NORMAL, true, () -> record(order, DatabasePriority.NORMAL));
+        CompletableFuture<Void> critical = limiter.submit(DatabasePriority.CRITICAL, true, () -> record(order, DatabasePriority.CRITICAL));
+        assertEquals(2, limiter.getQueueLength());
+
+        first.countDown();
+        second.countDown();
+        critical.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        normal.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        synchronized (order) {
+            assertEquals(List.of(DatabasePriority.CRITICAL, DatabasePriority.NORMAL), order);
+        }
+    }
+
+    @Test
+    void lowerClassesOnlyFillTheirShareOfTheLimit() throws Exception {
+        limiter = new DatabaseLimiter(new NoTransactionManager(), 4, 60_000, 1, 1.5);
+        // Half of the limit of 4
+        block(DatabasePriority.SHEDDABLE);
+        block(DatabasePriority.SHEDDABLE);
+        awaitActive(2);
+
+        CompletableFuture<String> sheddable = limiter.submit(DatabasePriority.SHEDDABLE, true, () -> "sheddable");
+        assertEquals(1, limiter.getQueueLength());
+        assertEquals("critical", limiter.execute(DatabasePriority.CRITICAL, true, () -> "critical"));
+        assertEquals("normal", limiter.execute(DatabasePriority.NORMAL, true, () -> "normal"));
+        assertFalse(sheddable.isDone());
+
+        blockers.get(0).countDown();
+        assertEquals("sheddable", sheddable.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void rejectsAtOnceWhenTheExpectedWaitIsTooLong() throws Exception {
+        // Sheddable calls may wait 10% of 200 ms
+        limiter = new DatabaseLimiter(new NoTransactionManager(), 2, 200, 1, 1.5);
+        // One window of samples sets the recent latency to about 30 ms
+        for (int sample = 0; sample < 20; sample++) {
+            limiter.execute(DatabasePriority.CRITICAL, true, () -> sleep(30));
+        }
+        assertTrue(limiter.getStats().getRecentRttMillis() >= 30);
+
+        // Takes the only sheddable slot of the limit of 2
+        block(DatabasePriority.SHEDDABLE);
+        awaitActive(1);
+
+        long start = System.nanoTime();
+        CompletableFuture<String> shed = limiter.submit(DatabasePriority.SHEDDABLE, true, () -> "shed");
+        assertTrue(shed.isCompletedExceptionally());
+        ExecutionException failure = assertThrows(ExecutionException.class, shed::get);
+        DatabaseOverloadedException overloaded = assertInstanceOf(DatabaseOverloadedException.class, failure.getCause());
+        assertEquals(DatabasePriority.SHEDDABLE, overloaded.getPriority());
+        assertTrue(overloaded.getRetryAfterMillis() >= 30);
+
+        assertThrows(DatabaseOverloadedException.class, () -> limiter.execute(DatabasePriority.SHEDDABLE, true, () -> "shed"));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 30, "The rejections waited");
+        assertEquals(2L, limiter.getStats().getRejected().get(DatabasePriority.SHEDDABLE));
+
+        // A critical call still finds the free slot
+        assertEquals("critical", limiter.execute(DatabasePriority.CRITICAL, true, () -> "critical"));
+    }
+
+    @Test
+    void rejectsWhenNoSlotFreesUpInTime() {
+        limiter = new DatabaseLimiter(new NoTransactionManager(), 1, 200, 1, 1.5);
+        block(DatabasePriority.CRITICAL);
+        awaitActive(1);
+
+        // Expected wait is 0 before any latency sample, so the call queues and gives up after 20 ms
+        assertThrows(DatabaseOverloadedException.class, () -> limiter.execute(DatabasePriority.SHEDDABLE, true, () -> "late"));
+        assertEquals(0, limiter.getQueueLength());
+        assertEquals(1L, limiter.getStats().getRejected().get(DatabasePriority.SHEDDABLE));
+
+        // A queued asynchronous call gives up the same way
+        CompletableFuture<String> late = limiter.submit(DatabasePriority.SHEDDABLE, true, () -> "late");
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> late.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertInstanceOf(DatabaseOverloadedException.class, failure.getCause());
+        assertEquals(0, limiter.getQueueLength());
+        assertEquals(1, limiter.getActive());
+    }
+
+    @Test
+    void freesTheSlotOfACallTheExecutorRefuses() throws Exception {
+        limiter = new DatabaseLimiter(new NoTransactionManager(), 1, 60_000, 1, 1.5);
+        CountDownLatch running = block(DatabasePriority.CRITICAL);
+        awaitActive(1);
+        CompletableFuture<String> queued = limiter.submit(DatabasePriority.CRITICAL, true, () -> "queued");
+        assertEquals(1, limiter.getQueueLength());
+
+        limiter.shutdown();
+        running.countDown();
+        // Admitted when the running call ends, then refused by the executor
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> queued.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+        awaitActive(0);
+
+        CompletableFuture<String> refused = limiter.submit(DatabasePriority.CRITICAL, true, () -> "refused");
+        assertTrue(refused.isCompletedExceptionally());
+        assertEquals(0, limiter.getActive());
+        assertEquals(0, limiter.getQueueLength());
+    }
+
+    /**
+     * Start a call that holds its slot until the returned latch is counted down
+     */
+    private CountDownLatch block(DatabasePriority priority) {
+        CountDownLatch release = new CountDownLatch(1);
+        blockers.add(release);
+        limiter.submit(priority, true, () -> {
+            try {
+                return release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        });
+        return release;
+    }
+
+    private void awaitActive(int active) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (limiter.getActive() != active) {
+            assertTrue(System.nanoTime() < deadline, "The blocking calls did not start");
+            Thread.onSpinWait();
+        }
+    }
+
+    private static Void record(List<DatabasePriority> order, DatabasePriority priority) {
+        synchronized (order) {
+            order.add(priority);
+        }
+        return null;
+    }
+
+    private static Void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.demospring.data.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Runs the cache with a loader that records the keys it loads, so a hit is a get that loaded nothing
+ */
+class ExpiringLruCacheTest {
+    private static final long LONG_TTL_MILLIS = 60_000;
+    private static final long SHORT_TTL_MILLIS = 50;
+    private static final long NEGATIVE_TTL_MILLIS = 200;
+
+    private final List<String> loads = new ArrayList<>();
+    private final Map<String, String> values = Map.of("a", "A", "b", "B", "c", "C");
+    private final Function<String, String> loader = key -> {
+        loads.add(key);
+        return values.get(key);
+    };
+
+    @Test
+    void entriesExpireAfterTheirOwnTtl() throws InterruptedException {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10);
+        Function<String, Long> ttl = value -> value.equals("A") ? LONG_TTL_MILLIS : SHORT_TTL_MILLIS;
+        cache.get("a", loader, ttl);
+        cache.get("b", loader, ttl);
+
+        Thread.sleep(SHORT_TTL_MILLIS * 2);
+
+        assertEquals("A", cache.get("a", loader, ttl));
+        assertEquals("B", cache.get("b", loader, ttl));
+        assertEquals(List.of("a", "b", "b"), loads);
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    void missingValuesAreCachedForTheNegativeTtl() throws InterruptedException {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10);
+        Function<String, Long> ttl = value -> value == null ? NEGATIVE_TTL_MILLIS : LONG_TTL_MILLIS;
+
+        assertNull(cache.get("missing", loader, ttl));
+        assertNull(cache.get("missing", loader, ttl));
+        assertEquals(List.of("missing"), loads);
+
+        Thread.sleep(NEGATIVE_TTL_MILLIS * 2);
+
+        assertNull(cache.get("missing", loader, ttl));
+        assertEquals(List.of("missing", "missing"), loads);
+    }
+
+    @Test
+    void aNonPositiveTtlIsNotCached() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10);
+        cache.get("a", loader, value -> 0L);
+        cache.get("a", loader, value -> -1L);
+        cache.get("a", loader, value -> -1L);
+
+        assertEquals(List.of("a", "a", "a"), loads);
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    void theLeastRecentlyUsedEntryIsEvicted() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(2);
+        Function<String, Long> ttl = value -> LONG_TTL_MILLIS;
+        cache.get("a", loader, ttl);
+        cache.get("b", loader, ttl);
+        // Using "a" leaves "b" as the least recently used
+        cache.get("a", loader, ttl);
+        cache.get("c", loader, ttl);
+
+        assertEquals(2, cache.size());
+        cache.get("a", loader, ttl);
+        cache.get("c", loader, ttl);
+        cache.get("b", loader, ttl);
+        assertEquals(List.of("a", "b", "c", "b"), loads);
+    }
+
+    @Test
+    void aLoadOverlappingAClearIsNotCached() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10);
+        Function<String, Long> ttl = value -> LONG_TTL_MILLIS;
+        cache.get("b", loader, ttl);
+        // The clear happens while "a" is loaded, so the loaded value may predate the change that caused it
+        String value = cache.get("a", key -> {
+            cache.clear();
+            return loader.apply(key);
+        }, ttl);
+
+        assertEquals("A", value);
+        assertEquals(0, cache.size());
+        cache.get("a", loader, ttl);
+        cache.get("a", loader, ttl);
+        assertEquals(List.of("b", "a", "a"), loads);
+    }
+
+    @Test
+    void aLoadOverlappingARemoveIsNotCached() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10);
+        Function<String, Long> ttl = value -> LONG_TTL_MILLIS;
+        cache.get("a", key -> {
+            cache.remove(key);
+            return loader.apply(key);
+        }, ttl);
+
+        assertEquals(0, cache.size());
+        cache.get("a", loader, ttl);
+        assertEquals(1, cache.size());
+        assertEquals(List.of("a", "a"), loads);
+    }
+}
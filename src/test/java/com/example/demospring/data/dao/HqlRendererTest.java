@@ -0,0 +1,75 @@
+package com.example.demospring.data.dao;
+
+import com.example.demospring.data.filter.FilterBindings;
+import com.example.demospring.data.filter.JPAFilter;
+import com.example.demospring.data.filter.ProductFilter;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+class HqlRendererTest {
+    private CriteriaBuilder criteriaBuilder;
+
+    @BeforeEach
+    void setUp() {
+        // Every predicate the builder returns is a new object, like the real placeholders
+        criteriaBuilder = mock(CriteriaBuilder.class, invocation -> mock(Predicate.class));
+    }
+
+    @Test
+    void rendersTheRecordedCriteriaWithParameters() {
+        ProductFilter filter = new ProductFilter();
+        filter.setName("lamp");
+        filter.setMaxPrice(BigDecimal.TEN);
+        filter.orderByDesc("price");
+        FilterBindings bindings = filter.bind(criteriaBuilder);
+
+        assertEquals("select e from Product e where (upper(e.name) like :p0) and (e.price < :p1) order by e.price desc",
+                HqlRenderer.select("Product", "e", bindings));
+        assertEquals("select count(e) from Product e where (upper(e.name) like :p0) and (e.price < :p1)",
+                HqlRenderer.count("Product", "e", bindings));
+    }
+
+    @Test
+    void parametersKeepTheOrderTheValuesWereRecordedIn() {
+        FilterBindings bindings = new TestFilter("category.name", "id").bind(criteriaBuilder);
+
+        assertEquals("select count(e) from Product e where not ((e.id in (:p1, :p2)) or (e.category.name = :p0))",
+                HqlRenderer.count("Product", "e", bindings));
+    }
+
+    @Test
+    void rejectsFieldsThatAreNotNames() {
+        FilterBindings bindings = new TestFilter("name", "id = id or 1").bind(criteriaBuilder);
+
+        assertThrows(IllegalStateException.class, () -> HqlRenderer.count("Product", "e", bindings));
+    }
+
+    /**
+     * Filters not (in [second] or [first] = value), recording the values of [first] before those of [second]
+     */
+    private static class TestFilter extends JPAFilter<Object> {
+        private final String first;
+        private final String second;
+
+        private TestFilter(String first, String second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public Predicate getPredicate(CriteriaBuilder criteriaBuilder, Root root) {
+            Predicate equal = equals(criteriaBuilder, root, first, "value");
+            Predicate in = in(criteriaBuilder, root, second, 1, 2);
+            return not(criteriaBuilder, orPredicateBuilder(criteriaBuilder, in, equal));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.demospring.data.dao;
+
+import com.example.demospring.data.entities.ProductEntity;
+import com.example.demospring.data.filter.JPAFilter;
+import com.example.demospring.data.filter.ProductFilter;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Walks the products page by page over nullable, repeated order by values and checks that every product is returned
+ * exactly once and in order
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:keyset;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+        "inventory.log.directory=${java.io.tmpdir}/keyset-test-inventory"})
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class KeysetPaginationTest {
+    private static final String[] NAMES = {null, "lamp", "chair", null, "table", "lamp"};
+    private static final int PRODUCTS = 40;
+    private static final int PAGE_SIZE = 3;
+
+    @Autowired
+    private ProductDao productDao;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final Set<UUID> productIds = new HashSet<>();
+
+    @BeforeAll
+    void seed() {
+        List<ProductEntity> products = new ArrayList<>();
+        for (int index = 0; index < PRODUCTS; index++) {
+            ProductEntity product = new ProductEntity();
+            product.setName(NAMES[index % NAMES.length]);
+            product.setPrice(BigDecimal.valueOf(100 + index % 4, 2));
+            product.setInventory(index);
+            products.add(product);
+        }
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> productDao.persistAll(products));
+        for (ProductEntity product : products) {
+            productIds.add(product.getId());
+        }
+    }
+
+    @Test
+    void walksAscendingNullableField() {
+        List<ProductEntity> products = walk(() -> new ProductFilter().orderBy("name").orderByDesc("price"));
+
+        assertAllOnce(products);
+        assertOrdered(products, Comparator.comparing(ProductEntity::getName, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(ProductEntity::getPrice, Comparator.reverseOrder()));
+    }
+
+    @Test
+    void walksDescendingNullableField() {
+        List<ProductEntity> products = walk(() -> new ProductFilter().orderByDesc("name").orderBy("price"));
+
+        assertAllOnce(products);
+        assertOrdered(products, Comparator.comparing(ProductEntity::getName, Comparator.nullsFirst(Comparator.<String>reverseOrder()))
+                .thenComparing(ProductEntity::getPrice));
+    }
+
+    private List<ProductEntity> walk(FilterFactory filters) {
+        List<ProductEntity> products = new ArrayList<>();
+        String cursor = null;
+        do {
+            JPAFilter<ProductEntity> filter = filters.create();
+            filter.setLimit(PAGE_SIZE);
+            filter.setAfter(cursor);
+            KeysetPage<ProductEntity> page = productDao.getPage(filter);
+            assertTrue(page.getItems().size() <= PAGE_SIZE);
+            products.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (cursor != null && products.size() <= PRODUCTS);
+        return products;
+    }
+
+    private void assertAllOnce(List<ProductEntity> products) {
+        Set<UUID> seen = new HashSet<>();
+        for (ProductEntity product : products) {
+            assertTrue(seen.add(product.getId()), "Product " + product.getId() + " was returned twice");
+        }
+        assertEquals(productIds, seen);
+    }
+
+    private static void assertOrdered(List<ProductEntity> products, Comparator<ProductEntity> order) {
+        for (int index = 1; index < products.size(); index++) {
+            assertTrue(order.compare(products.get(index - 1), products.get(index)) <= 0,
+                    "Product " + index + " is out of order");
+        }
+    }
+
+    private interface FilterFactory {
+        JPAFilter<ProductEntity> create();
+    }
+}
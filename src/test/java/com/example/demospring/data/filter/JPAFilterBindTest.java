@@ -0,0 +1,102 @@
+package com.example.demospring.data.filter;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class JPAFilterBindTest {
+    private CriteriaBuilder criteriaBuilder;
+
+    @BeforeEach
+    void setUp() {
+        // Every predicate the builder returns is a new object, like the real placeholders
+        criteriaBuilder = mock(CriteriaBuilder.class, invocation -> mock(Predicate.class));
+    }
+
+    @Test
+    void shapeRecordsHowPredicatesAreCombined() {
+        FilterBindings and = new CombiningFilter("and", "a", "b").bind(criteriaBuilder);
+        FilterBindings or = new CombiningFilter("or", "a", "b").bind(criteriaBuilder);
+        FilterBindings not = new CombiningFilter("not", "a", "b").bind(criteriaBuilder);
+
+        assertNotEquals(and.getShape(), or.getShape());
+        assertNotEquals(and.getShape(), not.getShape());
+        assertNotEquals(or.getShape(), not.getShape());
+        assertEquals(Arrays.asList("a", "b"), and.getValues());
+        assertEquals(Arrays.asList("a", "b"), not.getValues());
+    }
+
+    @Test
+    void sameStructureSharesShape() {
+        FilterBindings first = new CombiningFilter("or", "a", "b").bind(criteriaBuilder);
+        FilterBindings second = new CombiningFilter("or", "c", "d").bind(criteriaBuilder);
+
+        assertEquals(first.getShape(), second.getShape());
+        assertEquals(Arrays.asList("c", "d"), second.getValues());
+    }
+
+    @Test
+    void predicatesCombinedWithoutHelpersAreNotBound() {
+        assertNull(new CombiningFilter("builder", "a", "b").bind(criteriaBuilder));
+    }
+
+    @Test
+    void nullValuesOfAnOrListAreCompared() {
+        JPAFilter<Object> filter = new JPAFilter<Object>() {
+            @Override
+            public Predicate getPredicate(CriteriaBuilder criteriaBuilder, Root root) {
+                return orPredicateBuilder(criteriaBuilder, root, "name", Arrays.asList("a", null));
+            }
+        };
+        FilterBindings bindings = filter.bind(criteriaBuilder);
+
+        assertEquals(Arrays.asList("a", null), bindings.getValues());
+        assertEquals(2, bindings.getCriterion().getCriteria().size());
+        assertEquals(1, bindings.getCriterion().getCriteria().get(1).getFirstParameter());
+    }
+
+    @Test
+    void planCacheIsOptIn() {
+        assertFalse(new CombiningFilter("and", "a", "b").isPlanCacheable());
+        assertTrue(new ProductFilter().isPlanCacheable());
+        assertTrue(new UserFilter().isPlanCacheable());
+    }
+
+    /**
+     * Filters name = first and email = second, combined with the given operator
+     */
+    private static class CombiningFilter extends JPAFilter<Object> {
+        private final String operator;
+        private final String first;
+        private final String second;
+
+        private CombiningFilter(String operator, String first, String second) {
+            this.operator = operator;
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public Predicate getPredicate(CriteriaBuilder criteriaBuilder, Root root) {
+            Predicate name = equals(criteriaBuilder, root, "name", first);
+            Predicate email = equals(criteriaBuilder, root, "email", second);
+            switch (operator) {
+                case "and": return andPredicateBuilder(criteriaBuilder, name, email);
+                case "or": return orPredicateBuilder(criteriaBuilder, name, email);
+                case "not": return andPredicateBuilder(criteriaBuilder, name, not(criteriaBuilder, email));
+                default: return criteriaBuilder.and(name, email);
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.demospring.data.filter;
+
+import jakarta.persistence.criteria.Path;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+class KeysetCursorTest {
+
+    @Test
+    void roundTripsTypedValues() {
+        Object[] values = {"a.b~c", new BigDecimal("12.50"), 42L, 7, LocalDateTime.of(2023, 6, 1, 12, 30), UUID.randomUUID()};
+        List<Path> paths = paths(String.class, BigDecimal.class, Long.class, Integer.class, LocalDateTime.class, UUID.class);
+
+        assertArrayEquals(values, KeysetCursor.decode(KeysetCursor.encode(values), paths));
+    }
+
+    @Test
+    void roundTripsNullValues() {
+        Object[] values = {null, new BigDecimal("3.00"), null, UUID.randomUUID()};
+        List<Path> paths = paths(String.class, BigDecimal.class, LocalDateTime.class, UUID.class);
+
+        assertArrayEquals(values, KeysetCursor.decode(KeysetCursor.encode(values), paths));
+    }
+
+    @Test
+    void rejectsCursorOfOtherFields() {
+        String cursor = KeysetCursor.encode("name", UUID.randomUUID());
+
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode(cursor, paths(UUID.class)));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode("not a cursor", paths(String.class)));
+    }
+
+    private static List<Path> paths(Class<?>... types) {
+        List<Path> paths = new ArrayList<>();
+        for (Class<?> type : types) {
+            Path path = mock(Path.class);
+            doReturn(type).when(path).getJavaType();
+            paths.add(path);
+        }
+        return paths;
+    }
+}
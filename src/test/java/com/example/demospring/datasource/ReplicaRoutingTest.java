@@ -0,0 +1,121 @@
+package com.example.demospring.datasource;
+
+import com.example.demospring.data.dao.DatabaseLimiter;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Routes between two independent embedded databases, each holding a probe row with its own name, and checks which
+ * one answered
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+        "datasource.replicas.urls=jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+        "datasource.replicas.replicated=false",
+        "datasource.replicas.max-lag-ms=5000",
+        "datasource.replicas.check-interval-ms=3600000",
+        "inventory.log.directory=${java.io.tmpdir}/routing-test-inventory"})
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ReplicaRoutingTest {
+    private static final String PROBE = "SELECT name FROM routing_probe";
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ReplicaLagMonitor lagMonitor;
+
+    @Autowired
+    private DatabaseLimiter databaseLimiter;
+
+    private JdbcTemplate replica;
+
+    @BeforeAll
+    void createProbes() {
+        DataSource replicaDataSource = lagMonitor.getReplicas().values().iterator().next();
+        replica = new JdbcTemplate(replicaDataSource);
+        replica.execute("CREATE TABLE routing_probe (name VARCHAR(20))");
+        replica.update("INSERT INTO routing_probe VALUES ('replica')");
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            entityManager.createNativeQuery("CREATE TABLE routing_probe (name VARCHAR(20))").executeUpdate();
+            entityManager.createNativeQuery("INSERT INTO routing_probe VALUES ('primary')").executeUpdate();
+        });
+    }
+
+    @BeforeEach
+    @AfterEach
+    void reset() {
+        RoutingContext.clear();
+        replica.update("DELETE FROM replication_heartbeat");
+        lagMonitor.check();
+    }
+
+    @Test
+    void readOnlyReadGoesToReplica() {
+        assertEquals("replica", probe(true));
+    }
+
+    @Test
+    void writeGoesToPrimary() {
+        assertEquals("primary", probe(false));
+    }
+
+    @Test
+    void readsStickToPrimaryAfterWrite() {
+        probe(false);
+
+        assertEquals("primary", probe(true));
+        RoutingContext.clear();
+        assertEquals("replica", probe(true));
+    }
+
+    @Test
+    void asyncReadsStickToPrimaryAfterWrite() {
+        probe(false);
+
+        assertEquals("primary", databaseLimiter.submit(true, () -> (String) entityManager.createNativeQuery(PROBE).getSingleResult()).join());
+    }
+
+    @Test
+    void asyncWriteMakesReadsOfTheCallerStick() {
+        databaseLimiter.submit(false, () -> entityManager.createNativeQuery(PROBE).getSingleResult()).join();
+
+        assertEquals("primary", probe(true));
+    }
+
+    @Test
+    void readsFallBackToPrimaryWhenReplicaLags() {
+        replica.update("INSERT INTO replication_heartbeat (id, beat_at) VALUES (1, ?)", System.currentTimeMillis() - 60_000);
+        lagMonitor.check();
+
+        assertEquals("primary", probe(true));
+
+        replica.update("UPDATE replication_heartbeat SET beat_at = ?", System.currentTimeMillis());
+        lagMonitor.check();
+        assertEquals("replica", probe(true));
+    }
+
+    private String probe(boolean readOnly) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(readOnly);
+        return transaction.execute(status -> (String) entityManager.createNativeQuery(PROBE).getSingleResult());
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.demospring.service.catalog;
+
+import com.example.demospring.data.dao.CatalogImportCheckpointDao;
+import com.example.demospring.data.dao.CategoryDao;
+import com.example.demospring.data.dao.ProductDao;
+import com.example.demospring.data.entities.CatalogImportCheckpointEntity;
+import com.example.demospring.data.entities.ProductEntity;
+import com.example.demospring.data.filter.ProductFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Imports small catalog files from a temporary directory into an embedded database, in chunks of two records, with
+ * a product DAO that can fail a chunk
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:catalog-import;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+        "inventory.log.directory=${java.io.tmpdir}/catalog-import-test-inventory"})
+@ActiveProfiles("test")
+class CatalogImportServiceTest {
+    private static final int CHUNK_SIZE = 2;
+
+    @Autowired
+    private ProductDao productDao;
+
+    @Autowired
+    private CategoryDao categoryDao;
+
+    @Autowired
+    private CatalogImportCheckpointDao checkpointDao;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path directory;
+
+    private FailingProductDao failingDao;
+    private CatalogImportService service;
+
+    /**
+     * The names of the products of a test contain this tag, the database is shared by the tests
+     */
+    private String tag;
+
+    /**
+     * Fails the given write of products, counting from one
+     */
+    static class FailingProductDao extends ProductDao {
+        private int writes;
+        private int failingWrite;
+
+        FailingProductDao(EntityManager entityManager) {
+            super(entityManager);
+        }
+
+        @Override
+        public BatchReport persistAll(Collection<ProductEntity> products, int batchSize) {
+            if (++writes == failingWrite) {
+                throw new IllegalStateException("Write " + writes + " fails");
+            }
+            return super.persistAll(products, batchSize);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        failingDao = new FailingProductDao(entityManager);
+        service = new CatalogImportService(failingDao, categoryDao, checkpointDao, transactionManager,
+                new ObjectMapper(), directory.toString(), CHUNK_SIZE, 1);
+        tag = UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @Test
+    void invalidCsvRecordsAreReportedAndSkipped() throws IOException {
+        write("catalog.csv",
+                "name,price,inventory,categories",
+                "Lamp " + tag + ",12.50,3,Lights|Home",
+                ",5.00,,",
+                "Chair " + tag + ",abc,,",
+                "Table " + tag + ",10,-1,",
+                "\"Desk " + tag + ", oak\",20.00,,Office",
+                "\"Shelf " + tag + ",7.00,,");
+
+        CatalogImportReport report = service.importFile("catalog.csv", false, false);
+
+        assertEquals(6, report.getRecords());
+        assertEquals(2, report.getProducts());
+        assertEquals(4, report.getInvalidRecords());
+        assertEquals(List.of(3L, 4L, 5L, 7L), lineNumbers(report));
+        assertEquals(2, storedProducts());
+    }
+
+    @Test
+    void invalidNdjsonRecordsAreReportedAndSkipped() throws IOException {
+        write("catalog.ndjson",
+                "{\"name\": \"Kettle " + tag + "\", \"price\": \"30\", \"categories\": [\"Kitchen\"]}",
+                "not json",
+                "[1]",
+                "{\"name\": \"Mug " + tag + "\"}",
+                "",
+                "{\"name\": \"Cup " + tag + "\", \"price\": 2.5, \"categories\": \"Kitchen|Home\"}");
+
+        CatalogImportReport report = service.importFile("catalog.ndjson", false, false);
+
+        assertEquals(5, report.getRecords());
+        assertEquals(2, report.getProducts());
+        assertEquals(List.of(2L, 3L, 4L), lineNumbers(report));
+        assertEquals(2, storedProducts());
+    }
+
+    @Test
+    void aDryRunWritesNothing() throws IOException {
+        String category = "Dry run " + tag;
+        write("dry-run.csv",
+                "name,price,categories",
+                "Lamp " + tag + ",12.50," + category,
+                "Chair " + tag + ",40," + category,
+                "Table " + tag + ",-1,");
+
+        CatalogImportReport report = service.importFile("dry-run.csv", true, false);
+
+        assertTrue(report.isDryRun());
+        assertEquals(2, report.getProducts());
+        assertEquals(1, report.getInvalidRecords());
+        assertEquals(List.of(category), report.getCreatedCategories());
+        assertEquals(0, storedProducts());
+        assertNull(checkpoint("dry-run.csv"));
+    }
+
+    @Test
+    void aFailedImportResumesAfterTheLastCommittedChunk() throws IOException {
+        write("resume.csv", records(7));
+        failingDao.failingWrite = 2;
+
+        assertThrows(IllegalStateException.class, () -> service.importFile("resume.csv", false, false));
+        assertEquals(2, checkpoint("resume.csv").getRecords());
+        assertEquals(2, storedProducts());
+
+        failingDao.failingWrite = 0;
+        CatalogImportReport report = service.importFile("resume.csv", false, true);
+
+        assertEquals(2, report.getResumedRecords());
+        assertEquals(5, report.getRecords());
+        assertEquals(5, report.getProducts());
+        // Every record stored once
+        assertEquals(7, storedProducts());
+        assertTrue(checkpoint("resume.csv").getCompleted());
+    }
+
+    @Test
+    void aFileThatChangedSinceTheFailedImportIsNotResumed() throws IOException {
+        write("changed.csv", records(4));
+        failingDao.failingWrite = 2;
+        assertThrows(IllegalStateException.class, () -> service.importFile("changed.csv", false, false));
+
+        Files.writeString(directory.resolve("changed.csv"), "Extra " + tag + ",1.00\n", StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+        failingDao.failingWrite = 0;
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> service.importFile("changed.csv", false, true));
+        assertTrue(exception.getMessage().contains("changed since"));
+        assertEquals(2, storedProducts());
+    }
+
+    private String[] records(int count) {
+        String[] lines = new String[count + 1];
+        lines[0] = "name,price";
+        for (int index = 1; index <= count; index++) {
+            lines[index] = "Product " + index + " " + tag + "," + index + ".00";
+        }
+        return lines;
+    }
+
+    private void write(String fileName, String... lines) throws IOException {
+        Files.writeString(directory.resolve(fileName), String.join("\n", lines) + "\n", StandardCharsets.UTF_8);
+    }
+
+    private static List<Long> lineNumbers(CatalogImportReport report) {
+        List<Long> lineNumbers = new ArrayList<>();
+        for (ImportError error : report.getErrors()) {
+            lineNumbers.add(error.getLineNumber());
+        }
+        return lineNumbers;
+    }
+
+    private long storedProducts() {
+        ProductFilter filter = new ProductFilter();
+        filter.setName(tag);
+        return productDao.count(filter);
+    }
+
+    private CatalogImportCheckpointEntity checkpoint(String importId) {
+        return new TransactionTemplate(transactionManager).execute(status -> checkpointDao.find(importId));
+    }
+}
@@ -0,0 +1,311 @@
+package com.example.demospring.service.changefeed;
+
+import com.example.demospring.DemoSpringApplication;
+import com.example.demospring.data.dao.ChangeOutbox;
+import com.example.demospring.data.dao.EntityVersions;
+import com.example.demospring.data.dao.ProductDao;
+import com.example.demospring.data.entities.ProductEntity;
+import com.example.demospring.data.event.ChangeRecord;
+import com.example.demospring.data.event.ChangeType;
+import com.example.demospring.data.event.EntityChangedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Appends product changes to the outbox of an embedded database and polls the feed by hand: the scheduled poll only
+ * runs on startup. A second pair of contexts on another database checks that the offset survives a restart.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:changefeed;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+        "outbox.node-id=changefeed-test",
+        "outbox.batch-size=2",
+        "outbox.gap-timeout-ms=" + ChangeFeedTest.GAP_TIMEOUT_MS,
+        "inventory.log.directory=${java.io.tmpdir}/changefeed-test-inventory"})
+@ActiveProfiles("test")
+@RecordApplicationEvents
+class ChangeFeedTest {
+    static final long GAP_TIMEOUT_MS = 300;
+
+    private static final String RESTART_URL = "jdbc:h2:mem:changefeed-restart;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+
+    @Autowired
+    private ChangeFeed changeFeed;
+
+    @Autowired
+    private ChangeOutbox changeOutbox;
+
+    @Autowired
+    private ChangeEventBridge changeEventBridge;
+
+    @Autowired
+    private EntityVersions entityVersions;
+
+    @Autowired
+    private ProductDao productDao;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ApplicationEvents events;
+
+    private final Recorder recorder = new Recorder();
+
+    /**
+     * Collects the ids of the delivered product changes
+     */
+    private static class Recorder implements ChangeSubscriber {
+        private final List<Object> ids = new ArrayList<>();
+        private final List<ChangeRecord> records = new ArrayList<>();
+
+        @Override
+        public synchronized void onChanges(List<ChangeRecord> changes) {
+            for (ChangeRecord change : changes) {
+                if (ProductEntity.class.equals(change.getEntityType())) {
+                    ids.add(change.getEntityId());
+                    records.add(change);
+                }
+            }
+        }
+
+        synchronized List<Object> ids() {
+            return new ArrayList<>(ids);
+        }
+
+        synchronized List<ChangeRecord> records() {
+            return new ArrayList<>(records);
+        }
+    }
+
+    @BeforeEach
+    void subscribe() {
+        changeFeed.poll();
+        changeFeed.subscribe(recorder);
+    }
+
+    @AfterEach
+    void unsubscribe() {
+        changeFeed.unsubscribe(recorder);
+    }
+
+    @Test
+    void deliversRecordsInOrder() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+        UUID fourth = UUID.randomUUID();
+        UUID fifth = UUID.randomUUID();
+        append(first);
+        append(second);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                changeOutbox.appendAll(ProductEntity.class, Arrays.asList(third, fourth), ChangeType.UPDATE));
+        append(fifth);
+
+        assertEquals(5, changeFeed.poll());
+        assertEquals(List.of(first, second, third, fourth, fifth), recorder.ids());
+        List<ChangeRecord> records = recorder.records();
+        for (int index = 1; index < records.size(); index++) {
+            assertTrue(records.get(index - 1).getId() < records.get(index).getId());
+        }
+        assertTrue(records.stream().allMatch(ChangeRecord::isLocal));
+        assertEquals(records.get(records.size() - 1).getId(), changeFeed.getOffset());
+
+        assertEquals(0, changeFeed.poll());
+        assertEquals(5, recorder.ids().size());
+    }
+
+    @Test
+    void deliversRecordsCommittedAfterTheGapTimeoutLate() throws Exception {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        UUID late = UUID.randomUUID();
+        UUID onTime = UUID.randomUUID();
+        CountDownLatch appended = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // Takes the lower id, but commits after the record appended next
+            Future<?> slowWrite = executor.submit(() -> transactionTemplate.executeWithoutResult(status -> {
+                changeOutbox.append(ProductEntity.class, late, ChangeType.INSERT);
+                appended.countDown();
+                try {
+                    commit.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            assertTrue(appended.await(10, TimeUnit.SECONDS));
+            append(onTime);
+
+            // Waits at the gap
+            assertEquals(0, changeFeed.poll());
+            assertEquals(List.of(), recorder.ids());
+
+            Thread.sleep(GAP_TIMEOUT_MS + 100);
+            changeFeed.poll();
+            assertEquals(List.of(onTime), recorder.ids());
+            assertEquals(1, changeFeed.getSkippedCount());
+
+            commit.countDown();
+            slowWrite.get(10, TimeUnit.SECONDS);
+            changeFeed.poll();
+            assertEquals(List.of(onTime, late), recorder.ids());
+            assertEquals(0, changeFeed.getSkippedCount());
+        } finally {
+            commit.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void bridgeRepublishesOnlyRemoteChanges() {
+        UUID local = UUID.randomUUID();
+        UUID remote = UUID.randomUUID();
+        UUID inventory = UUID.randomUUID();
+
+        long version = entityVersions.getVersion(ProductEntity.class);
+        changeEventBridge.onChanges(List.of(
+                record(1, local, ChangeType.UPDATE, true),
+                record(2, inventory, ChangeType.INVENTORY, false)));
+        assertEquals(version, entityVersions.getVersion(ProductEntity.class));
+        assertEquals(List.of(), changedIds());
+
+        changeEventBridge.onChanges(List.of(
+                record(3, remote, ChangeType.INSERT, false),
+                record(4, local, ChangeType.UPDATE, true),
+                record(5, remote, ChangeType.UPDATE, false)));
+        assertTrue(entityVersions.getVersion(ProductEntity.class) > version);
+        List<EntityChangedEvent> changed = events.stream(EntityChangedEvent.class).collect(Collectors.toList());
+        assertEquals(1, changed.size());
+        assertEquals(remote, changed.get(0).getId());
+        assertEquals(ChangeType.UPDATE, changed.get(0).getChangeType());
+    }
+
+    @Test
+    void daoWritesPublishTheChangesOfThisNode() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        ProductEntity product = product("single");
+        transactionTemplate.executeWithoutResult(status -> productDao.persist(product));
+        assertEquals(List.of(product.getId()), changedIds());
+
+        product.setName("renamed");
+        transactionTemplate.executeWithoutResult(status -> productDao.merge(product));
+        transactionTemplate.executeWithoutResult(status ->
+                productDao.persistAll(List.of(product("first"), product("second"))));
+        List<EntityChangedEvent> changed = events.stream(EntityChangedEvent.class).collect(Collectors.toList());
+        assertEquals(3, changed.size());
+        assertEquals(product.getId(), changed.get(1).getId());
+        assertEquals(ChangeType.UPDATE, changed.get(1).getChangeType());
+        // A batch is published as one bulk change
+        assertNull(changed.get(2).getId());
+        assertEquals(ChangeType.INSERT, changed.get(2).getChangeType());
+    }
+
+    @Test
+    void offsetIsKeptAcrossRestart() {
+        UUID beforeStop = UUID.randomUUID();
+        UUID whileStopped = UUID.randomUUID();
+        UUID afterRestart = UUID.randomUUID();
+
+        Recorder firstRun = new Recorder();
+        long offset;
+        try (ConfigurableApplicationContext context = startNode(firstRun)) {
+            append(context, beforeStop);
+            ChangeFeed feed = context.getBean(ChangeFeed.class);
+            feed.poll();
+            offset = feed.getOffset();
+        }
+        assertTrue(firstRun.ids().contains(beforeStop));
+
+        // Written by another node while this one is down
+        new JdbcTemplate(new DriverManagerDataSource(RESTART_URL, "sa", "")).update(
+                "INSERT INTO change_outbox (entity_type, entity_id, change_type, entity_version, node_id, created_at)"
+                        + " VALUES (?, ?, ?, ?, ?, ?)",
+                "ProductEntity", whileStopped.toString(), ChangeType.UPDATE.name(), 1L, "other-node",
+                Timestamp.valueOf(LocalDateTime.now()));
+
+        Recorder secondRun = new Recorder();
+        try (ConfigurableApplicationContext context = startNode(secondRun)) {
+            ChangeFeed feed = context.getBean(ChangeFeed.class);
+            assertTrue(feed.getOffset() >= offset);
+            append(context, afterRestart);
+            feed.poll();
+        }
+        assertEquals(List.of(whileStopped, afterRestart), secondRun.ids());
+        assertFalse(secondRun.records().get(0).isLocal());
+    }
+
+    /**
+     * Start a node on the restart database with the subscriber registered before the feed starts. The overrides of
+     * the test profile are passed as arguments, default properties would not take precedence over it
+     */
+    private ConfigurableApplicationContext startNode(Recorder subscriber) {
+        return new SpringApplicationBuilder(DemoSpringApplication.class)
+                .initializers(context -> context.getBeanFactory().registerSingleton("recorder", subscriber))
+                .profiles("test")
+                .run("--spring.datasource.url=" + RESTART_URL,
+                        "--spring.jpa.hibernate.ddl-auto=update",
+                        "--outbox.node-id=restart-node",
+                        "--inventory.log.directory=${java.io.tmpdir}/changefeed-restart-test-inventory");
+    }
+
+    private void append(UUID id) {
+        append(changeOutbox, transactionManager, id);
+    }
+
+    private void append(ConfigurableApplicationContext context, UUID id) {
+        append(context.getBean(ChangeOutbox.class), context.getBean(PlatformTransactionManager.class), id);
+    }
+
+    private void append(ChangeOutbox outbox, PlatformTransactionManager transactionManager, UUID id) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                outbox.append(ProductEntity.class, id, ChangeType.UPDATE));
+    }
+
+    private ChangeRecord record(long id, UUID entityId, ChangeType changeType, boolean local) {
+        return new ChangeRecord(id, ProductEntity.class, entityId, changeType, 1, local ? "changefeed-test" : "other-node",
+                local, LocalDateTime.now());
+    }
+
+    private static ProductEntity product(String name) {
+        ProductEntity product = new ProductEntity();
+        product.setName(name);
+        product.setPrice(BigDecimal.ONE);
+        product.setInventory(1);
+        return product;
+    }
+
+    private List<Object> changedIds() {
+        return events.stream(EntityChangedEvent.class).map(EntityChangedEvent::getId).collect(Collectors.toList());
+    }
+}
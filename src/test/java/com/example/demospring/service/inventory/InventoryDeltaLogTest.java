@@ -0,0 +1,91 @@
+package com.example.demospring.service.inventory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InventoryDeltaLogTest {
+    private static final UUID PRODUCT = UUID.randomUUID();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysDeltasAfterCheckpointAcrossSegments() throws IOException {
+        try (InventoryDeltaLog deltaLog = new InventoryDeltaLog(directory)) {
+            assertTrue(deltaLog.open(0).isEmpty());
+            deltaLog.append(PRODUCT, -1);
+            deltaLog.append(PRODUCT, -2);
+            deltaLog.sync(deltaLog.append(PRODUCT, 10));
+            Path first = deltaLog.roll();
+            assertNotNull(first);
+            deltaLog.append(PRODUCT, -3);
+            deltaLog.sync(deltaLog.append(PRODUCT, -4));
+            assertEquals(5, deltaLog.getLastSequence());
+        }
+
+        try (InventoryDeltaLog deltaLog = new InventoryDeltaLog(directory)) {
+            List<InventoryDeltaLog.Delta> pending = deltaLog.open(3);
+            assertEquals(2, pending.size());
+            assertEquals(4, pending.get(0).getSequence());
+            assertEquals(-3, pending.get(0).getDelta());
+            assertEquals(5, pending.get(1).getSequence());
+            assertEquals(PRODUCT, pending.get(1).getProductId());
+            // New records continue the sequence of the replayed ones
+            assertEquals(6, deltaLog.append(PRODUCT, 1));
+            assertEquals(2, deltaLog.closedSegments().size());
+        }
+    }
+
+    @Test
+    void rollsOnlyAfterAppendsAndDeletesClosedSegments() throws IOException {
+        try (InventoryDeltaLog deltaLog = new InventoryDeltaLog(directory)) {
+            deltaLog.open(0);
+            assertNull(deltaLog.roll());
+            deltaLog.sync(deltaLog.append(PRODUCT, 5));
+            Path closed = deltaLog.roll();
+            assertNotNull(closed);
+            assertNull(deltaLog.roll());
+
+            deltaLog.delete(List.of(closed));
+            assertFalse(Files.exists(closed));
+            assertTrue(deltaLog.closedSegments().isEmpty());
+        }
+        try (InventoryDeltaLog deltaLog = new InventoryDeltaLog(directory)) {
+            // The checkpoint covered the deleted segment, the sequence goes on from it
+            assertTrue(deltaLog.open(1).isEmpty());
+            assertEquals(2, deltaLog.append(PRODUCT, 1));
+        }
+    }
+
+    @Test
+    void ignoresTornRecord() throws IOException {
+        try (InventoryDeltaLog deltaLog = new InventoryDeltaLog(directory)) {
+            deltaLog.open(0);
+            deltaLog.sync(deltaLog.append(PRODUCT, -1));
+        }
+        try (var segments = Files.list(directory)) {
+            Path segment = segments.findFirst().orElseThrow();
+            Files.write(segment, ("2," + PRODUCT).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        }
+
+        try (InventoryDeltaLog deltaLog = new InventoryDeltaLog(directory)) {
+            List<InventoryDeltaLog.Delta> pending = deltaLog.open(0);
+            assertEquals(1, pending.size());
+            assertEquals(-1, pending.get(0).getDelta());
+        }
+    }
+}
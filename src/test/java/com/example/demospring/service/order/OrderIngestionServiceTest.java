@@ -0,0 +1,225 @@
+package com.example.demospring.service.order;
+
+import com.example.demospring.data.dao.DatabaseLimiter;
+import com.example.demospring.data.dao.OrderDao;
+import com.example.demospring.data.dao.ProductDao;
+import com.example.demospring.data.entities.OrderEntity;
+import com.example.demospring.data.entities.OrderItemEntity;
+import com.example.demospring.data.entities.ProductEntity;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs an ingestion service of its own on an embedded database, with its writer held in the first write so the
+ * orders submitted meanwhile queue up and are written as one group
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:order-ingestion;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+        "inventory.log.directory=${java.io.tmpdir}/order-ingestion-test-inventory"})
+@ActiveProfiles("test")
+class OrderIngestionServiceTest {
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final BigDecimal PRICE = new BigDecimal("4.20");
+
+    @Autowired
+    private OrderDao orderDao;
+
+    @Autowired
+    private ProductDao productDao;
+
+    @Autowired
+    private DatabaseLimiter databaseLimiter;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private RecordingOrderDao recordingDao;
+    private OrderIngestionService service;
+    private ProductEntity product;
+
+    /**
+     * Records the size of every group written, and holds the first write until it is resumed
+     */
+    static class RecordingOrderDao extends OrderDao {
+        private final List<Integer> groups = new CopyOnWriteArrayList<>();
+        private final CountDownLatch writing = new CountDownLatch(1);
+        private final CountDownLatch resume = new CountDownLatch(1);
+
+        RecordingOrderDao(EntityManager entityManager, ApplicationEventPublisher eventPublisher) {
+            super(entityManager, eventPublisher);
+        }
+
+        @Override
+        public BatchReport persistAll(Collection<OrderEntity> orders, int batchSize) {
+            groups.add(orders.size());
+            writing.countDown();
+            try {
+                resume.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            return super.persistAll(orders, batchSize);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        product = new ProductEntity();
+        product.setName("Ingestion test product");
+        product.setPrice(PRICE);
+        product.setInventory(1000);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> productDao.addProduct(product));
+        recordingDao = new RecordingOrderDao(entityManager, eventPublisher);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        recordingDao.resume.countDown();
+        if (service != null) {
+            service.stop();
+        }
+    }
+
+    @Test
+    void ordersQueuedDuringAWriteShareOneCommit() throws Exception {
+        start(10);
+        CompletableFuture<OrderEntity> first = service.submit(order(product));
+        assertTrue(recordingDao.writing.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        List<CompletableFuture<OrderEntity>> queued = new ArrayList<>();
+        for (int order = 0; order < 3; order++) {
+            queued.add(service.submit(order(product)));
+        }
+        assertEquals(3, service.getQueueDepth());
+        recordingDao.resume.countDown();
+
+        assertStored(first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        for (CompletableFuture<OrderEntity> order : queued) {
+            assertStored(order.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        assertEquals(List.of(1, 3), recordingDao.groups);
+    }
+
+    @Test
+    void aFailedGroupIsRetriedOneByOne() throws Exception {
+        start(10);
+        service.submit(order(product));
+        assertTrue(recordingDao.writing.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // An item of a product that was never stored fails the whole group
+        ProductEntity missing = new ProductEntity();
+        missing.setId(UUID.randomUUID());
+        CompletableFuture<OrderEntity> before = service.submit(order(product));
+        CompletableFuture<OrderEntity> bad = service.submit(order(missing));
+        CompletableFuture<OrderEntity> after = service.submit(order(product));
+        recordingDao.resume.countDown();
+
+        // The good orders are written again after the rollback, with new ids
+        assertStored(before.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertStored(after.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> bad.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertInstanceOf(RuntimeException.class, failure.getCause());
+        assertEquals(List.of(1, 3, 1, 1, 1), recordingDao.groups);
+    }
+
+    @Test
+    void ordersBeyondTheQueueAreRejected() throws Exception {
+        start(1);
+        CompletableFuture<OrderEntity> writing = service.submit(order(product));
+        assertTrue(recordingDao.writing.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        CompletableFuture<OrderEntity> queued = service.submit(order(product));
+
+        CompletableFuture<OrderEntity> rejected = service.submit(order(product));
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> rejected.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+
+        recordingDao.resume.countDown();
+        assertStored(writing.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertStored(queued.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void stopWritesTheQueuedOrders() throws Exception {
+        start(10);
+        CompletableFuture<OrderEntity> writing = service.submit(order(product));
+        assertTrue(recordingDao.writing.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        List<CompletableFuture<OrderEntity>> queued = new ArrayList<>();
+        for (int order = 0; order < 3; order++) {
+            queued.add(service.submit(order(product)));
+        }
+
+        Thread stopping = new Thread(() -> {
+            try {
+                service.stop();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        stopping.start();
+        // Stopped accepting orders and waiting for the writer
+        while (stopping.getState() != Thread.State.WAITING) {
+            Thread.onSpinWait();
+        }
+        assertTrue(service.submit(order(product)).isCompletedExceptionally());
+        recordingDao.resume.countDown();
+        stopping.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+
+        assertTrue(writing.isDone());
+        assertStored(writing.get());
+        for (CompletableFuture<OrderEntity> order : queued) {
+            assertTrue(order.isDone());
+            assertStored(order.get());
+        }
+        assertEquals(0, service.getQueueDepth());
+    }
+
+    private void start(int queueCapacity) {
+        service = new OrderIngestionService(recordingDao, databaseLimiter, queueCapacity, 500, 10);
+        service.start();
+    }
+
+    private void assertStored(OrderEntity order) {
+        assertNotNull(order.getId());
+        OrderEntity stored = new TransactionTemplate(transactionManager).execute(status -> orderDao.find(order.getId()));
+        assertNotNull(stored);
+    }
+
+    private static OrderEntity order(ProductEntity product) {
+        OrderItemEntity item = new OrderItemEntity();
+        item.setProduct(product);
+        item.setPrice(PRICE);
+        OrderEntity order = new OrderEntity();
+        order.setItems(new ArrayList<>(List.of(item)));
+        return order;
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.demospring.service.sales;
+
+import com.example.demospring.data.dao.OrderDao;
+import com.example.demospring.data.dao.ProductDao;
+import com.example.demospring.data.entities.OrderEntity;
+import com.example.demospring.data.entities.OrderItemEntity;
+import com.example.demospring.data.entities.ProductEntity;
+import com.example.demospring.data.event.ChangeRecord;
+import com.example.demospring.data.event.ChangeType;
+import com.example.demospring.data.projection.SaleLine;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Places orders on an embedded database while a rebuild is paused, once before the rebuild reads the history and once
+ * after it read the first item, and checks that the rebuilt rollups count every order exactly once. Orders of other
+ * nodes are stored without an event and delivered as change records by hand.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:sales-rollup;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+        "outbox.node-id=sales-rollup-test",
+        "inventory.node-id=sales-rollup-test",
+        "inventory.log.directory=${java.io.tmpdir}/sales-rollup-test-inventory"})
+@ActiveProfiles("test")
+class SalesRollupServiceTest {
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final BigDecimal PRICE = new BigDecimal("12.50");
+
+    @Autowired
+    private SalesRollupService salesRollupService;
+
+    @Autowired
+    private PausingOrderDao orderDao;
+
+    @Autowired
+    private ProductDao productDao;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private ProductEntity product;
+
+    @TestConfiguration
+    static class PausingOrderDaoConfiguration {
+        @Bean
+        @Primary
+        PausingOrderDao pausingOrderDao(EntityManager entityManager, ApplicationEventPublisher eventPublisher) {
+            return new PausingOrderDao(entityManager, eventPublisher);
+        }
+    }
+
+    /**
+     * Pauses the next history scan before it runs its query, and again after it read the first item
+     */
+    static class PausingOrderDao extends OrderDao {
+        private volatile boolean pausing;
+        private final CountDownLatch scanStarting = new CountDownLatch(1);
+        private final CountDownLatch resumeScan = new CountDownLatch(1);
+        private final CountDownLatch firstLineRead = new CountDownLatch(1);
+        private final CountDownLatch resumeLines = new CountDownLatch(1);
+
+        PausingOrderDao(EntityManager entityManager, ApplicationEventPublisher eventPublisher) {
+            super(entityManager, eventPublisher);
+        }
+
+        @Override
+        public void forEachSaleLine(Consumer<SaleLine> consumer) {
+            if (!pausing) {
+                super.forEachSaleLine(consumer);
+                return;
+            }
+            pausing = false;
+            pause(scanStarting, resumeScan);
+            boolean[] first = {true};
+            super.forEachSaleLine(line -> {
+                if (first[0]) {
+                    first[0] = false;
+                    pause(firstLineRead, resumeLines);
+                }
+                consumer.accept(line);
+            });
+        }
+
+        private static void pause(CountDownLatch reached, CountDownLatch resume) {
+            reached.countDown();
+            try {
+                resume.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @BeforeEach
+    void settle() throws Exception {
+        // Waits for the rebuild started on startup
+        salesRollupService.rebuildAsync().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        product = new ProductEntity();
+        product.setName("Rollup test product");
+        product.setPrice(PRICE);
+        product.setInventory(1000);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> productDao.addProduct(product));
+    }
+
+    @Test
+    void ordersPlacedDuringARebuildAreCountedOnce() throws Exception {
+        SalesTotals before = salesRollupService.getTotal();
+        SalesTotals productBefore = salesRollupService.getProduct(product.getId());
+        for (int order = 0; order < 3; order++) {
+            place(2);
+        }
+
+        orderDao.pausing = true;
+        CompletableFuture<Void> rebuild = salesRollupService.rebuildAsync();
+        try {
+            assertTrue(orderDao.scanStarting.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            // Committed before the query runs: read by the rebuild and placed during it
+            place(1);
+            place(3);
+            assertSame(rebuild, salesRollupService.rebuildAsync());
+            orderDao.resumeScan.countDown();
+
+            assertTrue(orderDao.firstLineRead.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            // Committed while the history is read: only seen as placed during the rebuild
+            place(2);
+            place(1);
+            assertFalse(rebuild.isDone());
+            // The current rollups keep answering, and already count every order
+            assertTotals(before, 7, 15, salesRollupService.getTotal());
+        } finally {
+            orderDao.resumeScan.countDown();
+            orderDao.resumeLines.countDown();
+        }
+        rebuild.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertTotals(before, 7, 15, salesRollupService.getTotal());
+        assertTotals(productBefore, 7, 15, salesRollupService.getProduct(product.getId()));
+
+        // A rebuild without concurrent orders agrees
+        salesRollupService.rebuildAsync().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertTotals(before, 7, 15, salesRollupService.getTotal());
+    }
+
+    @Test
+    void ordersOfOtherNodesArriveThroughTheChangeFeed() throws Exception {
+        SalesTotals before = salesRollupService.getTotal();
+        OrderEntity local = place(1);
+        OrderEntity remote = placeElsewhere(2);
+        salesRollupService.onChanges(List.of(record(1, local.getId(), true), record(2, remote.getId(), false)));
+        assertTotals(before, 2, 3, salesRollupService.getTotal());
+
+        // Delivered again after a failed poll
+        salesRollupService.onChanges(List.of(record(2, remote.getId(), false)));
+        assertTotals(before, 2, 3, salesRollupService.getTotal());
+
+        // A large group of orders comes as one bulk record
+        placeElsewhere(3);
+        placeElsewhere(1);
+        salesRollupService.onChanges(List.of(record(3, null, false)));
+        salesRollupService.rebuildAsync().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertTotals(before, 4, 7, salesRollupService.getTotal());
+    }
+
+    private void assertTotals(SalesTotals before, long orders, long units, SalesTotals totals) {
+        assertEquals(before.getOrders() + orders, totals.getOrders());
+        assertEquals(before.getUnits() + units, totals.getUnits());
+        assertEquals(before.getRevenueCents() + units * 1250, totals.getRevenueCents());
+    }
+
+    /**
+     * Place an order of the test product, dated now
+     */
+    private OrderEntity place(int units) {
+        OrderEntity order = order(units);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> orderDao.persist(order));
+        return order;
+    }
+
+    /**
+     * Store an order like another node would, without an event on this one
+     */
+    private OrderEntity placeElsewhere(int units) {
+        OrderEntity order = order(units);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> entityManager.persist(order));
+        return order;
+    }
+
+    private OrderEntity order(int units) {
+        OrderEntity order = new OrderEntity();
+        order.setOrderDate(LocalDateTime.now());
+        List<OrderItemEntity> items = new ArrayList<>();
+        for (int unit = 0; unit < units; unit++) {
+            OrderItemEntity item = new OrderItemEntity();
+            item.setOrder(order);
+            item.setProduct(product);
+            item.setPrice(PRICE);
+            items.add(item);
+        }
+        order.setItems(items);
+        return order;
+    }
+
+    private static ChangeRecord record(long id, UUID orderId, boolean local) {
+        return new ChangeRecord(id, OrderEntity.class, orderId, ChangeType.INSERT, 1, local ? "sales-rollup-test" : "other-node",
+                local, LocalDateTime.now());
+    }
+}